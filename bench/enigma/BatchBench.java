@@ -0,0 +1,98 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for converting many short messages, each under its own
+ *  settings line, one at a time and as a batch.  Each operation converts
+ *  the whole batch.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchBench {
+
+    /** Messages per batch. */
+    @Param({"1024"})
+    public int messages;
+
+    /** Characters per message. */
+    @Param({"16", "128"})
+    public int length;
+
+    /** Distinct settings lines among the messages. */
+    @Param({"16", "1024"})
+    public int setups;
+
+    /** Build the spec, settings lines and messages. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Machine machine = BenchMachines.machine(26, 5, 3);
+        _spec = MachineSpec.of(machine);
+        Random random = new Random(BenchMachines.SEED);
+        _settings = new String[messages];
+        _messages = new char[messages][];
+        _results = new char[messages][];
+        _lengths = new int[messages];
+        for (int i = 0; i < messages; i += 1) {
+            _settings[i] = "* R W1 W2 W3 W4 "
+                + BenchMachines.message(machine.alphabet(), 4,
+                                        random.nextInt(setups));
+            _messages[i] = BenchMachines.message(machine.alphabet(), length,
+                                                 random.nextLong())
+                .toCharArray();
+            _results[i] = new char[length];
+        }
+    }
+
+    /** Set up and convert each message in turn. */
+    @Benchmark
+    public int[] oneAtATime() {
+        MachineState state = new MachineState(_spec);
+        state.setSetupCache(new SetupCache(setups));
+        for (int i = 0; i < messages; i += 1) {
+            Main.setUp(state, _settings[i]);
+            _lengths[i] = state.convert(_messages[i], 0, length,
+                                        _results[i], 0);
+        }
+        return _lengths;
+    }
+
+    /** Convert the messages as one batch. */
+    @Benchmark
+    public int[] batch() {
+        MachineState state = new MachineState(_spec);
+        state.setSetupCache(new SetupCache(setups));
+        new BatchConverter(state).convert(_settings, _messages, _results,
+                                          _lengths);
+        return _lengths;
+    }
+
+    /** The machine's description. */
+    private MachineSpec _spec;
+    /** Settings line of each message. */
+    private String[] _settings;
+    /** The messages. */
+    private char[][] _messages;
+    /** Space for the converted messages. */
+    private char[][] _results;
+    /** Lengths of the converted messages. */
+    private int[] _lengths;
+}
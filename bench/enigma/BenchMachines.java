@@ -0,0 +1,139 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/** Randomly wired machines and messages for the benchmarks.  Everything
+ *  is generated from a fixed seed, so that every run measures the same
+ *  machines.
+ *  @author Chris Zhan
+ */
+final class BenchMachines {
+
+    /** Characters from which benchmark alphabets are drawn.  All of
+     *  them may appear in cycle notation. */
+    static final String SYMBOLS =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789&_.-";
+
+    /** Seed for all generated machines and messages. */
+    static final long SEED = 61;
+
+    /** Not instantiable. */
+    private BenchMachines() {
+    }
+
+    /** Return the alphabet of the first SIZE characters of SYMBOLS. */
+    static Alphabet alphabet(int size) {
+        if (size > SYMBOLS.length()) {
+            throw new EnigmaException("alphabet too large: " + size);
+        }
+        return new Alphabet(SYMBOLS.substring(0, size));
+    }
+
+    /** Return a random permutation of ALPHA, written as a single cycle,
+     *  chosen using RANDOM. */
+    static Permutation permutation(Alphabet alpha, Random random) {
+        List<Character> chars = shuffled(alpha, random);
+        StringBuilder cycle = new StringBuilder("(");
+        for (char c : chars) {
+            cycle.append(c);
+        }
+        return new Permutation(cycle.append(')').toString(), alpha);
+    }
+
+    /** Return a random pairing of the characters of ALPHA, chosen using
+     *  RANDOM, suitable for a reflector. */
+    static Permutation reflection(Alphabet alpha, Random random) {
+        List<Character> chars = shuffled(alpha, random);
+        StringBuilder cycles = new StringBuilder();
+        for (int i = 0; i + 1 < chars.size(); i += 2) {
+            cycles.append('(').append(chars.get(i))
+                .append(chars.get(i + 1)).append(") ");
+        }
+        return new Permutation(cycles.toString(), alpha);
+    }
+
+    /** Return a machine whose alphabet is the first SIZE characters of
+     *  SYMBOLS, with NUMROTORS slots and PAWLS pawls, holding randomly
+     *  wired rotors at random settings and a random plugboard. */
+    static Machine machine(int size, int numRotors, int pawls) {
+        Random random = new Random(SEED);
+        Alphabet alpha = alphabet(size);
+        List<Rotor> rotors = new ArrayList<>();
+        String[] names = new String[numRotors];
+        names[0] = "R";
+        rotors.add(new Reflector("R", reflection(alpha, random)));
+        for (int k = 1; k < numRotors; k += 1) {
+            names[k] = "W" + k;
+            if (k < numRotors - pawls) {
+                rotors.add(new FixedRotor(names[k],
+                                          permutation(alpha, random)));
+            } else {
+                String notch = String.valueOf(alpha.toChar(
+                        random.nextInt(size)));
+                rotors.add(new MovingRotor(names[k],
+                                           permutation(alpha, random),
+                                           notch));
+            }
+        }
+        Machine machine = new Machine(alpha, numRotors, pawls, rotors);
+        machine.insertRotors(names);
+        machine.setRotors(message(alpha, numRotors - 1, random.nextLong()));
+        StringBuilder plugs = new StringBuilder();
+        List<Character> chars = shuffled(alpha, random);
+        for (int i = 0; i + 1 < Math.min(chars.size(), PLUGS * 2);
+             i += 2) {
+            plugs.append('(').append(chars.get(i))
+                .append(chars.get(i + 1)).append(") ");
+        }
+        machine.setPlugboard(new Permutation(plugs.toString(), alpha));
+        return machine;
+    }
+
+    /** Select the conversion engine named ENGINE for MACHINE: "plain",
+     *  "fused", or "table". */
+    static void selectEngine(Machine machine, String engine) {
+        switch (engine) {
+        case "plain":
+            break;
+        case "fused":
+            machine.setFused(true);
+            break;
+        case "table":
+            machine.setFused(true);
+            machine.setPeriodLimit(TABLE_LIMIT);
+            break;
+        default:
+            throw new EnigmaException("unknown engine: " + engine);
+        }
+    }
+
+    /** Return a random message of LENGTH characters of ALPHA, generated
+     *  from SEED. */
+    static String message(Alphabet alpha, int length, long seed) {
+        Random random = new Random(seed);
+        char[] result = new char[length];
+        for (int i = 0; i < length; i += 1) {
+            result[i] = alpha.toChar(random.nextInt(alpha.size()));
+        }
+        return new String(result);
+    }
+
+    /** Return the characters of ALPHA in an order chosen by RANDOM. */
+    private static List<Character> shuffled(Alphabet alpha, Random random) {
+        List<Character> chars = new ArrayList<>();
+        for (int i = 0; i < alpha.size(); i += 1) {
+            chars.add(alpha.toChar(i));
+        }
+        Collections.shuffle(chars, random);
+        return chars;
+    }
+
+    /** Number of plugboard pairs in generated machines. */
+    private static final int PLUGS = 10;
+
+    /** Period table limit for the "table" engine. */
+    private static final long TABLE_LIMIT = 1L << 26;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for converting independent streams with the same rotors,
+ *  one stream at a time and in lanes.  Each operation converts one
+ *  message in every stream.  inVectorLanes runs in a JVM with the Vector
+ *  API, and so converts with VectorLaneConverter if 'make vector' has
+ *  built it in ../enigma.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LaneBench {
+
+    /** Number of streams. */
+    @Param({"8", "64", "512"})
+    public int lanes;
+
+    /** Characters per message. */
+    @Param({"4096"})
+    public int length;
+
+    /** Build the streams' states and messages. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        Machine machine = BenchMachines.machine(26, 5, 3);
+        MachineSpec spec = MachineSpec.of(machine);
+        Random random = new Random(BenchMachines.SEED);
+        _states = new MachineState[lanes];
+        _messages = new char[lanes][];
+        _results = new char[lanes][];
+        _lengths = new int[lanes];
+        for (int i = 0; i < lanes; i += 1) {
+            _states[i] = new MachineState(spec);
+            Main.setUp(_states[i], "* R W1 W2 W3 W4 "
+                       + BenchMachines.message(machine.alphabet(), 4,
+                                               random.nextLong()));
+            _messages[i] = BenchMachines.message(machine.alphabet(), length,
+                                                 random.nextLong())
+                .toCharArray();
+            _results[i] = new char[length];
+        }
+        _converter = new LaneConverter(_states);
+        _vector = LaneConverter.of(_states);
+    }
+
+    /** Convert each stream's message in turn. */
+    @Benchmark
+    public char[][] oneAtATime() {
+        for (int i = 0; i < lanes; i += 1) {
+            _states[i].convert(_messages[i], 0, length, _results[i], 0);
+        }
+        return _results;
+    }
+
+    /** Convert every stream's message in lanes. */
+    @Benchmark
+    public char[][] inLanes() {
+        _converter.convert(_messages, _results, _lengths);
+        return _results;
+    }
+
+    /** Convert every stream's message in lanes, with vector gathers
+     *  where available. */
+    @Benchmark
+    @Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+    public char[][] inVectorLanes() {
+        _vector.convert(_messages, _results, _lengths);
+        return _results;
+    }
+
+    /** Each stream's state, for conversion one at a time. */
+    private MachineState[] _states;
+    /** The lanes, for conversion in lanes. */
+    private LaneConverter _converter;
+    /** The lanes as LaneConverter.of makes them. */
+    private LaneConverter _vector;
+    /** Each stream's message. */
+    private char[][] _messages;
+    /** Space for each stream's converted message. */
+    private char[][] _results;
+    /** Lengths of the converted messages. */
+    private int[] _lengths;
+}
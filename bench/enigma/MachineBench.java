@@ -0,0 +1,80 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for stepping and single-character conversion, across
+ *  alphabet sizes, rotor counts, pawl counts and conversion engines.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MachineBench {
+
+    /** Size of the alphabet. */
+    @Param({"26", "64"})
+    public int size;
+
+    /** Number of rotor slots. */
+    @Param({"4", "5"})
+    public int rotors;
+
+    /** Number of pawls. */
+    @Param({"1", "2", "3"})
+    public int pawls;
+
+    /** Conversion engine: "plain", "fused" or "table". */
+    @Param({"plain", "fused", "table"})
+    public String engine;
+
+    /** Build the machine and the input. */
+    @Setup
+    public void setUp() {
+        _machine = BenchMachines.machine(size, rotors, pawls);
+        BenchMachines.selectEngine(_machine, engine);
+        Random random = new Random(BenchMachines.SEED);
+        _input = new int[INPUTS];
+        for (int i = 0; i < INPUTS; i += 1) {
+            _input[i] = random.nextInt(size);
+        }
+    }
+
+    /** Step the rotors once. */
+    @Benchmark
+    public void advanceRotors() {
+        _machine.advanceRotors();
+    }
+
+    /** Convert one character, stepping first. */
+    @Benchmark
+    public int convertInt() {
+        _next = (_next + 1) & (INPUTS - 1);
+        return _machine.convert(_input[_next]);
+    }
+
+    /** Number of distinct inputs; a power of 2. */
+    private static final int INPUTS = 1024;
+
+    /** The machine measured. */
+    private Machine _machine;
+    /** Inputs to convert, as indices. */
+    private int[] _input;
+    /** Index of the last input converted. */
+    private int _next;
+}
@@ -0,0 +1,67 @@
+package enigma;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** End-to-end benchmarks: a complete run of Main, reading a
+ *  configuration and an input file from testing/correct and discarding
+ *  the output.  The directory holding the test cases is given by the
+ *  system property enigma.testing, by default ../testing/correct.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MainBench {
+
+    /** Name of the test case, without its .in suffix.  Uses NAME.conf
+     *  as configuration if present, and default.conf otherwise. */
+    @Param({"01-carroll", "03-carroll", "04-carroll", "riptide"})
+    public String name;
+
+    /** Locate the files for the test case. */
+    @Setup
+    public void setUp() {
+        File dir = new File(System.getProperty("enigma.testing",
+                                               "../testing/correct"));
+        File config = new File(dir, name + ".conf");
+        if (!config.exists()) {
+            config = new File(dir, "default.conf");
+        }
+        File input = new File(dir, name + ".in");
+        if (!input.exists()) {
+            throw new EnigmaException("no test case " + input);
+        }
+        _args = new String[] {
+            config.getPath(), input.getPath(), NULL_DEVICE
+        };
+    }
+
+    /** Run Main on the test case. */
+    @Benchmark
+    public void process() {
+        Main.main(_args);
+    }
+
+    /** An output file that discards what is written to it. */
+    private static final String NULL_DEVICE =
+        File.separatorChar == '\\' ? "NUL" : "/dev/null";
+
+    /** Arguments to Main. */
+    private String[] _args;
+}
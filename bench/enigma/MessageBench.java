@@ -0,0 +1,83 @@
+package enigma;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for converting whole messages, across message lengths,
+ *  alphabet sizes, rotor counts, pawl counts and conversion engines.
+ *  Each operation converts one message from the same setup.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MessageBench {
+
+    /** Characters per message. */
+    @Param({"64", "4096", "1048576"})
+    public int length;
+
+    /** Size of the alphabet. */
+    @Param({"26", "64"})
+    public int size;
+
+    /** Number of rotor slots. */
+    @Param({"5"})
+    public int rotors;
+
+    /** Number of pawls. */
+    @Param({"3"})
+    public int pawls;
+
+    /** Conversion engine: "plain", "fused" or "table". */
+    @Param({"plain", "fused", "table"})
+    public String engine;
+
+    /** Build the machine and the message. */
+    @Setup(Level.Trial)
+    public void setUp() {
+        _machine = BenchMachines.machine(size, rotors, pawls);
+        BenchMachines.selectEngine(_machine, engine);
+        _message = BenchMachines.message(_machine.alphabet(), length,
+                                         BenchMachines.SEED);
+        _in = _message.toCharArray();
+        _out = new char[length];
+    }
+
+    /** Convert the message as a String. */
+    @Benchmark
+    public String convertString() {
+        return _machine.convert(_message);
+    }
+
+    /** Convert the message between buffers. */
+    @Benchmark
+    public char[] convertBuffer() {
+        _machine.convert(_in, 0, _in.length, _out, 0);
+        return _out;
+    }
+
+    /** The machine measured. */
+    private Machine _machine;
+    /** The message. */
+    private String _message;
+    /** The message's characters. */
+    private char[] _in;
+    /** Space for the converted message. */
+    private char[] _out;
+}
@@ -0,0 +1,90 @@
+package enigma;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks for Permutation and Alphabet lookups.  Each operation
+ *  looks up a run of INDICES pseudo-random arguments, so that scores are
+ *  per run rather than per (unmeasurably short) call.
+ *  @author Chris Zhan
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PermutationBench {
+
+    /** Size of the alphabet permuted. */
+    @Param({"26", "64"})
+    public int size;
+
+    /** Build the permutation and the arguments. */
+    @Setup
+    public void setUp() {
+        Random random = new Random(BenchMachines.SEED);
+        _alphabet = BenchMachines.alphabet(size);
+        _perm = BenchMachines.permutation(_alphabet, random);
+        _indices = new int[INDICES];
+        _chars = new char[INDICES];
+        for (int i = 0; i < INDICES; i += 1) {
+            _indices[i] = random.nextInt(size);
+            _chars[i] = _alphabet.toChar(_indices[i]);
+        }
+    }
+
+    /** Apply the permutation to every index. */
+    @Benchmark
+    public int permute() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.permute(p);
+        }
+        return sum;
+    }
+
+    /** Apply the inverse permutation to every index. */
+    @Benchmark
+    public int invert() {
+        int sum = 0;
+        for (int p : _indices) {
+            sum += _perm.invert(p);
+        }
+        return sum;
+    }
+
+    /** Look up the index of every character. */
+    @Benchmark
+    public int toInt() {
+        int sum = 0;
+        for (char c : _chars) {
+            sum += _alphabet.toInt(c);
+        }
+        return sum;
+    }
+
+    /** Number of arguments per operation. */
+    private static final int INDICES = 1024;
+
+    /** The alphabet permuted. */
+    private Alphabet _alphabet;
+    /** The permutation measured. */
+    private Permutation _perm;
+    /** Arguments as indices. */
+    private int[] _indices;
+    /** Arguments as characters. */
+    private char[] _chars;
+}
@@ -1,5 +1,7 @@
 package enigma;
 
+import java.util.Arrays;
+
 /** An alphabet of encodable characters.  Provides a mapping from characters
  *  to and from indices into the alphabet.
  *  @author Chris Zhan
@@ -14,6 +16,7 @@ class Alphabet {
             throw new EnigmaException("Duplicate character in alphabet "
                    + "detected");
         }
+        buildIndex();
     }
 
     /** A default alphabet of all upper-case characters. */
@@ -33,14 +36,7 @@ class Alphabet {
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        int i = 0;
-        while (i < size()) {
-            if (_chars.charAt(i) == ch) {
-                return true;
-            }
-            i += 1;
-        }
-        return false;
+        return indexOf(ch) >= 0;
     }
 
     /** Returns character number INDEX in the alphabet, where
@@ -56,15 +52,93 @@ class Alphabet {
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        int i = 0;
-        while (i < size()) {
-            if (_chars.charAt(i) == ch) {
-                return i;
-            }
-            i += 1;
+        int i = indexOf(ch);
+        if (i < 0) {
+            return size();
         }
         return i;
     }
+
+    /** Return the index of CH, or -1 if CH is not in this alphabet. */
+    private int indexOf(char ch) {
+        if (_dense != null) {
+            if (ch >= _dense.length) {
+                return -1;
+            }
+            return _dense[ch];
+        }
+        int mask = _keys.length - 1;
+        int h = hash(ch) & mask;
+        while (_values[h] >= 0) {
+            if (_keys[h] == ch) {
+                return _values[h];
+            }
+            h = (h + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Fill in the reverse index from characters to their positions.
+     *  Alphabets whose characters all lie below DENSE_LIMIT get a table
+     *  indexed directly by character; others get an open-addressed
+     *  table with linear probing, at most half full. */
+    private void buildIndex() {
+        int max = 0;
+        for (int i = 0; i < _chars.length(); i += 1) {
+            max = Math.max(max, _chars.charAt(i));
+        }
+        if (max < DENSE_LIMIT) {
+            _dense = new int[max + 1];
+            Arrays.fill(_dense, -1);
+            for (int i = 0; i < _chars.length(); i += 1) {
+                _dense[_chars.charAt(i)] = i;
+            }
+            return;
+        }
+        int capacity = 2;
+        while (capacity < 2 * _chars.length()) {
+            capacity *= 2;
+        }
+        _keys = new char[capacity];
+        _values = new int[capacity];
+        Arrays.fill(_values, -1);
+        int mask = capacity - 1;
+        for (int i = 0; i < _chars.length(); i += 1) {
+            char ch = _chars.charAt(i);
+            int h = hash(ch) & mask;
+            while (_values[h] >= 0) {
+                h = (h + 1) & mask;
+            }
+            _keys[h] = ch;
+            _values[h] = i;
+        }
+    }
+
+    /** Return a well-mixed hash of CH for the open-addressed index. */
+    private static int hash(char ch) {
+        int h = ch * HASH_MULTIPLIER;
+        return h ^ (h >>> HASH_SHIFT);
+    }
+
+    /** Characters below this value are indexed by a dense table. */
+    private static final int DENSE_LIMIT = 1 << 12;
+
+    /** Multiplier used to spread characters over the sparse index. */
+    private static final int HASH_MULTIPLIER = 0x9E3779B1;
+
+    /** Shift used to fold high hash bits into the low ones. */
+    private static final int HASH_SHIFT = 16;
+
+    /** Dense reverse index: the position of each character, or -1. Null
+     *  if this alphabet uses the sparse index. */
+    private int[] _dense;
+
+    /** Keys of the sparse reverse index. */
+    private char[] _keys;
+
+    /** Positions in the sparse reverse index, or -1 for empty slots. */
+    private int[] _values;
+
     /** The characters of this alphabet. */
     private String _chars;
 }
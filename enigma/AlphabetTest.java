@@ -0,0 +1,42 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Alphabet class.
+ *  @author Chris Zhan
+ */
+public class AlphabetTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testAlphabetIndex() {
+        Alphabet alpha = new Alphabet("ZYX_.-09");
+        assertEquals(0, alpha.toInt('Z'));
+        assertEquals(4, alpha.toInt('.'));
+        assertEquals(7, alpha.toInt('9'));
+        assertTrue(alpha.contains('_'));
+        assertFalse(alpha.contains('A'));
+        assertFalse(alpha.contains('\u2603'));
+    }
+
+    @Test
+    public void testSparseAlphabetIndex() {
+        String chars = "A\u03a9\u4e2d\uffee\u2603";
+        Alphabet alpha = new Alphabet(chars);
+        for (int i = 0; i < chars.length(); i += 1) {
+            assertTrue(alpha.contains(chars.charAt(i)));
+            assertEquals(i, alpha.toInt(chars.charAt(i)));
+            assertEquals(chars.charAt(i), alpha.toChar(i));
+        }
+        assertFalse(alpha.contains('B'));
+        assertFalse(alpha.contains('\u4e2e'));
+    }
+}
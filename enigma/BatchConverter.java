@@ -0,0 +1,266 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Converts batches of short messages, each under its own settings line,
+ *  with the same results as setting up and converting them one at a
+ *  time on a MachineState.  The settings lines are applied in order, as
+ *  Main.setUp would, and each message's rotors, settings, notches and
+ *  plugboard are recorded in a lane.  The lanes are then stepped a block
+ *  at a time, converting character k of every message in the block
+ *  before character k+1 of any, so that the block's rotor tables and
+ *  settings serve every lane while they are in cache.  Afterwards the
+ *  state is left as one-at-a-time conversion would leave it, so batches
+ *  may follow one another.
+ *  @author Chris Zhan
+ */
+final class BatchConverter {
+
+    /** A converter setting up and converting with STATE, which it
+     *  leaves as one-at-a-time conversion would after each batch. */
+    BatchConverter(MachineState state) {
+        _state = state;
+        _spec = state.spec();
+        _numRotors = _spec.numRotors();
+        _numAvailable = _spec.numAvailable();
+        _touched = new boolean[_numAvailable];
+        _chars = _spec.alphabet().chars().toCharArray();
+        grow(0);
+    }
+
+    /** Return the state I set up and convert with, as given to my
+     *  constructor. */
+    MachineState state() {
+        return _state;
+    }
+
+    /** For each i in order, set up my state according to SETTINGS[i] and
+     *  convert MESSAGES[i], placing the converted characters at the start
+     *  of RESULTS[i] and their number in LENGTHS[i].  Blanks are skipped,
+     *  as by Machine.convert, so RESULTS[i] needs at most the length of
+     *  MESSAGES[i] and may be MESSAGES[i] itself.  If a settings line is
+     *  invalid, the messages before it are converted and its error is
+     *  thrown, as it would be one message at a time. */
+    void convert(String[] settings, char[][] messages, char[][] results,
+                 int[] lengths) {
+        if (settings.length != messages.length
+            || results.length < messages.length
+            || lengths.length < messages.length) {
+            throw error("batch arrays differ in length");
+        }
+        grow(messages.length);
+        for (int i = 0; i < messages.length; i += 1) {
+            if (results[i].length < nonBlank(messages[i])) {
+                flush(results, lengths);
+                throw error("result buffer %d too short", i);
+            }
+            MachineState saved =
+                _lanes > 0 && mayReadPending(settings[i]) ? _state.copy()
+                : null;
+            boolean retry;
+            try {
+                Main.setUp(_state, settings[i]);
+                retry = saved != null && readsPending();
+            } catch (RuntimeException excp) {
+                if (saved == null) {
+                    flush(results, lengths);
+                    throw excp;
+                }
+                retry = true;
+            }
+            if (retry) {
+                _state.restoreFrom(saved);
+                flush(results, lengths);
+                Main.setUp(_state, settings[i]);
+            }
+            addLane(i, messages[i], results[i]);
+        }
+        flush(results, lengths);
+    }
+
+    /** Return the number of characters of MESSAGE other than blanks. */
+    private static int nonBlank(char[] message) {
+        int m = 0;
+        for (char ch : message) {
+            if (ch != ' ') {
+                m += 1;
+            }
+        }
+        return m;
+    }
+
+    /** Return true iff the settings line LINE might place a rotating
+     *  rotor in slot 0, judging by its second word alone. */
+    private boolean mayReadPending(String line) {
+        int start = 0, end = 0;
+        for (int word = 0; word < 2; word += 1) {
+            start = end;
+            while (start < line.length()
+                   && Character.isWhitespace(line.charAt(start))) {
+                start += 1;
+            }
+            end = start;
+            while (end < line.length()
+                   && !Character.isWhitespace(line.charAt(end))) {
+                end += 1;
+            }
+        }
+        int r = _spec.indexOf(line.substring(start, end));
+        return r >= 0 && _spec.rotates(r);
+    }
+
+    /** Return true iff the rotor in slot 0, which no settings line sets,
+     *  may have been moved by a message not yet converted.  Only a
+     *  rotating rotor placed in slot 0 can be. */
+    private boolean readsPending() {
+        int r = _state.rotor(0);
+        return r >= 0 && _spec.rotates(r) && _touched[r];
+    }
+
+    /** Record lane #_lanes for message #INDEX, whose characters are in
+     *  MESSAGE, with my state's current setup, copying MESSAGE's
+     *  characters, less blanks, to the start of RESULT. */
+    private void addLane(int index, char[] message, char[] result) {
+        if (_state.rotor(_numRotors - 1) < 0) {
+            throw error("no rotors have been set");
+        }
+        int lane = _lanes;
+        int m = 0;
+        for (char ch : message) {
+            if (ch != ' ') {
+                result[m] = ch;
+                m += 1;
+            }
+        }
+        _index[lane] = index;
+        _length[lane] = m;
+        _text[lane] = result;
+        _movers[lane] = _state.movers();
+        _plugboard[lane] = _state.plugboard().table();
+        int base = lane * _numRotors, settings = lane * _numAvailable;
+        for (int k = 0; k < _numRotors; k += 1) {
+            int r = _state.rotor(k);
+            _at[lane][k] = settings + r;
+            _forward[base + k] = _spec.forward(r);
+            _backward[base + k] = _spec.backward(r);
+            _notchAt[settings + r] = _state.notchAt(r);
+            _settings[settings + r] = _state.rotorSetting(r);
+            _touched[r] = true;
+        }
+        _lanes += 1;
+    }
+
+    /** Convert every pending lane, BLOCK lanes at a time, recording
+     *  results in RESULTS and LENGTHS, and bring my state's rotor settings
+     *  up to date. */
+    private void flush(char[][] results, int[] lengths) {
+        for (int start = 0; start < _lanes; start += BLOCK) {
+            int end = Math.min(start + BLOCK, _lanes);
+            int longest = 0;
+            for (int lane = start; lane < end; lane += 1) {
+                longest = Math.max(longest, _length[lane]);
+            }
+            for (int k = 0; k < longest; k += 1) {
+                for (int lane = start; lane < end; lane += 1) {
+                    if (k < _length[lane]) {
+                        _text[lane][k] = step(lane, _text[lane][k]);
+                    }
+                }
+            }
+        }
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            int settings = lane * _numAvailable;
+            for (int k = 0; k < _numRotors; k += 1) {
+                int at = _at[lane][k];
+                _state.setRotorSetting(at - settings, _settings[at]);
+            }
+            lengths[_index[lane]] = _length[lane];
+            _text[lane] = null;
+        }
+        Arrays.fill(_touched, false);
+        _lanes = 0;
+    }
+
+    /** Advance the rotors of LANE, then return the conversion of CH. */
+    private char step(int lane, char ch) {
+        int[] at = _at[lane], settings = _settings;
+        int n = _spec.alphabet().size();
+        MachineSpec.step(_movers[lane], at, _notchAt, settings, n, null);
+        int base = lane * _numRotors;
+        int fast = _numRotors - 1;
+        int[] plugboard = _plugboard[lane];
+        int c = _spec.alphabet().toInt(ch);
+        c = plugboard[c == n ? 0 : c];
+        for (int k = fast; k >= 0; k -= 1) {
+            int s = settings[at[k]];
+            c = _forward[base + k][c + s] - s;
+            c += c < 0 ? n : 0;
+        }
+        for (int k = 1; k <= fast; k += 1) {
+            int s = settings[at[k]];
+            c = _backward[base + k][c + s] - s;
+            c += c < 0 ? n : 0;
+        }
+        return _chars[plugboard[c]];
+    }
+
+    /** Make room for at least LANES lanes. */
+    private void grow(int lanes) {
+        if (_index != null && _index.length >= lanes) {
+            return;
+        }
+        lanes = Math.max(lanes, MIN_LANES);
+        _index = new int[lanes];
+        _length = new int[lanes];
+        _text = new char[lanes][];
+        _movers = new int[lanes][];
+        _plugboard = new int[lanes][];
+        _at = new int[lanes][_numRotors];
+        _forward = new int[lanes * _numRotors][];
+        _backward = new int[lanes * _numRotors][];
+        _notchAt = new boolean[lanes * _numAvailable][];
+        _settings = new int[lanes * _numAvailable];
+    }
+
+    /** Lanes stepped together. */
+    private static final int BLOCK = 16;
+    /** Lanes allocated at first. */
+    private static final int MIN_LANES = 64;
+
+    /** The state set up by each settings line. */
+    private final MachineState _state;
+    /** The description of my state's machine. */
+    private final MachineSpec _spec;
+    /** Slots and available rotors in _spec. */
+    private final int _numRotors, _numAvailable;
+    /** The characters of my alphabet, by index. */
+    private final char[] _chars;
+    /** True for the rotors in the slots of a pending lane. */
+    private final boolean[] _touched;
+    /** Number of pending lanes. */
+    private int _lanes;
+    /** Index in the batch of each lane's message. */
+    private int[] _index;
+    /** Number of characters in each lane's message, less blanks. */
+    private int[] _length;
+    /** Each lane's characters, converted in place. */
+    private char[][] _text;
+    /** Slots of each lane's rotating rotors. */
+    private int[][] _movers;
+    /** Table of each lane's plugboard. */
+    private int[][] _plugboard;
+    /** Index in _settings of the setting of the rotor in slot k of lane
+     *  L, at [L][k]. */
+    private int[][] _at;
+    /** Forward table of the rotor in slot k of lane L, at
+     *  L * _numRotors + k. */
+    private int[][] _forward;
+    /** Backward table of the rotor in each lane's slot, as _forward. */
+    private int[][] _backward;
+    /** Notches of available rotor r in lane L, as _settings. */
+    private boolean[][] _notchAt;
+    /** Setting of available rotor r in lane L, at L * _numAvailable + r. */
+    private int[] _settings;
+}
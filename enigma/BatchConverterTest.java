@@ -0,0 +1,191 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the BatchConverter class.
+ *  @author Chris Zhan
+ */
+public class BatchConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Names of the rotating rotors of machine(). */
+    private static final String[] MOVERS = {"I", "II", "III", "VI", "VII"};
+
+    /** Return a machine with some naval rotors, including one with two
+     *  notches and one with a notch not in the alphabet. */
+    private static Machine machine() {
+        return TestUtils.naval(5, 3, "B", "Beta", "I MQEV", "II MQEV",
+                               "III MQEV", "VI", "VII MZ?");
+    }
+
+    /** Return a random settings line drawn by RANDOM.  Some place rotors
+     *  oddly, repeat them, or are invalid. */
+    private static String settings(Random random) {
+        String[] names = new String[5];
+        if (random.nextInt(4) == 0) {
+            for (int k = 0; k < 5; k += 1) {
+                names[k] = k < 3 ? MOVERS[random.nextInt(MOVERS.length)]
+                    : k == 3 ? "B" : "Beta";
+            }
+            for (int k = 4; k > 0; k -= 1) {
+                int j = random.nextInt(k + 1);
+                String t = names[k];
+                names[k] = names[j];
+                names[j] = t;
+            }
+        } else {
+            names[0] = "B";
+            names[1] = "Beta";
+            for (int k = 2; k < 5; k += 1) {
+                names[k] = MOVERS[random.nextInt(MOVERS.length)];
+            }
+        }
+        StringBuilder line = new StringBuilder("*");
+        for (String name : names) {
+            line.append(' ').append(name);
+        }
+        line.append(' ').append(letters(random, 4));
+        if (random.nextInt(3) == 0) {
+            line.append(' ').append(letters(random, 4));
+        }
+        if (random.nextBoolean()) {
+            line.append(" (AQ) (EP)");
+        }
+        if (random.nextInt(60) == 0) {
+            line.setLength(10);
+        }
+        return line.toString();
+    }
+
+    /** Return N random letters and blanks drawn by RANDOM. */
+    private static String letters(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return a random message drawn by RANDOM. */
+    private static char[] message(Random random) {
+        int n = random.nextInt(8) == 0 ? random.nextInt(600)
+            : random.nextInt(30);
+        char[] result = new char[n];
+        for (int i = 0; i < n; i += 1) {
+            int c = random.nextInt(30);
+            result[i] = c < 26 ? (char) ('A' + c) : c < 29 ? ' ' : '?';
+        }
+        return result;
+    }
+
+    /** Convert MESSAGES under SETTINGS one at a time on MACH, placing the
+     *  results in RESULTS, and return the index of the first invalid
+     *  settings line, or SETTINGS.length. */
+    private static int sequential(Machine mach, String[] settings,
+                                  char[][] messages, String[] results) {
+        for (int i = 0; i < settings.length; i += 1) {
+            try {
+                Main.setUp(mach, settings[i]);
+            } catch (RuntimeException excp) {
+                return i;
+            }
+            results[i] = mach.convert(new String(messages[i]));
+        }
+        return settings.length;
+    }
+
+    @Test
+    public void testMatchesSequential() {
+        Random random = new Random(17);
+        for (int trial = 0; trial < 40; trial += 1) {
+            Machine mach = machine();
+            BatchConverter batch =
+                new BatchConverter(new MachineState(MachineSpec.of(mach)));
+            boolean failed = false;
+            for (int round = 0; round < 3 && !failed; round += 1) {
+                int count = random.nextInt(100);
+                String[] settings = new String[count];
+                char[][] messages = new char[count][];
+                char[][] results = new char[count][];
+                for (int i = 0; i < count; i += 1) {
+                    settings[i] = settings(random);
+                    messages[i] = message(random);
+                    results[i] = random.nextBoolean() ? messages[i].clone()
+                        : new char[messages[i].length];
+                }
+                String[] expected = new String[count];
+                int bad = sequential(mach, settings, messages.clone(),
+                                     expected);
+                int[] lengths = new int[count];
+                try {
+                    batch.convert(settings, messages, results, lengths);
+                    assertEquals(count, bad);
+                } catch (RuntimeException excp) {
+                    assertTrue(bad < count);
+                    failed = true;
+                    count = bad;
+                }
+                for (int i = 0; i < count; i += 1) {
+                    assertEquals(settings[i], expected[i],
+                                 new String(results[i], 0, lengths[i]));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testInPlace() {
+        MachineState state = new MachineState(MachineSpec.of(machine()));
+        BatchConverter batch = new BatchConverter(state);
+        String[] settings = {
+            "* B Beta III IV I AXLE (YF) (ZH)".replace("IV", "VI"),
+            "* B Beta I II III AAAA (AQ) (EP)",
+        };
+        char[][] messages = {
+            "HELLO WORLD".toCharArray(), "HELLO WORLD".toCharArray(),
+        };
+        int[] lengths = new int[2];
+        batch.convert(settings, messages, messages, lengths);
+        MachineState single = new MachineState(state.spec());
+        for (int i = 0; i < 2; i += 1) {
+            Main.setUp(single, settings[i]);
+            assertEquals(single.convert("HELLO WORLD"),
+                         new String(messages[i], 0, lengths[i]));
+        }
+        assertEquals(10, lengths[1]);
+    }
+
+    @Test
+    public void testRetryKeepsState() {
+        MachineState state = new MachineState(MachineSpec.of(machine()));
+        BatchConverter batch = new BatchConverter(state);
+        String[] settings = {
+            "* B Beta I II III AAAA (AQ) (EP)",
+            "* II Beta I B III QEVA",
+        };
+        char[][] messages = {
+            "HELLO WORLD HELLO WORLD".toCharArray(),
+            "HELLO WORLD".toCharArray(),
+        };
+        batch.convert(settings, messages, messages, new int[2]);
+        assertSame(state, batch.state());
+        MachineState single = new MachineState(state.spec());
+        for (int i = 0; i < 2; i += 1) {
+            Main.setUp(single, settings[i]);
+            single.convert("HELLO WORLD HELLO WORLD".substring(0,
+                           i == 0 ? 23 : 11));
+        }
+        assertEquals(single.convert("FROMHISSHOULDER"),
+                     state.convert("FROMHISSHOULDER"));
+    }
+}
@@ -0,0 +1,554 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A bombe: searches every rotor order and start position of a machine
+ *  for those under which a crib, placed at a given position in a
+ *  ciphertext, could have been enciphered to it under some plugboard.
+ *
+ *  <p>The crib and ciphertext form a menu: at crib position j, crib
+ *  letter a and cipher letter b satisfy P(b) = S_j(P(a)), where P is the
+ *  plugboard and S_j the rotors' substitution at that position.  For each
+ *  key, a hypothesis P(x) = u for a well-connected menu letter x is
+ *  propagated through the menu and the plugboard's symmetry, each letter
+ *  collecting a bitset of the values it is forced to take.  A letter
+ *  forced to two values refutes the hypothesis and, since every forced
+ *  pair implies the others, every value forced on x along with it.  A
+ *  key survives if the connected parts of the menu have consistent
+ *  hypotheses that agree with one another on the plugboard, found by
+ *  backtracking through the parts, and is reported with the plugboard
+ *  pairs they force.
+ *
+ *  <p>Rotor orders have a reflector in slot 0, non-moving rotors in the
+ *  slots before the pawls, and rotating rotors in the rest, none
+ *  repeated.  Ringstellungen are not searched, so a key found is the
+ *  start position that, with no Ringstellung, reproduces the crib.  The
+ *  keyspace is divided among the threads of a fork-join pool.
+ *  @author Chris Zhan
+ */
+public final class Bombe {
+
+    /** Search the configuration in the file named by the first argument
+     *  for keys under which the crib (third argument), at the position
+     *  given by the fourth argument, enciphers to part of the ciphertext
+     *  (second argument), printing each candidate as a settings line and
+     *  finally the number of keys tested per second.  The option
+     *  --threads=N searches with N threads, by default one per
+     *  processor.  Exits normally if there are no errors; otherwise with
+     *  code 1. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --=(.*){4}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.Bombe [--threads=N] CONFIG "
+                            + "CIPHERTEXT CRIB POSITION");
+            }
+            List<String> operands = options.get("--");
+            int threads = Runtime.getRuntime().availableProcessors();
+            int position;
+            try {
+                if (options.contains("--threads")) {
+                    threads = Math.max(1, Integer.parseInt(
+                            options.getFirst("--threads")));
+                }
+                position = Integer.parseInt(operands.get(3));
+            } catch (NumberFormatException excp) {
+                throw error("bad number");
+            }
+            Machine machine = new Main(
+                Collections.singletonList(operands.get(0))).readConfig();
+            Bombe bombe = new Bombe(MachineSpec.of(machine), operands.get(1),
+                                    operands.get(2), position);
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+            long keys = bombe.search(pool, candidate -> {
+                synchronized (System.out) {
+                    System.out.println(candidate.settingsLine());
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            System.err.printf("%d keys in %.2f s (%.0f keys/s)%n", keys,
+                              seconds, keys / seconds);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A bombe for machines described by SPEC, seeking keys under which
+     *  CRIB enciphers to the characters of CIPHERTEXT starting at
+     *  POSITION.  Blanks in CIPHERTEXT and CRIB are ignored. */
+    Bombe(MachineSpec spec, String ciphertext, String crib, int position) {
+        _spec = spec;
+        _n = spec.alphabet().size();
+        if (_n > Long.SIZE) {
+            throw error("alphabet too large for the bombe");
+        }
+        int[] cipher = indices(ciphertext);
+        int[] plain = indices(crib);
+        if (plain.length == 0) {
+            throw error("empty crib");
+        }
+        if (position < 0 || position + plain.length > cipher.length) {
+            throw error("crib does not fit the ciphertext at %d", position);
+        }
+        _position = position;
+        _cribLength = plain.length;
+        buildMenu(plain, cipher);
+        _orders = spec.orders();
+        if (_orders.isEmpty()) {
+            throw error("no rotor orders to search");
+        }
+        _movers = new int[_orders.size()][];
+        _notchAt = new boolean[_orders.size()][][];
+        for (int i = 0; i < _movers.length; i += 1) {
+            int[] order = _orders.get(i);
+            _movers[i] = movers(order);
+            _notchAt[i] = new boolean[order.length][];
+            for (int k = 0; k < order.length; k += 1) {
+                _notchAt[i][k] = spec.notchAt(order[k]);
+            }
+        }
+        _each = new int[spec.numRotors()];
+        for (int k = 0; k < _each.length; k += 1) {
+            _each[k] = k;
+        }
+        long starts = 1;
+        for (int k = 1; k < spec.numRotors(); k += 1) {
+            starts *= _n;
+        }
+        _starts = starts;
+    }
+
+    /** Return the alphabet indices of the characters of TEXT, less
+     *  blanks. */
+    private int[] indices(String text) {
+        Alphabet alpha = _spec.alphabet();
+        int[] result = new int[text.length()];
+        int m = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (ch != ' ') {
+                if (!alpha.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                result[m] = alpha.toInt(ch);
+                m += 1;
+            }
+        }
+        return Arrays.copyOf(result, m);
+    }
+
+    /** Record the menu made by PLAIN and the part of CIPHER at my
+     *  position: for each letter, its neighbours and the crib positions
+     *  linking them, and the connected parts with the best-connected
+     *  letter of each. */
+    private void buildMenu(int[] plain, int[] cipher) {
+        int[] degree = new int[_n];
+        for (int j = 0; j < plain.length; j += 1) {
+            degree[plain[j]] += 1;
+            degree[cipher[_position + j]] += 1;
+        }
+        _neighbours = new int[_n][];
+        _links = new int[_n][];
+        int[] fill = new int[_n];
+        for (int x = 0; x < _n; x += 1) {
+            _neighbours[x] = new int[degree[x]];
+            _links[x] = new int[degree[x]];
+        }
+        int[] part = new int[_n];
+        Arrays.fill(part, -1);
+        for (int j = 0; j < plain.length; j += 1) {
+            int a = plain[j], b = cipher[_position + j];
+            _neighbours[a][fill[a]] = b;
+            _links[a][fill[a]] = j;
+            fill[a] += 1;
+            _neighbours[b][fill[b]] = a;
+            _links[b][fill[b]] = j;
+            fill[b] += 1;
+        }
+        ArrayList<Integer> tests = new ArrayList<>();
+        for (int x = 0; x < _n; x += 1) {
+            if (degree[x] == 0 || part[x] >= 0) {
+                continue;
+            }
+            int best = x;
+            ArrayList<Integer> stack = new ArrayList<>();
+            stack.add(x);
+            part[x] = tests.size();
+            while (!stack.isEmpty()) {
+                int y = stack.remove(stack.size() - 1);
+                if (degree[y] > degree[best]) {
+                    best = y;
+                }
+                for (int z : _neighbours[y]) {
+                    if (part[z] < 0) {
+                        part[z] = tests.size();
+                        stack.add(z);
+                    }
+                }
+            }
+            tests.add(best);
+        }
+        _tests = new int[tests.size()];
+        for (int i = 0; i < _tests.length; i += 1) {
+            _tests[i] = tests.get(i);
+        }
+    }
+
+    /** Return the number of keys in my keyspace. */
+    long keys() {
+        return _orders.size() * _starts;
+    }
+
+    /** Test every key using POOL, passing each key that survives to
+     *  OUT, from whichever thread finds it, as soon as it is found.
+     *  Return the number of keys tested. */
+    long search(ForkJoinPool pool, Consumer<Candidate> out) {
+        LongAdder tested = new LongAdder();
+        pool.invoke(new Range(0, keys(), out, tested));
+        return tested.sum();
+    }
+
+    /** Test the keys numbered FROM to TO - 1 in order, passing those that
+     *  survive to OUT, and return how many there were. */
+    long search(long from, long to, Consumer<Candidate> out) {
+        Scratch scratch = new Scratch();
+        for (long key = from; key < to; key += 1) {
+            Candidate candidate = test(key, scratch);
+            if (candidate != null) {
+                out.accept(candidate);
+            }
+        }
+        return to - from;
+    }
+
+    /** A part of the keyspace, tested by splitting it until small. */
+    private final class Range extends RecursiveAction {
+
+        /** Keys FROM to TO - 1, whose survivors go to OUT and whose
+         *  number is added to TESTED. */
+        Range(long from, long to, Consumer<Candidate> out,
+              LongAdder tested) {
+            _from = from;
+            _to = to;
+            _out = out;
+            _tested = tested;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= LEAF_KEYS) {
+                _tested.add(search(_from, _to, _out));
+            } else {
+                long middle = _from + (_to - _from) / 2;
+                invokeAll(new Range(_from, middle, _out, _tested),
+                          new Range(middle, _to, _out, _tested));
+            }
+        }
+
+        /** First key. */
+        private final long _from;
+        /** Key after the last. */
+        private final long _to;
+        /** Destination of survivors. */
+        private final Consumer<Candidate> _out;
+        /** Count of keys tested. */
+        private final LongAdder _tested;
+    }
+
+    /** Working storage for testing keys in one thread. */
+    private final class Scratch {
+        /** Rotor settings by slot at each crib position. */
+        private final int[][] settings =
+            new int[_cribLength][_spec.numRotors()];
+        /** Memoized S_j(u) at j * n + u, valid where stamp matches. */
+        private final int[] substitution = new int[_cribLength * _n];
+        /** The key for which each substitution entry was computed. */
+        private final long[] stamp = new long[_cribLength * _n];
+        /** Values forced on each letter by the current hypothesis. */
+        private final long[] forced = new long[_n];
+        /** Values forced on each letter by the accepted hypotheses. */
+        private final long[] accepted = new long[_n];
+        /** Copies of accepted from before the hypothesis for each part of
+         *  the menu was accepted. */
+        private final long[][] saved = new long[_tests.length][_n];
+        /** Forced (letter, value) pairs, as letter * n + value, in the
+         *  order forced. */
+        private final int[] queue = new int[_n * _n];
+        /** Number of pairs in queue. */
+        private int tail;
+        /** Current rotor order. */
+        private int[] order;
+        /** Key number plus one for which substitution entries are valid. */
+        private long key;
+    }
+
+    /** Return the candidate for key number KEY if it survives, using
+     *  SCRATCH, and otherwise null. */
+    private Candidate test(long key, Scratch scratch) {
+        int index = (int) (key / _starts);
+        int[] order = _orders.get(index);
+        long start = key % _starts;
+        int numRotors = order.length;
+        int[] setting = new int[numRotors];
+        for (int k = numRotors - 1; k >= 1; k -= 1) {
+            setting[k] = (int) (start % _n);
+            start /= _n;
+        }
+        int[] first = setting.clone();
+        int[] movers = _movers[index];
+        boolean[][] notchAt = _notchAt[index];
+        for (int t = 0; t < _position + _cribLength; t += 1) {
+            MachineSpec.step(movers, _each, notchAt, setting, _n, null);
+            if (t >= _position) {
+                System.arraycopy(setting, 0, scratch.settings[t - _position],
+                                 0, numRotors);
+            }
+        }
+        scratch.order = order;
+        scratch.key = key + 1;
+        Arrays.fill(scratch.accepted, 0);
+        if (!solve(0, scratch)) {
+            return null;
+        }
+        return new Candidate(order, first, scratch.accepted);
+    }
+
+    /** Return true iff each part of the menu from the Ith on has a
+     *  hypothesis for the plugboard value of its test letter that is
+     *  consistent with the menu and agrees with those accepted for the
+     *  earlier parts in SCRATCH.accepted, adding what they force to
+     *  SCRATCH.accepted if so.  Every combination of such hypotheses is
+     *  tried before returning false. */
+    private boolean solve(int i, Scratch scratch) {
+        if (i == _tests.length) {
+            return true;
+        }
+        int x = _tests[i];
+        long[] accepted = scratch.accepted, forced = scratch.forced;
+        long[] saved = scratch.saved[i];
+        long untried = _n == Long.SIZE ? -1L : (1L << _n) - 1;
+        while (untried != 0) {
+            int u = Long.numberOfTrailingZeros(untried);
+            untried &= ~(1L << u);
+            if (!propagate(x, u, scratch)) {
+                untried &= ~forced[x];
+                continue;
+            }
+            boolean agrees = true;
+            for (int y = 0; y < _n && agrees; y += 1) {
+                agrees = accepted[y] == 0 || forced[y] == 0
+                    || accepted[y] == forced[y];
+            }
+            if (!agrees) {
+                continue;
+            }
+            System.arraycopy(accepted, 0, saved, 0, _n);
+            for (int y = 0; y < _n; y += 1) {
+                accepted[y] |= forced[y];
+            }
+            if (solve(i + 1, scratch)) {
+                return true;
+            }
+            System.arraycopy(saved, 0, accepted, 0, _n);
+        }
+        return false;
+    }
+
+    /** Propagate the hypothesis that the plugboard takes X to U through
+     *  the menu, recording in SCRATCH.forced the values forced on each
+     *  letter.  Return false as soon as a letter is forced to two
+     *  values. */
+    private boolean propagate(int x, int u, Scratch scratch) {
+        Arrays.fill(scratch.forced, 0);
+        scratch.tail = 0;
+        if (!force(x, u, scratch)) {
+            return false;
+        }
+        int[] queue = scratch.queue;
+        for (int head = 0; head < scratch.tail; head += 1) {
+            int y = queue[head] / _n, v = queue[head] % _n;
+            if (!force(v, y, scratch)) {
+                return false;
+            }
+            int[] neighbours = _neighbours[y], links = _links[y];
+            for (int i = 0; i < neighbours.length; i += 1) {
+                if (!force(neighbours[i], substitute(links[i], v, scratch),
+                           scratch)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /** Force letter Y to value V in SCRATCH, queueing the pair if it is
+     *  new, and return false iff Y is then forced to two values. */
+    private boolean force(int y, int v, Scratch scratch) {
+        long bit = 1L << v;
+        long before = scratch.forced[y];
+        if ((before & bit) != 0) {
+            return true;
+        }
+        scratch.forced[y] = before | bit;
+        scratch.queue[scratch.tail] = y * _n + v;
+        scratch.tail += 1;
+        return before == 0;
+    }
+
+    /** Return S_J(V), the substitution of the rotors alone at crib
+     *  position J under the key being tested in SCRATCH. */
+    private int substitute(int j, int v, Scratch scratch) {
+        int at = j * _n + v;
+        if (scratch.stamp[at] == scratch.key) {
+            return scratch.substitution[at];
+        }
+        int[] order = scratch.order;
+        int[] setting = scratch.settings[j];
+        int c = v;
+        for (int k = order.length - 1; k >= 0; k -= 1) {
+            int s = setting[k];
+            c = _spec.forward(order[k])[c + s] - s;
+            c += c < 0 ? _n : 0;
+        }
+        for (int k = 1; k < order.length; k += 1) {
+            int s = setting[k];
+            c = _spec.backward(order[k])[c + s] - s;
+            c += c < 0 ? _n : 0;
+        }
+        scratch.stamp[at] = scratch.key;
+        scratch.substitution[at] = c;
+        return c;
+    }
+
+    /** Return the slots of ORDER holding rotating rotors. */
+    private int[] movers(int[] order) {
+        int[] result = new int[_spec.numPawls()];
+        for (int k = 0, j = 0; k < order.length; k += 1) {
+            if (_spec.rotates(order[k])) {
+                result[j] = k;
+                j += 1;
+            }
+        }
+        return result;
+    }
+
+    /** A key that survived: a rotor order, start position and the
+     *  plugboard pairs forced by the crib. */
+    final class Candidate {
+
+        /** The key with rotors ORDER at settings SETTING, and plugboard
+         *  values FORCED, one bit for each letter the crib determines. */
+        Candidate(int[] order, int[] setting, long[] forced) {
+            Alphabet alpha = _spec.alphabet();
+            _rotors = new String[order.length];
+            StringBuilder start = new StringBuilder();
+            for (int k = 0; k < order.length; k += 1) {
+                _rotors[k] = _spec.name(order[k]);
+                if (k > 0) {
+                    start.append(alpha.toChar(setting[k]));
+                }
+            }
+            _setting = start.toString();
+            StringBuilder plugs = new StringBuilder();
+            for (int x = 0; x < forced.length; x += 1) {
+                if (forced[x] != 0) {
+                    int y = Long.numberOfTrailingZeros(forced[x]);
+                    if (x < y) {
+                        if (plugs.length() > 0) {
+                            plugs.append(' ');
+                        }
+                        plugs.append('(').append(alpha.toChar(x))
+                            .append(alpha.toChar(y)).append(')');
+                    }
+                }
+            }
+            _plugboard = plugs.toString();
+        }
+
+        /** Return the names of the rotors, reflector first. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return the start position of the rotors after the
+         *  reflector. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard pairs forced by the crib, as cycles. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return a settings line for this key. */
+        String settingsLine() {
+            StringBuilder line = new StringBuilder("*");
+            for (String name : _rotors) {
+                line.append(' ').append(name);
+            }
+            line.append(' ').append(_setting);
+            if (!_plugboard.isEmpty()) {
+                line.append(' ').append(_plugboard);
+            }
+            return line.toString();
+        }
+
+        @Override
+        public String toString() {
+            return settingsLine();
+        }
+
+        /** Rotor names, reflector first. */
+        private final String[] _rotors;
+        /** Start position. */
+        private final String _setting;
+        /** Forced plugboard pairs. */
+        private final String _plugboard;
+    }
+
+    /** Most keys tested by one task. */
+    private static final long LEAF_KEYS = 1 << 12;
+
+    /** The description of the machine searched. */
+    private final MachineSpec _spec;
+    /** The size of its alphabet. */
+    private final int _n;
+    /** Position of the crib in the ciphertext. */
+    private final int _position;
+    /** Number of characters in the crib. */
+    private final int _cribLength;
+    /** Letters joined to each letter by the menu. */
+    private int[][] _neighbours;
+    /** Crib position of each of _neighbours. */
+    private int[][] _links;
+    /** Best-connected letter of each connected part of the menu. */
+    private int[] _tests;
+    /** Rotor orders searched, as available-rotor indices by slot. */
+    private final List<int[]> _orders;
+    /** Slots of the rotating rotors of each of _orders. */
+    private final int[][] _movers;
+    /** Notches of the rotor in each slot of each of _orders. */
+    private final boolean[][][] _notchAt;
+    /** Each slot's own index, as MachineSpec.step takes for slots whose
+     *  settings are kept by slot. */
+    private final int[] _each;
+    /** Start positions for each rotor order. */
+    private final long _starts;
+}
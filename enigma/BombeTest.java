@@ -0,0 +1,113 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Chris Zhan
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a three-slot machine with two pawls and some naval
+     *  rotors. */
+    private static Machine machine() {
+        return TestUtils.naval(3, 2, "B", "I", "II", "III", "IV");
+    }
+
+    private static final String KEY = "* B III I QD (AZ) (BY) (HX) (TR)";
+    private static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD";
+
+    @Test
+    public void testFindsKey() {
+        Machine mach = machine();
+        Main.setUp(mach, KEY);
+        String cipher = mach.convert(PLAIN);
+        String crib = PLAIN.substring(8, 30);
+        Bombe bombe = new Bombe(MachineSpec.of(machine()), cipher, crib, 8);
+        assertEquals(12 * 26 * 26, bombe.keys());
+        List<Bombe.Candidate> found =
+            Collections.synchronizedList(new ArrayList<>());
+        long keys = bombe.search(new ForkJoinPool(2), found::add);
+        assertEquals(bombe.keys(), keys);
+        assertTrue(found.size() < 20);
+        Bombe.Candidate key = null;
+        for (Bombe.Candidate c : found) {
+            if (c.settingsLine().startsWith("* B III I QD")) {
+                key = c;
+            }
+        }
+        assertNotNull(found.toString(), key);
+        Machine check = machine();
+        Main.setUp(check, key.settingsLine());
+        String decoded = check.convert(cipher);
+        assertEquals(crib, decoded.substring(8, 30));
+    }
+
+    @Test
+    public void testRangesAgree() {
+        Machine mach = machine();
+        Main.setUp(mach, KEY);
+        String cipher = mach.convert(PLAIN);
+        Bombe bombe = new Bombe(MachineSpec.of(machine()), cipher,
+                                PLAIN.substring(0, 16), 0);
+        List<String> whole = new ArrayList<>();
+        bombe.search(0, bombe.keys(), c -> whole.add(c.settingsLine()));
+        List<String> halves = new ArrayList<>();
+        long middle = bombe.keys() / 3;
+        bombe.search(0, middle, c -> halves.add(c.settingsLine()));
+        bombe.search(middle, bombe.keys(), c -> halves.add(c.settingsLine()));
+        assertEquals(whole, halves);
+        assertTrue(whole.stream().anyMatch(s -> s.startsWith("* B III I QD")));
+    }
+
+    /** Return the keys found for CRIB enciphered under the settings line
+     *  KEY, having checked that each of them enciphers CRIB the same
+     *  way. */
+    private static List<String> check(String key, String crib) {
+        Machine mach = machine();
+        Main.setUp(mach, key);
+        String cipher = mach.convert(crib);
+        Bombe bombe = new Bombe(MachineSpec.of(machine()), cipher, crib, 0);
+        List<String> found = new ArrayList<>();
+        bombe.search(0, bombe.keys(), c -> found.add(c.settingsLine()));
+        for (String line : found) {
+            Machine check = machine();
+            Main.setUp(check, line);
+            assertEquals(line, cipher, check.convert(crib));
+        }
+        return found;
+    }
+
+    @Test
+    public void testSeveralMenuParts() {
+        List<String> found =
+            check("* B II IV KD (AB) (CD) (EF)", "ATTACKATDAWN");
+        assertTrue(found.toString(),
+                   found.stream().anyMatch(s -> s.startsWith("* B II IV KD")));
+        assertTrue(found.toString(), found.size() < 20);
+        found = check("* B II IV KD (AB)", "WETTERBERICHT");
+        assertTrue(found.toString(),
+                   found.stream().anyMatch(s -> s.startsWith("* B II IV KD")));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new Bombe(MachineSpec.of(machine()), "ABCDEF", "ABCD", 3);
+    }
+}
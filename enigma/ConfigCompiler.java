@@ -0,0 +1,44 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import static enigma.EnigmaException.*;
+
+/** Compiles a machine configuration into a configuration image, which
+ *  Main loads in place of the text form when it is named as the
+ *  configuration file.
+ *  @author Chris Zhan
+ */
+public final class ConfigCompiler {
+
+    /** Compile the configuration file named ARGS[0] into an image in the
+     *  file named ARGS[1].  Exits normally if there are no errors;
+     *  otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.ConfigCompiler CONFIG IMAGE");
+            }
+            Machine machine =
+                new Main(Collections.singletonList(args[0])).readConfig();
+            try (OutputStream out = new BufferedOutputStream(
+                     new FileOutputStream(args[1]))) {
+                ConfigImage.write(machine, out);
+            } catch (IOException excp) {
+                throw error("could not write %s", args[1]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Not instantiable. */
+    private ConfigCompiler() {
+    }
+}
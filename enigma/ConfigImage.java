@@ -0,0 +1,153 @@
+package enigma;
+
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+
+import static enigma.EnigmaException.*;
+
+/** Reads and writes configuration images: machine configurations in a
+ *  binary form that is loaded with a single read and no parsing.  An
+ *  image holds, after its magic number and version, the alphabet, the
+ *  numbers of rotor slots and pawls, and for each rotor its name, kind
+ *  ('M', 'N' or 'R'), notches, and the forward and inverse tables of its
+ *  permutation.  Strings are written as a length followed by UTF-16 code
+ *  units, and table entries as unsigned 16-bit alphabet indices.
+ *  @author Chris Zhan
+ */
+final class ConfigImage {
+
+    /** Not instantiable. */
+    private ConfigImage() {
+    }
+
+    /** Return true iff the file named NAME begins as an image does. */
+    static boolean isImage(String name) throws IOException {
+        try (InputStream in = new FileInputStream(name)) {
+            byte[] head = new byte[Integer.BYTES];
+            int n = in.readNBytes(head, 0, head.length);
+            return n == head.length
+                && ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+    }
+
+    /** Write the configuration of MACHINE (its alphabet, numbers of slots
+     *  and pawls, and available rotors) to OUT as an image. */
+    static void write(Machine machine, OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        Alphabet alphabet = machine.alphabet();
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        writeString(data, alphabet.chars());
+        data.writeInt(machine.numRotors());
+        data.writeInt(machine.numPawls());
+        Rotor[] rotors = machine.availableRotors();
+        data.writeInt(rotors.length);
+        for (Rotor r : rotors) {
+            writeString(data, r.name());
+            if (r.reflecting()) {
+                data.writeByte('R');
+            } else if (r.rotates()) {
+                data.writeByte('M');
+            } else {
+                data.writeByte('N');
+            }
+            writeString(data, r.notches());
+            Permutation perm = r.permutation();
+            for (int i = 0; i < alphabet.size(); i += 1) {
+                data.writeChar(perm.permute(i));
+            }
+            for (int i = 0; i < alphabet.size(); i += 1) {
+                data.writeChar(perm.invert(i));
+            }
+        }
+        data.flush();
+    }
+
+    /** Return a machine configured by the image in the file named
+     *  NAME. */
+    static Machine read(String name) throws IOException {
+        ByteBuffer image =
+            ByteBuffer.wrap(Files.readAllBytes(Paths.get(name)));
+        try {
+            if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+                throw error("%s is not a configuration image of version %d",
+                            name, VERSION);
+            }
+            Alphabet alphabet = new Alphabet(readString(image));
+            int numRotors = image.getInt();
+            int numPawls = image.getInt();
+            int count = image.getInt();
+            if (count < 0) {
+                throw error("bad rotor count in %s", name);
+            }
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (int k = 0; k < count; k += 1) {
+                rotors.add(readRotor(image, alphabet));
+            }
+            if (image.hasRemaining()) {
+                throw error("extra data at end of %s", name);
+            }
+            return new Machine(alphabet, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException excp) {
+            throw error("configuration image %s truncated", name);
+        }
+    }
+
+    /** Return the next rotor in IMAGE, whose alphabet is ALPHABET. */
+    private static Rotor readRotor(ByteBuffer image, Alphabet alphabet) {
+        String name = readString(image);
+        byte kind = image.get();
+        String notches = readString(image);
+        int[] forward = new int[alphabet.size()];
+        int[] inverse = new int[alphabet.size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = image.getChar();
+        }
+        for (int i = 0; i < inverse.length; i += 1) {
+            inverse[i] = image.getChar();
+        }
+        Permutation perm = new Permutation(alphabet, forward, inverse);
+        if (kind == 'M') {
+            return new MovingRotor(name, perm, notches);
+        } else if (kind == 'N') {
+            return new FixedRotor(name, perm);
+        } else if (kind == 'R') {
+            return new Reflector(name, perm);
+        }
+        throw error("bad rotor kind in configuration image");
+    }
+
+    /** Write S to DATA as its length followed by its characters. */
+    private static void writeString(DataOutputStream data, String s)
+        throws IOException {
+        data.writeInt(s.length());
+        data.writeChars(s);
+    }
+
+    /** Return the string written by writeString at the current position
+     *  of IMAGE. */
+    private static String readString(ByteBuffer image) {
+        int length = image.getInt();
+        if (length < 0 || length > image.remaining() / Character.BYTES) {
+            throw new BufferUnderflowException();
+        }
+        char[] chars = new char[length];
+        image.asCharBuffer().get(chars);
+        image.position(image.position() + length * Character.BYTES);
+        return new String(chars);
+    }
+
+    /** First integer of an image.  Its leading zero byte cannot begin a
+     *  text configuration. */
+    static final int MAGIC = 0x00456e43;
+    /** Version of the image format written. */
+    static final int VERSION = 1;
+}
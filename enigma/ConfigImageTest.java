@@ -0,0 +1,83 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ConfigImage class.
+ *  @author Chris Zhan
+ */
+public class ConfigImageTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    /** Return the image of MACH. */
+    private static byte[] image(Machine mach) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ConfigImage.write(mach, out);
+        return out.toByteArray();
+    }
+
+    /** Return the machine read from an image holding BYTES. */
+    private static Machine read(byte[] bytes) throws IOException {
+        Path file = Files.createTempFile("enigma", ".img");
+        try {
+            Files.write(file, bytes);
+            assertTrue(ConfigImage.isImage(file.toString()));
+            return ConfigImage.read(file.toString());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Machine mach = TestUtils.naval();
+        Machine copy = read(image(mach));
+        assertEquals(mach.alphabet().chars(), copy.alphabet().chars());
+        assertEquals(mach.numRotors(), copy.numRotors());
+        assertEquals(mach.numPawls(), copy.numPawls());
+        HashMap<String, Rotor> rotors = new HashMap<>();
+        for (Rotor r : copy.availableRotors()) {
+            rotors.put(r.name(), r);
+        }
+        for (Rotor r : mach.availableRotors()) {
+            Rotor c = rotors.get(r.name());
+            assertEquals(r.getClass(), c.getClass());
+            assertEquals(r.notches(), c.notches());
+            assertTrue(r.permutation().sameMapping(c.permutation()));
+            for (int i = 0; i < r.size(); i += 1) {
+                assertEquals(r.permutation().invert(i),
+                             c.permutation().invert(i));
+            }
+        }
+        String settings = "* B Beta III IV I AXLE BCDE (YF) (ZH)";
+        Main.setUp(mach, settings);
+        Main.setUp(copy, settings);
+        assertEquals(mach.convert("FROMHISSHOULDERHIAWATHA"),
+                     copy.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTruncated() throws IOException {
+        byte[] bytes = image(TestUtils.naval());
+        read(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testTablesNotInverses() {
+        Alphabet abc = new Alphabet("ABC");
+        new Permutation(abc, new int[] {1, 2, 0}, new int[] {1, 2, 0});
+    }
+}
@@ -0,0 +1,73 @@
+package enigma;
+
+/** An Enigma machine as seen by settings lines and messages: it can be
+ *  set up, as by Main.setUp, and can convert text.  Implemented by
+ *  Machine, whose rotors are objects of their own, and by MachineState,
+ *  which keeps only positions and shares an immutable MachineSpec.
+ *  @author Chris Zhan
+ */
+abstract class Enigma {
+
+    /** Return my alphabet. */
+    abstract Alphabet alphabet();
+
+    /** Return the number of rotor slots I have. */
+    abstract int numRotors();
+
+    /** Return the number pawls (and thus rotating rotors) I have. */
+    abstract int numPawls();
+
+    /** Set my rotor slots to the rotors named ROTORS from my set of
+     *  available rotors (ROTORS[0] names the reflector). */
+    abstract void insertRotors(String[] rotors);
+
+    /** Set my rotors according to SETTING, which must be a string of
+     *  numRotors()-1 characters in my alphabet. */
+    abstract void setRotors(String setting);
+
+    /** Set my rotors' Ringstellung according to RINGSTELLUNG, which must
+     *  be a string of numRotors()-1 characters in my alphabet.  The first
+     *  Ringstellung also moves the notches of the rotors in my slots. */
+    abstract void setRingstellung(String ringstellung);
+
+    /** Return the current plugboard's permutation. */
+    abstract Permutation plugboard();
+
+    /** Set the plugboard to PLUGBOARD. */
+    abstract void setPlugboard(Permutation plugboard);
+
+    /** Return the cache of my setups, or null. */
+    abstract SetupCache setupCache();
+
+    /** Record setups in CACHE, or stop recording them if CACHE is
+     *  null. */
+    abstract void setSetupCache(SetupCache cache);
+
+    /** Return my current rotors, settings and plugboard as a setup that
+     *  RINGED iff it included a Ringstellung. */
+    abstract SetupCache.Setup saveSetup(boolean ringed);
+
+    /** Put me in the state recorded by SETUP and return true, or return
+     *  false, doing nothing, if SETUP includes my first Ringstellung. */
+    abstract boolean restoreSetup(SetupCache.Setup setup);
+
+    /** Convert the LEN characters of IN starting at OFF, placing the
+     *  results in OUT starting at OUTOFF and advancing my rotors
+     *  accordingly.  Blanks in the input are skipped, so the result is
+     *  the number of characters written, which is at most LEN.  IN and
+     *  OUT may be the same array, provided OUTOFF <= OFF. */
+    abstract int convert(char[] in, int off, int len, char[] out,
+                         int outOff);
+
+    /** Return the name of the engine with which I convert, for
+     *  reports. */
+    abstract String engine();
+
+    /** Returns the encoding/decoding of MSG, updating the state of
+     *  the rotors accordingly. */
+    String convert(String msg) {
+        char[] buffer = msg.toCharArray();
+        int n = convert(buffer, 0, buffer.length, buffer, 0);
+        return new String(buffer, 0, n);
+    }
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/** Java Flight Recorder events for the costly steps of setting up and
+ *  using a machine.  All are disabled by default, and so are never
+ *  recorded unless a recording enables them by name, as a settings file
+ *  given to -XX:StartFlightRecording:settings=FILE or JFR.start does
+ *  with
+ *  <pre>
+ *      &lt;event name="enigma.Message"&gt;
+ *        &lt;setting name="enabled"&gt;true&lt;/setting&gt;
+ *      &lt;/event&gt;
+ *  </pre>
+ *  Creating the first event starts the recorder's machinery, which
+ *  takes a large part of the startup time of a short run, so callers
+ *  create events only while recording(), and fill in their fields only
+ *  once shouldCommit() is true.  While a recorder is running with these
+ *  events disabled, begin() and commit() do nothing, and the event
+ *  object, never escaping, is not allocated in compiled code.  No event
+ *  records settings lines or text, which are secret.
+ *  @author Chris Zhan
+ */
+final class Events {
+
+    /** Not instantiable. */
+    private Events() {
+    }
+
+    /** Return true iff Flight Recorder has started in this JVM, so that
+     *  events might be recorded. */
+    static boolean recording() {
+        return FlightRecorder.isInitialized();
+    }
+
+    /** Main.readConfig reading a configuration. */
+    @Name("enigma.ReadConfig")
+    @Label("Read Configuration")
+    @Category("Enigma")
+    @Description("Reading a configuration file or image")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class ReadConfig extends Event {
+        @Label("Configuration")
+        String config;
+
+        @Label("Image")
+        @Description("True iff read from an image made by ConfigCompiler")
+        boolean image;
+
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        @Label("Rotor Slots")
+        int rotors;
+
+        @Label("Pawls")
+        int pawls;
+    }
+
+    /** Main.setUp applying a settings line. */
+    @Name("enigma.SetUp")
+    @Label("Set Up")
+    @Category("Enigma")
+    @Description("Applying a settings line to a machine")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SetUp extends Event {
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        @Label("Rotor Slots")
+        int rotors;
+
+        @Label("Cached")
+        @Description("True iff restored from the setup cache")
+        boolean cached;
+
+        @Label("Engine")
+        String engine;
+    }
+
+    /** Machine.insertRotors filling the rotor slots. */
+    @Name("enigma.InsertRotors")
+    @Label("Insert Rotors")
+    @Category("Enigma")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class InsertRotors extends Event {
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        @Label("Rotors")
+        int rotors;
+
+        @Label("Moving Rotors")
+        int moving;
+    }
+
+    /** Machine.setRingstellung setting the rings. */
+    @Name("enigma.SetRingstellung")
+    @Label("Set Ringstellung")
+    @Category("Enigma")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class SetRingstellung extends Event {
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        @Label("Rotors")
+        int rotors;
+
+        @Label("First")
+        @Description("True iff this Ringstellung also moved the notches")
+        boolean first;
+    }
+
+    /** StreamProcessor converting one message line. */
+    @Name("enigma.Message")
+    @Label("Message")
+    @Category("Enigma")
+    @Description("Converting one message line")
+    @Enabled(false)
+    @StackTrace(false)
+    static final class Message extends Event {
+        @Label("Alphabet Size")
+        int alphabetSize;
+
+        @Label("Rotor Slots")
+        int rotors;
+
+        @Label("Length")
+        @Description("Characters converted in the line")
+        long length;
+
+        @Label("Engine")
+        String engine;
+    }
+}
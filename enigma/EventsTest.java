@@ -0,0 +1,162 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Events class.
+ *  @author Chris Zhan
+ */
+public class EventsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    private static final String INPUT =
+        "* B Beta III IV I AXLE QQQQ (HQ) (EX)\nHELLO WORLD\nFROM HIAWATHA\n"
+        + "* B Beta III IV I AXLE QQQQ (HQ) (EX)\nHELLO\n";
+
+    private static final String[] NAMES = {
+        "enigma.SetUp", "enigma.InsertRotors", "enigma.SetRingstellung",
+        "enigma.Message",
+    };
+
+    /** Return a machine with some of the naval rotors, fused and with a
+     *  setup cache, as Main sets it up. */
+    private static Machine naval() {
+        Machine result = TestUtils.naval();
+        result.setFused(true);
+        result.setSetupCache(new SetupCache(4));
+        return result;
+    }
+
+    /** Return the events named "enigma.*" recorded while processing
+     *  INPUT by RECORDING, with the event NAMES enabled. */
+    private static List<RecordedEvent> record(Recording recording,
+                                              String... names)
+        throws IOException {
+        return record(recording, -1, names);
+    }
+
+    /** Return the events named "enigma.*" recorded while processing
+     *  INPUT by RECORDING, with the event NAMES enabled, in two pieces cut
+     *  at CUT, which falls within a message line, if CUT is not
+     *  negative. */
+    private static List<RecordedEvent> record(Recording recording, int cut,
+                                              String... names)
+        throws IOException {
+        for (String name : names) {
+            recording.enable(name).withoutThreshold();
+        }
+        Path file = Files.createTempFile("enigma", ".jfr");
+        try {
+            recording.start();
+            if (cut < 0) {
+                new StreamProcessor(naval(), new StringReader(INPUT),
+                                    new StringWriter()).process();
+            } else {
+                Machine mach = naval();
+                String line = INPUT.substring(INPUT.lastIndexOf('\n', cut)
+                                              + 1, cut);
+                new StreamProcessor(mach,
+                                    new StringReader(INPUT.substring(0, cut)),
+                                    new StringWriter()).processStart(false);
+                new StreamProcessor(mach,
+                                    new StringReader(INPUT.substring(cut)),
+                                    new StringWriter())
+                    .processRegion(line.replace(" ", "").length(), true);
+            }
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> result = new ArrayList<>();
+            for (RecordedEvent event : RecordingFile.readAllEvents(file)) {
+                if (event.getEventType().getName().startsWith("enigma.")) {
+                    result.add(event);
+                }
+            }
+            return result;
+        } finally {
+            recording.close();
+            Files.delete(file);
+        }
+    }
+
+    /** Return the events in EVENTS named NAME. */
+    private static List<RecordedEvent> named(List<RecordedEvent> events,
+                                             String name) {
+        List<RecordedEvent> result = new ArrayList<>();
+        for (RecordedEvent event : events) {
+            if (event.getEventType().getName().equals(name)) {
+                result.add(event);
+            }
+        }
+        return result;
+    }
+
+    @Test
+    public void testDisabledByDefault() throws IOException {
+        assertTrue(record(new Recording()).isEmpty());
+    }
+
+    @Test
+    public void testEvents() throws IOException {
+        List<RecordedEvent> events = record(new Recording(), NAMES);
+
+        List<RecordedEvent> setUps = named(events, "enigma.SetUp");
+        assertEquals(2, setUps.size());
+        assertFalse(setUps.get(0).getBoolean("cached"));
+        assertTrue(setUps.get(1).getBoolean("cached"));
+        assertEquals(26, setUps.get(0).getInt("alphabetSize"));
+        assertEquals(5, setUps.get(0).getInt("rotors"));
+        assertEquals("fused", setUps.get(0).getString("engine"));
+
+        List<RecordedEvent> inserts = named(events, "enigma.InsertRotors");
+        assertEquals(1, inserts.size());
+        assertEquals(3, inserts.get(0).getInt("moving"));
+
+        List<RecordedEvent> rings = named(events, "enigma.SetRingstellung");
+        assertEquals(1, rings.size());
+        assertTrue(rings.get(0).getBoolean("first"));
+
+        List<RecordedEvent> messages = named(events, "enigma.Message");
+        assertEquals(3, messages.size());
+        assertEquals(10, messages.get(0).getLong("length"));
+        assertEquals(12, messages.get(1).getLong("length"));
+        assertEquals(5, messages.get(2).getLong("length"));
+        assertEquals("fused", messages.get(0).getString("engine"));
+    }
+
+    @Test
+    public void testSplitLine() throws IOException {
+        List<RecordedEvent> messages =
+            named(record(new Recording(), INPUT.indexOf("WORLD") + 2,
+                         "enigma.Message"), "enigma.Message");
+        assertEquals(3, messages.size());
+        assertEquals(10, messages.get(0).getLong("length"));
+    }
+
+    @Test
+    public void testEngines() {
+        Machine mach = naval();
+        assertEquals("fused", mach.engine());
+        mach.setFused(false);
+        assertEquals("rotors", mach.engine());
+        assertEquals("state",
+                     new MachineState(MachineSpec.of(mach)).engine());
+    }
+}
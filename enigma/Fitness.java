@@ -0,0 +1,19 @@
+package enigma;
+
+/** A measure of how much a text, given as alphabet indices, looks like
+ *  plaintext.  A text's score is the sum of the scores of its windows:
+ *  the runs of span() consecutive characters starting at each position
+ *  that has that many characters left.  Because each character counts
+ *  only in the windows that hold it, changing a few characters changes
+ *  the score only in the windows around them.
+ *  @author Chris Zhan
+ */
+interface Fitness {
+
+    /** Return the number of characters in each window, at least 1. */
+    int span();
+
+    /** Return the score of the window of TEXT starting at START, which
+     *  has span() characters left.  Larger scores are better. */
+    double window(int[] text, int start);
+}
@@ -19,9 +19,6 @@ class FixedRotor extends Rotor {
         int inputAddSetting = p + setting();
         int permute = permutation().permute(inputAddSetting);
         int result = permute - setting();
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
         return permutation().wrap(result);
     }
     @Override
@@ -29,12 +26,16 @@ class FixedRotor extends Rotor {
         int inputAddSetting = e + setting();
         int permute = permutation().invert(inputAddSetting);
         int result = permute - setting();
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
         return permutation().wrap(result);
     }
 
+    @Override
+    Rotor copy() {
+        Rotor result = new FixedRotor(name(), permutation());
+        result.set(setting());
+        return result;
+    }
+
     /** My setting, an integer corresponding to alphabet's index. */
     private int _setting;
 }
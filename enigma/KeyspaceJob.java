@@ -0,0 +1,411 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ForkJoinPool;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** An exhaustive known-plaintext search of every rotor order, start
+ *  position and Ringstellung of a configuration, kept in a directory so
+ *  that it can be shared by several worker processes and survive their
+ *  crashes and restarts.
+ *
+ *  <p>The keyspace, each rotor order's PositionSearch keys in turn, is
+ *  cut into numbered shards.  A worker claims a shard by taking an
+ *  exclusive lock on its lock file, which the operating system releases
+ *  if the worker dies, and searches it in chunks.  After each chunk it
+ *  appends the chunk's candidates to the shard's results file, forces
+ *  them to disk, and then replaces the shard's progress file, which
+ *  records the next key to test and the length of the results that go
+ *  with it.  A worker taking over a shard truncates its results to that
+ *  length and carries on from that key, so no key's candidates are lost
+ *  or reported twice, and at most a chunk is repeated.  A shard is done
+ *  when its progress reaches its last key.
+ *
+ *  <p>The directory holds the job's description, in "job", and for shard
+ *  N the files "N.lock", "N.progress" and "N.results".
+ *  @author Chris Zhan
+ */
+public final class KeyspaceJob {
+
+    /** Work on the job in the directory named by the first argument,
+     *  first creating it if the directory has none, from the
+     *  configuration file, plaintext, ciphertext and optional plugboard
+     *  cycles given by the remaining arguments.  Claims and searches
+     *  shards until none is left unclaimed, then, if every shard is done,
+     *  prints every candidate as a settings line.  The option --threads=N
+     *  searches with N threads, by default one per processor, and
+     *  --shard=K makes a new job's shards K keys long.  Exits normally if
+     *  there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --shard=(\\d+) "
+                                + "--=(.*){1,5}", args);
+            List<String> operands = options.get("--");
+            if (!options.ok() || operands.size() == 2
+                || operands.size() == 3) {
+                throw error("Usage: java enigma.KeyspaceJob [--threads=N] "
+                            + "[--shard=K] DIR [CONFIG PLAINTEXT CIPHERTEXT "
+                            + "[PLUGBOARD]]");
+            }
+            int threads = Runtime.getRuntime().availableProcessors();
+            long shard = SHARD_KEYS;
+            try {
+                if (options.contains("--threads")) {
+                    threads = Math.max(1, Integer.parseInt(
+                            options.getFirst("--threads")));
+                }
+                if (options.contains("--shard")) {
+                    shard = Math.max(1, Long.parseLong(
+                            options.getFirst("--shard")));
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad number");
+            }
+            Path dir = Paths.get(operands.get(0));
+            KeyspaceJob job;
+            try {
+                if (operands.size() == 1) {
+                    job = open(dir);
+                } else {
+                    job = create(dir, operands.get(1), operands.get(2),
+                                 operands.get(3),
+                                 operands.size() > 4 ? operands.get(4) : "",
+                                 shard, CHECKPOINT_KEYS);
+                }
+                ForkJoinPool pool = new ForkJoinPool(threads);
+                long start = System.nanoTime();
+                int worked = job.work(pool, Integer.MAX_VALUE);
+                double seconds = (System.nanoTime() - start) / 1e9;
+                pool.shutdown();
+                int done = job.done();
+                System.err.printf("%d shards searched here in %.2f s; "
+                                  + "%d of %d done%n", worked, seconds,
+                                  done, job.shards());
+                if (done == job.shards()) {
+                    for (String line : job.results()) {
+                        System.out.println(line);
+                    }
+                }
+            } catch (IOException excp) {
+                throw error("job in %s: %s", dir, excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the job in DIR, creating it if DIR has none as a search of
+     *  the configuration in the file named CONFIG for keys enciphering
+     *  PLAINTEXT to CIPHERTEXT under the plugboard cycles PLUGBOARD, in
+     *  shards of SHARD keys, checkpointed every CHECKPOINT keys.  If DIR
+     *  has a job, it must be the same one. */
+    static KeyspaceJob create(Path dir, String config, String plaintext,
+                              String ciphertext, String plugboard,
+                              long shard, long checkpoint)
+        throws IOException {
+        Properties job = new Properties();
+        job.setProperty("config", Paths.get(config).toAbsolutePath()
+                        .toString());
+        job.setProperty("plaintext", plaintext);
+        job.setProperty("ciphertext", ciphertext);
+        job.setProperty("plugboard", plugboard);
+        job.setProperty("shard", Long.toString(shard));
+        job.setProperty("checkpoint", Long.toString(checkpoint));
+        KeyspaceJob result = new KeyspaceJob(dir, job);
+        Files.createDirectories(dir);
+        Path temp = Files.createTempFile(dir, "job", ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                job.store(out, "enigma keyspace job");
+            }
+            Files.move(temp, dir.resolve(JOB));
+        } catch (FileAlreadyExistsException excp) {
+            if (!open(dir)._job.equals(job)) {
+                throw error("%s already holds a different job", dir);
+            }
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return result;
+    }
+
+    /** Return the job in DIR. */
+    static KeyspaceJob open(Path dir) throws IOException {
+        Properties job = new Properties();
+        try (InputStream in = Files.newInputStream(dir.resolve(JOB))) {
+            job.load(in);
+        }
+        return new KeyspaceJob(dir, job);
+    }
+
+    /** The job in DIR described by JOB. */
+    private KeyspaceJob(Path dir, Properties job) {
+        _dir = dir;
+        _job = job;
+        Machine machine = new Main(Collections.singletonList(
+                property("config"))).readConfig();
+        _spec = MachineSpec.of(machine);
+        try {
+            _shardKeys = Long.parseLong(property("shard"));
+            _checkpointKeys = Long.parseLong(property("checkpoint"));
+        } catch (NumberFormatException excp) {
+            throw error("bad shard size in job");
+        }
+        if (_shardKeys <= 0 || _checkpointKeys <= 0) {
+            throw error("bad shard size in job");
+        }
+        _orders = _spec.orders();
+        if (_orders.isEmpty()) {
+            throw error("no rotor orders to search");
+        }
+        _searches = new PositionSearch[_orders.size()];
+        _keys = search(0).keys();
+        _shardsPerOrder = (int) ((_keys + _shardKeys - 1) / _shardKeys);
+        if ((long) _shardsPerOrder * _orders.size() > Integer.MAX_VALUE) {
+            throw error("too many shards");
+        }
+    }
+
+    /** Return the value of property KEY of my description. */
+    private String property(String key) {
+        String value = _job.getProperty(key);
+        if (value == null) {
+            throw error("job has no %s", key);
+        }
+        return value;
+    }
+
+    /** Return the search of rotor order number ORDER. */
+    private PositionSearch search(int order) {
+        if (_searches[order] == null) {
+            int[] slots = _orders.get(order);
+            String[] rotors = new String[slots.length];
+            for (int k = 0; k < slots.length; k += 1) {
+                rotors[k] = _spec.name(slots[k]);
+            }
+            _searches[order] =
+                new PositionSearch(_spec, rotors, property("plugboard"),
+                                   property("plaintext"),
+                                   property("ciphertext"));
+        }
+        return _searches[order];
+    }
+
+    /** Return the number of shards. */
+    int shards() {
+        return _shardsPerOrder * _orders.size();
+    }
+
+    /** Return the first key of SHARD within its rotor order's
+     *  search. */
+    private long first(int shard) {
+        return shard % _shardsPerOrder * _shardKeys;
+    }
+
+    /** Return the key after the last of SHARD within its rotor order's
+     *  search. */
+    private long last(int shard) {
+        return Math.min(first(shard) + _shardKeys, _keys);
+    }
+
+    /** Return the number of shards done. */
+    int done() throws IOException {
+        int result = 0;
+        for (int shard = 0; shard < shards(); shard += 1) {
+            if (progress(shard)[0] == last(shard)) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Claim and search shards with POOL, stopping after CHUNKS chunks,
+     *  until every shard is done or claimed by another worker, and
+     *  return the number of shards this call finished. */
+    int work(ForkJoinPool pool, int chunks) throws IOException {
+        int finished = 0;
+        for (int shard = 0; shard < shards() && chunks > 0; shard += 1) {
+            if (progress(shard)[0] == last(shard)) {
+                continue;
+            }
+            try (FileChannel lockFile =
+                     FileChannel.open(file(shard, LOCK),
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.WRITE)) {
+                FileLock lock;
+                try {
+                    lock = lockFile.tryLock();
+                } catch (OverlappingFileLockException excp) {
+                    lock = null;
+                }
+                if (lock == null) {
+                    continue;
+                }
+                try {
+                    int used = run(shard, pool, chunks);
+                    chunks -= used;
+                    if (progress(shard)[0] == last(shard)) {
+                        finished += 1;
+                    }
+                } finally {
+                    lock.release();
+                }
+            }
+        }
+        return finished;
+    }
+
+    /** Search the remaining keys of SHARD, which I have claimed, with
+     *  POOL, stopping after CHUNKS chunks.  Return the number of chunks
+     *  searched. */
+    private int run(int shard, ForkJoinPool pool, int chunks)
+        throws IOException {
+        long[] progress = progress(shard);
+        long next = progress[0], end = last(shard);
+        PositionSearch search = search(shard / _shardsPerOrder);
+        int used = 0;
+        try (FileChannel results =
+                 FileChannel.open(file(shard, RESULTS),
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.WRITE)) {
+            results.truncate(progress[1]);
+            results.position(progress[1]);
+            while (next < end && used < chunks) {
+                long to = Math.min(next + _checkpointKeys, end);
+                List<String> found =
+                    Collections.synchronizedList(new ArrayList<>());
+                search.search(pool, next, to,
+                              c -> found.add(c.settingsLine()));
+                Collections.sort(found);
+                StringBuilder text = new StringBuilder();
+                for (String line : found) {
+                    text.append(line).append('\n');
+                }
+                ByteBuffer bytes = ByteBuffer.wrap(
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+                while (bytes.hasRemaining()) {
+                    results.write(bytes);
+                }
+                results.force(false);
+                next = to;
+                setProgress(shard, next, results.position());
+                used += 1;
+            }
+        }
+        return used;
+    }
+
+    /** Return the progress of SHARD: the next key to test and the length
+     *  of the results so far. */
+    private long[] progress(int shard) throws IOException {
+        Path file = file(shard, PROGRESS);
+        if (!Files.exists(file)) {
+            return new long[] { first(shard), 0 };
+        }
+        String[] fields = new String(Files.readAllBytes(file),
+                                     StandardCharsets.UTF_8).trim()
+            .split("\\s+");
+        try {
+            return new long[] { Long.parseLong(fields[0]),
+                                Long.parseLong(fields[1]) };
+        } catch (NumberFormatException | ArrayIndexOutOfBoundsException excp) {
+            throw error("bad progress file %s", file);
+        }
+    }
+
+    /** Record that SHARD has tested the keys before NEXT, with LENGTH
+     *  bytes of results, replacing its progress file whole. */
+    private void setProgress(int shard, long next, long length)
+        throws IOException {
+        Path temp = Files.createTempFile(_dir, shard + ".", ".tmp");
+        try {
+            try (FileChannel out = FileChannel.open(
+                     temp, StandardOpenOption.WRITE)) {
+                out.write(ByteBuffer.wrap((next + " " + length + "\n")
+                                          .getBytes(StandardCharsets.UTF_8)));
+                out.force(false);
+            }
+            Files.move(temp, file(shard, PROGRESS),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /** Return the file of SHARD with suffix SUFFIX. */
+    private Path file(int shard, String suffix) {
+        return _dir.resolve(shard + suffix);
+    }
+
+    /** Return every candidate found, shard by shard, each shard's in
+     *  order. */
+    List<String> results() throws IOException {
+        ArrayList<String> result = new ArrayList<>();
+        for (int shard = 0; shard < shards(); shard += 1) {
+            long length = progress(shard)[1];
+            Path file = file(shard, RESULTS);
+            if (length > 0) {
+                byte[] bytes = Files.readAllBytes(file);
+                String text = new String(bytes, 0, (int) length,
+                                         StandardCharsets.UTF_8);
+                for (String line : text.split("\n")) {
+                    result.add(line);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Name of the job's description. */
+    static final String JOB = "job";
+    /** Suffixes of each shard's lock, progress and results files. */
+    static final String LOCK = ".lock", PROGRESS = ".progress",
+        RESULTS = ".results";
+    /** Default number of keys in a shard. */
+    static final long SHARD_KEYS = 1L << 28;
+    /** Number of keys searched between checkpoints. */
+    static final long CHECKPOINT_KEYS = 1L << 22;
+
+    /** Directory holding the job. */
+    private final Path _dir;
+    /** The job's description. */
+    private final Properties _job;
+    /** The description of the machine searched. */
+    private final MachineSpec _spec;
+    /** Rotor orders searched, as available-rotor indices by slot. */
+    private final List<int[]> _orders;
+    /** Search of each rotor order, made when first needed. */
+    private final PositionSearch[] _searches;
+    /** Number of keys in each rotor order's search. */
+    private final long _keys;
+    /** Number of keys in each shard. */
+    private final long _shardKeys;
+    /** Number of keys between checkpoints. */
+    private final long _checkpointKeys;
+    /** Number of shards for each rotor order. */
+    private final int _shardsPerOrder;
+}
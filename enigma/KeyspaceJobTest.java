@@ -0,0 +1,163 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the KeyspaceJob class.
+ *  @author Chris Zhan
+ */
+public class KeyspaceJobTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    /** A three-slot configuration with three rotating rotors. */
+    private static final String CONFIG =
+        "ABCDEFGHIJKLMNOPQRSTUVWXYZ\n 3 2\n"
+        + " I MQ (AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)\n"
+        + " II ME (FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)\n"
+        + " III MV (ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)\n"
+        + " B R (AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX)"
+        + " (SZ) (TV)\n";
+
+    private static final String PLAIN = "HIAWATHA";
+    private static final String KEY = "* B III I QD XF (AZ)";
+
+    /** Directory holding the configuration and jobs. */
+    private Path _dir;
+    /** The configuration file. */
+    private String _config;
+    /** PLAIN enciphered under KEY. */
+    private String _cipher;
+
+    @Before
+    public void setUp() throws IOException {
+        _dir = Files.createTempDirectory("enigma");
+        Path config = _dir.resolve("naval.conf");
+        Files.write(config, CONFIG.getBytes(StandardCharsets.US_ASCII));
+        _config = config.toString();
+        Machine mach = new Main(Collections.singletonList(_config))
+            .readConfig();
+        Main.setUp(mach, KEY);
+        _cipher = mach.convert(PLAIN);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(_dir)) {
+            for (Path file : (Iterable<Path>) files.sorted(
+                     Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    /** Return a new job in subdirectory NAME. */
+    private KeyspaceJob job(String name) throws IOException {
+        return KeyspaceJob.create(_dir.resolve(name), _config, PLAIN,
+                                  _cipher, "(AZ)", 5000, 1000);
+    }
+
+    /** Return every candidate of every rotor order, searched directly. */
+    private List<String> expected() {
+        MachineSpec spec = MachineSpec.of(new Main(
+            Collections.singletonList(_config)).readConfig());
+        List<String> result = new ArrayList<>();
+        for (int[] order : spec.orders()) {
+            String[] rotors = new String[order.length];
+            for (int k = 0; k < order.length; k += 1) {
+                rotors[k] = spec.name(order[k]);
+            }
+            PositionSearch search =
+                new PositionSearch(spec, rotors, "(AZ)", PLAIN, _cipher);
+            search.search(0, search.keys(),
+                          c -> result.add(c.settingsLine()));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    /** Return RESULTS sorted. */
+    private static List<String> sorted(List<String> results) {
+        List<String> result = new ArrayList<>(results);
+        Collections.sort(result);
+        return result;
+    }
+
+    @Test
+    public void testWholeJob() throws IOException {
+        KeyspaceJob job = job("whole");
+        assertEquals(6 * 4, job.shards());
+        assertEquals(job.shards(), job.work(new ForkJoinPool(2),
+                                            Integer.MAX_VALUE));
+        assertEquals(job.shards(), job.done());
+        List<String> results = job.results();
+        assertTrue(results.contains(KEY));
+        assertEquals(expected(), sorted(results));
+    }
+
+    @Test
+    public void testResume() throws IOException {
+        KeyspaceJob job = job("resume");
+        ForkJoinPool pool = new ForkJoinPool(1);
+        assertEquals(1, job.work(pool, 7));
+        assertEquals(1, job.done());
+        Files.write(_dir.resolve("resume").resolve("1.results"),
+                    "* B I II AA AA\n".getBytes(StandardCharsets.UTF_8),
+                    StandardOpenOption.APPEND);
+        KeyspaceJob again = KeyspaceJob.open(_dir.resolve("resume"));
+        assertEquals(again.shards() - 1, again.work(pool,
+                                                    Integer.MAX_VALUE));
+        assertEquals(again.shards(), again.done());
+        assertEquals(expected(), sorted(again.results()));
+    }
+
+    @Test
+    public void testWorkersShare() throws Exception {
+        job("shared");
+        Process[] workers = new Process[2];
+        for (int i = 0; i < workers.length; i += 1) {
+            workers[i] = new ProcessBuilder(
+                Paths.get(System.getProperty("java.home"), "bin", "java")
+                .toString(), "-cp", System.getProperty("java.class.path"),
+                "enigma.KeyspaceJob", "--threads=1",
+                _dir.resolve("shared").toString())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        }
+        for (Process worker : workers) {
+            assertEquals(0, worker.waitFor());
+        }
+        KeyspaceJob job = KeyspaceJob.open(_dir.resolve("shared"));
+        assertEquals(job.shards(), job.done());
+        assertEquals(expected(), sorted(job.results()));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDifferentJob() throws IOException {
+        job("same");
+        KeyspaceJob.create(_dir.resolve("same"), _config, PLAIN, _cipher,
+                           "(BY)", 5000, 1000);
+    }
+}
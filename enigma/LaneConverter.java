@@ -0,0 +1,291 @@
+package enigma;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Converts many independent streams at once, one lane per stream, when
+ *  every stream has the same rotors in the same slots and differs only
+ *  in its rotor settings and plugboard.  Settings are kept by rotor, one
+ *  array holding a setting for each lane, and each operation of a
+ *  conversion (offsetting into a rotor's table, wrapping around, passing
+ *  through a plugboard) is done for every lane in one pass over those
+ *  arrays.  Stepping applies MachineSpec.step to one lane at a time.
+ *  Lanes that run out of characters before others are masked out of
+ *  stepping and conversion.  Every lane converts exactly as
+ *  Machine.convert would convert its stream.
+ *
+ *  <p>Each pass is a plain loop over the lanes.  VectorLaneConverter,
+ *  built separately by 'make vector' since it needs the incubating
+ *  Vector API, overrides the plugboard, rotor and stepping passes with
+ *  vector gathers and masks, falling back on these loops for the lanes
+ *  past its last whole vector.  of() returns one of those when it has
+ *  been built and the JVM was started with
+ *  --add-modules jdk.incubator.vector, and otherwise one of these.
+ *  @author Chris Zhan
+ */
+class LaneConverter {
+
+    /** Return a converter with one lane for each of STATES, as for the
+     *  constructor, using vector instructions if they are available. */
+    static LaneConverter of(MachineState... states) {
+        if (VECTOR != null) {
+            try {
+                return VECTOR.newInstance((Object) states);
+            } catch (InvocationTargetException excp) {
+                if (excp.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) excp.getCause();
+                }
+                throw error("%s", excp.getCause());
+            } catch (ReflectiveOperationException excp) {
+                throw error("%s", excp);
+            }
+        }
+        return new LaneConverter(states);
+    }
+
+    /** Return the constructor of VectorLaneConverter, or null if it has
+     *  not been built or the Vector API is not in this JVM. */
+    private static Constructor<? extends LaneConverter> vectorConstructor() {
+        if (ModuleLayer.boot().findModule(VECTOR_MODULE).isEmpty()) {
+            return null;
+        }
+        try {
+            return Class.forName("enigma.VectorLaneConverter")
+                .asSubclass(LaneConverter.class)
+                .getDeclaredConstructor(MachineState[].class);
+        } catch (ReflectiveOperationException | LinkageError excp) {
+            return null;
+        }
+    }
+
+    /** A converter with one lane for each of STATES, starting from their
+     *  current settings and plugboards.  All must share one spec and
+     *  have the same rotors in their slots with the same notches. */
+    LaneConverter(MachineState... states) {
+        if (states.length == 0) {
+            throw error("no lanes");
+        }
+        MachineState first = states[0];
+        _spec = first.spec();
+        _lanes = states.length;
+        int numRotors = _spec.numRotors();
+        _row = new int[numRotors];
+        int[] rotors = new int[numRotors];
+        int rows = 0;
+        for (int k = 0; k < numRotors; k += 1) {
+            int r = first.rotor(k);
+            if (r < 0) {
+                throw error("no rotors have been set");
+            }
+            int row = 0;
+            while (row < rows && rotors[row] != r) {
+                row += 1;
+            }
+            if (row == rows) {
+                rotors[row] = r;
+                rows += 1;
+            }
+            _row[k] = row;
+        }
+        _rotors = Arrays.copyOf(rotors, rows);
+        _movers = first.movers();
+        _forward = new int[rows][];
+        _backward = new int[rows][];
+        _rotates = new boolean[rows];
+        _notchAt = new boolean[rows][];
+        _settings = new int[rows][_lanes];
+        for (int row = 0; row < rows; row += 1) {
+            int r = _rotors[row];
+            _forward[row] = _spec.forward(r);
+            _backward[row] = _spec.backward(r);
+            _rotates[row] = _spec.rotates(r);
+            _notchAt[row] = first.notchAt(r);
+        }
+        _plugboard = new int[_lanes][];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            MachineState state = states[lane];
+            if (state.spec() != _spec) {
+                throw error("lanes must share a machine description");
+            }
+            for (int k = 0; k < numRotors; k += 1) {
+                int row = _row[k];
+                if (state.rotor(k) != _rotors[row]
+                    || !Arrays.equals(state.notchAt(_rotors[row]),
+                                      _notchAt[row])) {
+                    throw error("lanes must have the same rotors");
+                }
+                _settings[row][lane] = state.rotorSetting(_rotors[row]);
+            }
+            _plugboard[lane] = state.plugboard().table();
+        }
+        _chars = _spec.alphabet().chars().toCharArray();
+        _c = new int[_lanes];
+        _column = new int[rows];
+        _live = new boolean[_lanes];
+    }
+
+    /** Return the number of lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the setting of the rotor in slot K of LANE. */
+    int setting(int lane, int k) {
+        return _settings[_row[k]][lane];
+    }
+
+    /** For each lane L, convert MESSAGES[L], continuing from where the
+     *  previous conversion left off, and place the converted characters
+     *  at the start of RESULTS[L] and their number in LENGTHS[L].  Blanks
+     *  are skipped, as by Machine.convert, so RESULTS[L] needs at most
+     *  the length of MESSAGES[L] and may be MESSAGES[L] itself. */
+    void convert(char[][] messages, char[][] results, int[] lengths) {
+        if (messages.length != _lanes || results.length != _lanes
+            || lengths.length != _lanes) {
+            throw error("expected %d lanes", _lanes);
+        }
+        int longest = 0;
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            int m = 0;
+            for (char ch : messages[lane]) {
+                m += ch == ' ' ? 0 : 1;
+            }
+            if (results[lane].length < m) {
+                throw error("result buffer %d too short", lane);
+            }
+            m = 0;
+            for (char ch : messages[lane]) {
+                if (ch != ' ') {
+                    results[lane][m] = ch;
+                    m += 1;
+                }
+            }
+            lengths[lane] = m;
+            longest = Math.max(longest, m);
+        }
+        boolean ragged = false;
+        Arrays.fill(_live, true);
+        for (int pos = 0; pos < longest; pos += 1) {
+            for (int lane = 0; lane < _lanes; lane += 1) {
+                if (_live[lane] && pos >= lengths[lane]) {
+                    _live[lane] = false;
+                    ragged = true;
+                }
+            }
+            tick(results, pos, ragged);
+        }
+    }
+
+    /** Convert character POS of TEXT[L] in place for every lane L,
+     *  skipping lanes not _live if RAGGED.  The lanes' characters pass
+     *  through the plugboards, rotors and plugboards again as indices in
+     *  _c; lanes not live carry indices no one reads. */
+    private void tick(char[][] text, int pos, boolean ragged) {
+        int n = _chars.length, lanes = _lanes;
+        int[] c = _c;
+        Alphabet alpha = _spec.alphabet();
+        for (int lane = 0; lane < lanes; lane += 1) {
+            if (!ragged || _live[lane]) {
+                int x = alpha.toInt(text[lane][pos]);
+                c[lane] = x == n ? 0 : x;
+            }
+        }
+        plug(c, 0);
+        step(ragged, 0);
+        int fast = _row.length - 1;
+        for (int k = fast; k >= 0; k -= 1) {
+            offset(_forward[_row[k]], _settings[_row[k]], c, 0);
+        }
+        for (int k = 1; k <= fast; k += 1) {
+            offset(_backward[_row[k]], _settings[_row[k]], c, 0);
+        }
+        plug(c, 0);
+        for (int lane = 0; lane < lanes; lane += 1) {
+            if (!ragged || _live[lane]) {
+                text[lane][pos] = _chars[c[lane]];
+            }
+        }
+    }
+
+    /** Pass the character C[L] of each lane L from FROM on through that
+     *  lane's plugboard. */
+    void plug(int[] c, int from) {
+        for (int lane = from; lane < _lanes; lane += 1) {
+            c[lane] = _plugboard[lane][c[lane]];
+        }
+    }
+
+    /** Pass the character C[L] of each lane L from FROM on through the
+     *  rotor whose doubled table is TABLE and whose settings by lane are
+     *  SETTINGS. */
+    void offset(int[] table, int[] settings, int[] c, int from) {
+        int n = _chars.length;
+        for (int lane = from; lane < _lanes; lane += 1) {
+            int s = settings[lane];
+            int x = table[c[lane] + s] - s;
+            c[lane] = x + ((x >> 31) & n);
+        }
+    }
+
+    /** Advance the rotors of every lane from FROM on, or only of those
+     *  that are live if RAGGED, by MachineSpec.step.  Each lane's
+     *  settings are gathered from the rows into _column for the step and
+     *  scattered back after it. */
+    void step(boolean ragged, int from) {
+        int[] column = _column;
+        int rows = column.length, n = _chars.length;
+        for (int lane = from; lane < _lanes; lane += 1) {
+            if (ragged && !_live[lane]) {
+                continue;
+            }
+            for (int row = 0; row < rows; row += 1) {
+                column[row] = _settings[row][lane];
+            }
+            MachineSpec.step(_movers, _row, _notchAt, column, n, null);
+            for (int row = 0; row < rows; row += 1) {
+                _settings[row][lane] = column[row];
+            }
+        }
+    }
+
+    /** Name of the module holding the Vector API. */
+    private static final String VECTOR_MODULE = "jdk.incubator.vector";
+    /** Constructor of VectorLaneConverter, or null if it is unavailable. */
+    private static final Constructor<? extends LaneConverter> VECTOR =
+        vectorConstructor();
+
+    /** The description of my lanes' machine. */
+    private final MachineSpec _spec;
+    /** Number of lanes. */
+    final int _lanes;
+    /** Row of _settings holding the rotor in each slot.  Slots holding
+     *  the same rotor share a row. */
+    final int[] _row;
+    /** Available rotor of each row. */
+    private final int[] _rotors;
+    /** Slots whose rotors rotate, in increasing order. */
+    final int[] _movers;
+    /** Doubled forward table of each row's rotor. */
+    private final int[][] _forward;
+    /** Doubled backward table of each row's rotor. */
+    private final int[][] _backward;
+    /** True for rows whose rotor rotates. */
+    final boolean[] _rotates;
+    /** Notches of each row's rotor. */
+    final boolean[][] _notchAt;
+    /** Setting of each row's rotor, by lane. */
+    final int[][] _settings;
+    /** Table of each lane's plugboard. */
+    final int[][] _plugboard;
+    /** The characters of my alphabet, by index. */
+    final char[] _chars;
+    /** Each lane's character in the course of conversion. */
+    private final int[] _c;
+    /** One lane's setting of each row's rotor, while it steps. */
+    private final int[] _column;
+    /** True for lanes with characters left to convert. */
+    final boolean[] _live;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the LaneConverter class.
+ *  @author Chris Zhan
+ */
+public class LaneConverterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Names of the rotating rotors of machine(). */
+    private static final String[] MOVERS = {"I", "II", "VI", "VII"};
+
+    /** Return a machine with some naval rotors, including one with two
+     *  notches and one with a notch not in the alphabet. */
+    private static Machine machine() {
+        return TestUtils.naval(5, 3, "B", "Beta", "I", "II", "VI",
+                               "VII MZ?");
+    }
+
+    /** Return N random letters drawn by RANDOM. */
+    private static String letters(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    /** Return a random message drawn by RANDOM, with blanks. */
+    private static char[] message(Random random) {
+        char[] result = new char[random.nextInt(300)];
+        for (int i = 0; i < result.length; i += 1) {
+            int c = random.nextInt(30);
+            result[i] = c < 26 ? (char) ('A' + c) : c < 29 ? ' ' : '?';
+        }
+        return result;
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(18);
+        for (int trial = 0; trial < 30; trial += 1) {
+            String rotors = "* B Beta";
+            for (int k = 0; k < 3; k += 1) {
+                rotors += " " + MOVERS[random.nextInt(MOVERS.length)];
+            }
+            String ring = random.nextBoolean() ? " " + letters(random, 4)
+                : "";
+            int lanes = 1 + random.nextInt(40);
+            MachineSpec spec = MachineSpec.of(machine());
+            Machine[] machines = new Machine[lanes];
+            MachineState[] states = new MachineState[lanes];
+            for (int lane = 0; lane < lanes; lane += 1) {
+                String line = rotors + " " + letters(random, 4) + ring
+                    + (random.nextBoolean() ? " (AQ) (EP)" : "");
+                machines[lane] = machine();
+                Main.setUp(machines[lane], line);
+                states[lane] = new MachineState(spec);
+                Main.setUp(states[lane], line);
+            }
+            LaneConverter converter = trial % 2 == 0
+                ? new LaneConverter(states) : LaneConverter.of(states);
+            for (int round = 0; round < 3; round += 1) {
+                char[][] messages = new char[lanes][];
+                char[][] results = new char[lanes][];
+                String[] expected = new String[lanes];
+                for (int lane = 0; lane < lanes; lane += 1) {
+                    messages[lane] = message(random);
+                    expected[lane] =
+                        machines[lane].convert(new String(messages[lane]));
+                    results[lane] = random.nextBoolean() ? messages[lane]
+                        : new char[messages[lane].length];
+                }
+                int[] lengths = new int[lanes];
+                converter.convert(messages, results, lengths);
+                for (int lane = 0; lane < lanes; lane += 1) {
+                    assertEquals(rotors, expected[lane],
+                                 new String(results[lane], 0,
+                                            lengths[lane]));
+                }
+            }
+            for (int k = 1; k < 5; k += 1) {
+                assertEquals(machines[0].getRotor(k).setting(),
+                             converter.setting(0, k));
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testDifferentRotors() {
+        MachineSpec spec = MachineSpec.of(machine());
+        MachineState a = new MachineState(spec);
+        MachineState b = new MachineState(spec);
+        Main.setUp(a, "* B Beta I II VI AAAA");
+        Main.setUp(b, "* B Beta I VI II AAAA");
+        new LaneConverter(a, b);
+    }
+}
@@ -1,15 +1,15 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Collection;
-import java.util.Iterator;
 
 import static enigma.EnigmaException.*;
 
 /** Class that represents a complete enigma machine.
  *  @author Chris Zhan
  */
-class Machine {
+class Machine extends Enigma {
 
     /** A new Enigma machine with alphabet ALPHA, 1 < NUMROTORS rotor slots,
      *  and 0 <= PAWLS < NUMROTORS pawls.  ALLROTORS contains all the
@@ -25,28 +25,53 @@ class Machine {
             _pawls = pawls;
         }
         _allRotors = allRotors;
+        _available = allRotors.toArray(new Rotor[0]);
+        _rotorsByName = new HashMap<>();
+        for (Rotor r : allRotors) {
+            _rotorsByName.put(r.name(), r);
+        }
         _plugboard = new Permutation("", alpha);
-        _rotorSlots = new HashMap<Integer, Rotor>();
+        _slots = new Rotor[numRotors];
+        _movers = new int[0];
         _ringStellungSet = false;
+        _stationary = new int[alpha.size()];
+        _stationaryStale = true;
     }
 
     /** Return the number of rotor slots I have. */
+    @Override
     int numRotors() {
         return _numRotors;
     }
 
     /** Return the number pawls (and thus rotating rotors) I have. */
+    @Override
     int numPawls() {
         return _pawls;
     }
 
+    /** Return the rotors available to me, in the order given. */
+    Rotor[] availableRotors() {
+        return _available.clone();
+    }
+
     /** Return Rotor #K, where Rotor #0 is the reflector, and Rotor
      *  #(numRotors()-1) is the fast Rotor.  Modifying this Rotor has
      *  undefined results. */
     Rotor getRotor(int k) {
-        return _rotorSlots.get(k);
+        if (_rotorsBehind) {
+            syncRotors();
+        }
+        return _slots[k];
     }
 
+    /** Set the rotor in slot K to setting POSN. */
+    void setSetting(int k, int posn) {
+        getRotor(k).set(posn);
+        _stationaryStale = true;
+    }
+
+    @Override
     Alphabet alphabet() {
         return _alphabet;
     }
@@ -54,40 +79,57 @@ class Machine {
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
      *  Initially, all rotors are set at their 0 setting. */
+    @Override
     void insertRotors(String[] rotors) {
-        Iterator<Rotor> allRotorsIterator = _allRotors.iterator();
-        HashMap<String, Rotor> allRotorsMap = new HashMap<String, Rotor>();
-        while (allRotorsIterator.hasNext()) {
-            Rotor temp = allRotorsIterator.next();
-            allRotorsMap.put(temp.name(), temp);
+        Events.InsertRotors event = null;
+        if (Events.recording()) {
+            event = new Events.InsertRotors();
+            event.begin();
+        }
+        detachPeriod();
+        if (rotors.length > numRotors()) {
+            throw new EnigmaException("Number of rotors in setting "
+                   + "line exceeds number of rotors in machine");
         }
-        int i = 0;
+        Rotor[] slots = new Rotor[numRotors()];
         int movingRotors = 0;
-        while (i < rotors.length) {
-            Rotor nextRotor = allRotorsMap.get(rotors[i]);
-            if (nextRotor == null) {
+        for (int i = 0; i < rotors.length; i += 1) {
+            slots[i] = _rotorsByName.get(rotors[i]);
+            if (slots[i] == null) {
                 throw new EnigmaException("Rotor name not in "
                         + "allRotors collection");
             }
-            if (nextRotor.getClass().getName() == "enigma.MovingRotor") {
+            if (slots[i].rotates()) {
                 movingRotors += 1;
             }
-            _rotorSlots.put(i, allRotorsMap.get(rotors[i]));
-            i += 1;
-        }
-        if (_rotorSlots.size() > numRotors()) {
-            throw new EnigmaException("Number of rotors in setting "
-                   + "line exceeds number of rotors in machine");
         }
         if (movingRotors != numPawls()) {
             throw new EnigmaException("Incorrect number of MovingRotor");
         }
+        int[] movers = new int[movingRotors];
+        for (int i = 0, j = 0; i < rotors.length; i += 1) {
+            if (slots[i].rotates()) {
+                movers[j] = i;
+                j += 1;
+            }
+        }
+        _slots = slots;
+        _movers = movers;
+        setupChanged();
+        if (event != null && event.shouldCommit()) {
+            event.alphabetSize = alphabet().size();
+            event.rotors = rotors.length;
+            event.moving = movingRotors;
+            event.commit();
+        }
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
+    @Override
     void setRotors(String setting) {
+        detachPeriod();
         if (setting.length() != numRotors() - 1) {
             throw new EnigmaException("setting must be numRotors() - 1");
         }
@@ -100,12 +142,20 @@ class Machine {
                 temp.set(setting.charAt(i));
             }
         }
+        setupChanged();
     }
 
     /** Set my rotors Ringstellung according to RINGSTELLUNG, which must
      * be a string of numRotors()-1 characters in my alphabet. The first
      * letter refers to the leftmost rotor setting (not counting reflector). */
+    @Override
     void setRingstellung(String ringstellung) {
+        Events.SetRingstellung event = null;
+        if (Events.recording()) {
+            event = new Events.SetRingstellung();
+            event.begin();
+        }
+        detachPeriod();
         if (ringstellung.length() != numRotors() - 1) {
             throw new EnigmaException("ringstellung must be numRotors() - 1");
         }
@@ -120,8 +170,7 @@ class Machine {
                         .wrap(currentSetting - alphabet()
                                 .toInt(ringstellung.charAt(i)));
                 currentRotor.set(newIntSetting);
-                if (currentRotor.getClass().getName()
-                        == "enigma.MovingRotor" && !_ringStellungSet) {
+                if (currentRotor.rotates() && !_ringStellungSet) {
                     String newNotches = "";
                     for (int n = 0; n < currentRotor.notches()
                             .length(); n += 1) {
@@ -137,94 +186,562 @@ class Machine {
                 }
             }
         }
+        if (event != null && event.shouldCommit()) {
+            event.alphabetSize = alphabet().size();
+            event.rotors = numRotors();
+            event.first = !_ringStellungSet;
+            event.commit();
+        }
         _ringStellungSet = true;
+        setupChanged();
+    }
+
+    /** Turn fusion of the stationary part of the rotor stack on or off
+     *  according to ON.  When on, the reflector and every rotor to the
+     *  left of the fast rotor are composed into a single table that is
+     *  rebuilt only when one of them moves, so that each character needs
+     *  only the fast rotor, one table lookup, and the fast rotor again.
+     *  Fusion is bypassed while a tracer is attached. */
+    void setFused(boolean on) {
+        _fused = on;
+        _stationaryStale = true;
+    }
+
+    /** Return true iff fusion of the stationary rotors is turned on. */
+    boolean fused() {
+        return _fused;
+    }
+
+    /** Record setups in CACHE, which may be shared with my copies, so
+     *  that Main.setUp can repeat them with restoreSetup(); or stop
+     *  recording them if CACHE is null. */
+    @Override
+    void setSetupCache(SetupCache cache) {
+        _setupCache = cache;
+    }
+
+    /** Return the cache of my setups, or null. */
+    @Override
+    SetupCache setupCache() {
+        return _setupCache;
+    }
+
+    /** Return my current rotors, settings and plugboard as a setup that
+     *  RINGED iff it included a Ringstellung. */
+    @Override
+    SetupCache.Setup saveSetup(boolean ringed) {
+        detachPeriod();
+        int[] rotors = new int[numRotors()];
+        int[] settings = new int[numRotors()];
+        for (int k = 0; k < numRotors(); k += 1) {
+            rotors[k] = -1;
+            for (int i = 0; i < _available.length; i += 1) {
+                if (_available[i] == _slots[k]) {
+                    rotors[k] = i;
+                    settings[k] = _slots[k].setting();
+                    break;
+                }
+            }
+        }
+        return new SetupCache.Setup(rotors, settings, _movers, _plugboard,
+                                    ringed);
+    }
+
+    /** Put my rotors, their settings and my plugboard in the state
+     *  recorded by SETUP, as though by its settings line, and return
+     *  true; or return false, doing nothing, if the settings line must be
+     *  read again because SETUP includes the first Ringstellung, which
+     *  moves the rotors' notches. */
+    @Override
+    boolean restoreSetup(SetupCache.Setup setup) {
+        if (setup.ringed() && !_ringStellungSet) {
+            return false;
+        }
+        detachPeriod();
+        Rotor[] slots = new Rotor[numRotors()];
+        for (int k = 0; k < slots.length; k += 1) {
+            if (setup.rotor(k) >= 0) {
+                slots[k] = _available[setup.rotor(k)];
+                slots[k].set(setup.setting(k));
+            }
+        }
+        _slots = slots;
+        _movers = setup.movers();
+        _plugboard = setup.plugboard();
+        _periodRejected = false;
+        setupChanged();
+        return true;
+    }
+
+    /** Note that my rotors or their settings have been changed by a new
+     *  setup, whose settings become the origin for seek(). */
+    private void setupChanged() {
+        _stationaryStale = true;
+        _periodRejected = false;
+        _seekCycle = null;
+        _seekFailed = false;
+        _stepAt = null;
+        _position = 0;
+        _origin = new int[numRotors()];
+        for (int k = 0; k < numRotors(); k += 1) {
+            Rotor r = getRotor(k);
+            if (r != null) {
+                _origin[k] = r.setting();
+            }
+        }
+    }
+
+    /** Return the number of characters I have converted since my last
+     *  setup, or the position last given to seek(). */
+    long position() {
+        return _position;
+    }
+
+    /** Put my rotors in the state they would reach after converting
+     *  POSITION characters from my last setup (the last call to
+     *  insertRotors, setRotors or setRingstellung), double stepping
+     *  included.  The settings are computed from the notches by
+     *  odometer(), in time that does not grow with POSITION.  Setups it
+     *  cannot compute, such as those with one rotor in two slots, walk
+     *  my stepping cycle once, after which each seek takes time
+     *  proportional to the number of rotors; and those whose cycle is
+     *  too long to record are stepped from notch to notch by skip(). */
+    void seek(long position) {
+        if (_origin == null) {
+            throw error("no rotors have been set");
+        }
+        if (position < 0) {
+            throw error("negative position %d", position);
+        }
+        detachPeriod();
+        for (int k = 1; k < numRotors(); k += 1) {
+            if (getRotor(k).rotates()) {
+                setSetting(k, _origin[k]);
+            }
+        }
+        if (_seekCycle != null) {
+            _seekCycle.restore(this, _seekCycle.index(position));
+        } else if (_seekFailed || !odometer(position)) {
+            if (!_seekFailed) {
+                _seekCycle = SteppingCycle.walk(this, SEEK_STATES);
+                _seekFailed = _seekCycle == null;
+            }
+            if (_seekCycle != null) {
+                _seekCycle.restore(this, _seekCycle.index(position));
+            } else {
+                skip(position);
+            }
+        }
+        _position = position;
+    }
+
+    /** Advance my rotating rotors as if by STEPS calls to
+     *  advanceRotors(), like the wheels of an odometer, and return true;
+     *  or return false, leaving them as they were, if one of those rotors
+     *  is in two slots or their settings repeat only after more than
+     *  SEEK_STATES steps.  The settings of the leftmost rotating rotor are
+     *  never tested, and those of the fast rotor repeat after every
+     *  revolution (a block of alphabet-size steps), so only the settings
+     *  of the rotors between them at the start of each block decide the
+     *  next block.  Those are recorded block by block until they repeat,
+     *  and the rest of the blocks are counted off around the cycle they
+     *  close, the leftmost rotor turning as far in each lap.  The steps
+     *  left over, fewer than a block, are then taken one by one.  The
+     *  double step is taken in each block by MachineSpec.step itself. */
+    private boolean odometer(long steps) {
+        if (_stepAt == null) {
+            cacheNotches();
+        }
+        int numMovers = _movers.length;
+        if (numMovers == 0) {
+            return true;
+        }
+        int n = alphabet().size(), fast = _slots.length - 1;
+        long codes = 1;
+        for (int j = 0; j < numMovers; j += 1) {
+            if (_stepAt[_movers[j]] != _movers[j]) {
+                return false;
+            } else if (j > 0) {
+                if (codes > Long.MAX_VALUE / n) {
+                    return false;
+                }
+                codes *= n;
+            }
+        }
+        int left = _movers[0];
+        int block = _movers[numMovers - 1] == fast ? n : 1;
+        long blocks = steps / block;
+        int[] settings = new int[_slots.length];
+        for (int k = 0; k < settings.length; k += 1) {
+            if (_slots[k] != null) {
+                settings[k] = _slots[k].setting();
+            }
+        }
+        HashMap<Long, Integer> seen = new HashMap<>();
+        ArrayList<int[]> starts = new ArrayList<>();
+        for (long b = 0; b < blocks; b += 1) {
+            long code = 0;
+            for (int j = 1; j < numMovers; j += 1) {
+                code = code * n + settings[_movers[j]];
+            }
+            Integer first = seen.get(code);
+            if (first != null) {
+                int lap = starts.size() - first;
+                int turn = settings[left] - starts.get(first)[left];
+                long laps = (blocks - first) / lap;
+                settings = starts.get(first + (int) ((blocks - first) % lap))
+                    .clone();
+                settings[left] =
+                    Math.floorMod(settings[left] + laps % n * turn, n);
+                break;
+            }
+            if ((long) starts.size() * block >= SEEK_STATES) {
+                return false;
+            }
+            seen.put(code, starts.size());
+            starts.add(settings.clone());
+            for (int t = 0; t < block; t += 1) {
+                MachineSpec.step(_movers, _stepAt, _stepNotches, settings,
+                                 n, null);
+            }
+        }
+        for (long t = blocks * block; t < steps; t += 1) {
+            MachineSpec.step(_movers, _stepAt, _stepNotches, settings, n,
+                             null);
+        }
+        for (int k : _movers) {
+            setSetting(k, settings[k]);
+        }
+        return true;
+    }
+
+    /** Advance my rotors as if by STEPS calls to advanceRotors(), moving
+     *  the fast rotor directly from one notch to the next whenever no
+     *  other rotor is due to move. */
+    void skip(long steps) {
+        detachPeriod();
+        int fast = _slots.length - 1;
+        boolean fastCarries = _slots[fast - 1].rotates();
+        while (steps > 0) {
+            boolean due = false;
+            for (int j = 0; j < _movers.length && !due; j += 1) {
+                int i = _movers[j];
+                due = i < fast - 1 && _slots[i + 1].atNotch();
+            }
+            long quiet = steps;
+            if (due) {
+                quiet = 0;
+            } else if (fastCarries) {
+                int d = _slots[fast].stepsToNotch();
+                if (d >= 0) {
+                    quiet = Math.min(quiet, d);
+                }
+            }
+            if (quiet == 0) {
+                advanceRotors();
+                steps -= 1;
+            } else {
+                Rotor r = _slots[fast];
+                if (r.rotates()) {
+                    setSetting(fast, (int) ((r.setting() + quiet)
+                                            % alphabet().size()));
+                }
+                steps -= quiet;
+            }
+        }
     }
 
     /** Return the current plugboard's permutation. */
+    @Override
     Permutation plugboard() {
         return _plugboard;
     }
 
     /** Set the plugboard to PLUGBOARD. */
+    @Override
     void setPlugboard(Permutation plugboard) {
+        detachPeriod();
         _plugboard = plugboard;
+        _periodRejected = false;
+    }
+
+    /** Convert characters using a table holding the whole machine's
+     *  substitution for every state of its stepping cycle, whenever that
+     *  table for the current setup takes at most MAXBYTES bytes.  The
+     *  table is built on the first conversion after a change of setup
+     *  and reused for as long as the rotors, their non-rotating
+     *  settings and the plugboard stay the same, so that repeating a
+     *  setup does not rebuild it.  A MAXBYTES of 0 turns the table
+     *  off.  Setups whose cycle is too long, and traced conversions,
+     *  use the ordinary path. */
+    void setPeriodLimit(long maxBytes) {
+        detachPeriod();
+        _periodLimit = maxBytes;
+        _period = null;
+        _periodRejected = false;
+    }
+
+    /** Try to start converting with a period table for my current setup,
+     *  reusing the last one if it still applies.  Return true iff a
+     *  table is now in use. */
+    private boolean attachPeriod() {
+        if (_periodRejected) {
+            return false;
+        }
+        if (_period != null && _period.matches(this)) {
+            _periodIndex = _period.indexOf(this);
+            if (_periodIndex >= 0) {
+                return true;
+            }
+        }
+        _period = PeriodTable.build(this, _periodLimit);
+        if (_period == null) {
+            _periodRejected = true;
+            return false;
+        }
+        _periodIndex = _period.indexOf(this);
+        return true;
+    }
+
+    /** Stop converting with the period table, first bringing the rotors'
+     *  settings up to date. */
+    private void detachPeriod() {
+        if (_rotorsBehind) {
+            syncRotors();
+        }
+        _periodIndex = -1;
+    }
+
+    /** Set my rotors to the state reached by the period table. */
+    private void syncRotors() {
+        _rotorsBehind = false;
+        _period.restore(this, _periodIndex);
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
      *  the machine. */
     int convert(int c) {
+        _position += 1;
+        if (_tracing) {
+            return convertTraced(c);
+        }
+        if (_periodLimit > 0 && (_periodIndex >= 0 || attachPeriod())) {
+            _periodIndex = _period.next(_periodIndex);
+            _rotorsBehind = true;
+            return _period.convert(_periodIndex, c);
+        }
         advanceRotors();
-        if (Main.verbose()) {
-            System.err.printf("[");
-            for (int r = 1; r < numRotors(); r += 1) {
-                System.err.printf("%c",
-                        alphabet().toChar(getRotor(r).setting()));
+        return transform(c);
+    }
+
+    /** Returns the result of passing C (as an index in the range
+     *  0..alphabet size - 1) through the plugboard and rotors in their
+     *  current positions, without advancing the machine. */
+    int transform(int c) {
+        if (_fused) {
+            if (_stationaryStale) {
+                fuseStationary();
             }
-            System.err.printf("] %c -> ", alphabet().toChar(c));
+            Rotor fast = _slots[_slots.length - 1];
+            c = plugboard().permute(c);
+            c = fast.convertForward(c);
+            c = _stationary[c];
+            c = fast.convertBackward(c);
+            return plugboard().permute(c);
         }
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(c));
-        }
         c = applyRotors(c);
+        return plugboard().permute(c);
+    }
+
+    /** Returns the result of converting C as convert(C) does, one rotor
+     *  at a time, reporting each stage to my tracer. */
+    private int convertTraced(int c) {
+        advanceRotors();
+        for (int k = 1; k < _slots.length; k += 1) {
+            _traceSettings[k - 1] = _slots[k].setting();
+        }
+        _tracer.begin(_position, _traceSettings, c);
         c = plugboard().permute(c);
-        if (Main.verbose()) {
-            System.err.printf("%c%n", alphabet().toChar(c));
+        _tracer.stage(c);
+        for (int f = _slots.length - 1; f >= 0; f -= 1) {
+            c = _slots[f].convertForward(c);
+            _tracer.stage(c);
+        }
+        for (int r = 1; r < _slots.length; r += 1) {
+            c = _slots[r].convertBackward(c);
+            _tracer.stage(c);
         }
+        c = plugboard().permute(c);
+        _tracer.end(c);
         return c;
     }
 
-    /** Advance all rotors to their next position. */
+    @Override
+    String engine() {
+        if (_tracing) {
+            return "traced";
+        } else if (_periodLimit > 0) {
+            return "period";
+        } else if (_fused) {
+            return "fused";
+        } else {
+            return "rotors";
+        }
+    }
+
+    /** Report each character I convert to TRACER, or stop reporting if
+     *  TRACER is Tracer.NONE.  While tracing, characters are always
+     *  converted one rotor at a time, whatever engine is selected. */
+    void setTracer(Tracer tracer) {
+        _tracer = tracer;
+        _tracing = tracer != Tracer.NONE;
+        _traceSettings = new int[numRotors() - 1];
+    }
+
+    /** Return the tracer I report to. */
+    Tracer tracer() {
+        return _tracer;
+    }
+
+    /** Return a new machine in my current state, with its own copies of
+     *  all my available rotors, so that it may be used (for example, in
+     *  another thread) without affecting me.  The copy has my plugboard,
+     *  engine options, and origin for seek(), but no tracer. */
+    Machine copy() {
+        detachPeriod();
+        HashMap<Rotor, Rotor> copies = new HashMap<>();
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : _available) {
+            Rotor c = r.copy();
+            copies.put(r, c);
+            rotors.add(c);
+        }
+        Machine result = new Machine(_alphabet, _numRotors, _pawls, rotors);
+        for (int k = 0; k < _slots.length; k += 1) {
+            if (_slots[k] != null) {
+                result._slots[k] = copies.get(_slots[k]);
+            }
+        }
+        result._movers = _movers;
+        result._setupCache = _setupCache;
+        result._plugboard = _plugboard;
+        result._ringStellungSet = _ringStellungSet;
+        result._fused = _fused;
+        result._periodLimit = _periodLimit;
+        if (_origin != null) {
+            result._origin = _origin.clone();
+        }
+        result._position = _position;
+        result._seekCycle = _seekCycle;
+        result._seekFailed = _seekFailed;
+        return result;
+    }
+
+    /** Advance all rotors to their next position by MachineSpec.step. */
     void advanceRotors() {
-        int i = 0;
-        while (i < numRotors()) {
-            Rotor currentRotor = getRotor(i);
-            Rotor rightRotor = getRotor(i + 1);
-            if (i == numRotors() - 1) {
-                currentRotor.advance();
-                i += 1;
-            } else if (rightRotor.atNotch() && currentRotor.rotates()) {
-                currentRotor.advance();
-                rightRotor.advance();
-                i += 2;
-            } else {
-                i += 1;
+        detachPeriod();
+        if (_stepAt == null) {
+            cacheNotches();
+        }
+        int[] settings = _stepSettings;
+        for (int k = 0; k < _slots.length; k += 1) {
+            if (_slots[k] != null) {
+                settings[k] = _slots[k].setting();
             }
         }
+        int fast = _slots.length - 1;
+        int moves = MachineSpec.step(_movers, _stepAt, _stepNotches,
+                                     settings, alphabet().size(), _moved);
+        for (int j = 0; j < moves; j += 1) {
+            int k = _moved[j];
+            _slots[k].advance();
+            if (k != fast) {
+                _stationaryStale = true;
+            }
+            if (_counting) {
+                _steps[k] += 1;
+            }
+        }
+        if (_fused && _stationaryStale && !_tracing) {
+            fuseStationary();
+        }
+    }
+
+    /** Record the notches of the rotors in my slots for advanceRotors(),
+     *  giving slots that hold one rotor the index of the first of them. */
+    private void cacheNotches() {
+        int numSlots = _slots.length;
+        _stepAt = new int[numSlots];
+        _stepNotches = new boolean[numSlots][];
+        _stepSettings = new int[numSlots];
+        _moved = new int[numSlots];
+        for (int k = 0; k < numSlots; k += 1) {
+            int first = 0;
+            while (_slots[first] != _slots[k]) {
+                first += 1;
+            }
+            _stepAt[k] = first;
+            _stepNotches[k] = _slots[k] == null
+                ? new boolean[alphabet().size()] : _slots[k].notchAt();
+        }
+    }
+
+    /** Recompute the composition of the rotors to the left of the fast
+     *  rotor, including the reflector, for their current settings. */
+    private void fuseStationary() {
+        int fast = _slots.length - 1;
+        for (int c = 0; c < _stationary.length; c += 1) {
+            int result = c;
+            for (int f = fast - 1; f >= 0; f -= 1) {
+                result = _slots[f].convertForward(result);
+            }
+            for (int r = 1; r < fast; r += 1) {
+                result = _slots[r].convertBackward(result);
+            }
+            _stationary[c] = result;
+        }
+        _stationaryStale = false;
     }
 
     /** Return the result of applying the rotors to the character C (as an
      *  index in the range 0..alphabet size - 1). */
     private int applyRotors(int c) {
-        int f = numRotors() - 1;
         int result = c;
-        while (f >= 0) {
-            Rotor currentRotor = getRotor(f);
-            result = currentRotor.convertForward(result);
-            f -= 1;
+        for (int f = _slots.length - 1; f >= 0; f -= 1) {
+            result = _slots[f].convertForward(result);
         }
-        int r = 1;
-        while (r < numRotors()) {
-            Rotor currentRotor = getRotor(r);
-            result = currentRotor.convertBackward(result);
-            r += 1;
+        for (int r = 1; r < _slots.length; r += 1) {
+            result = _slots[r].convertBackward(result);
         }
         return result;
     }
 
-    /** Returns the encoding/decoding of MSG, updating the state of
-     *  the rotors accordingly. */
-    String convert(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i += 1) {
-            if (msg.charAt(i) != ' ') {
-                int intNewChar = convert(alphabet().toInt(msg.charAt(i)));
-                char newChar = alphabet().toChar(intNewChar);
-                result = result + newChar;
+    /** Convert the LEN characters of IN starting at OFF, placing the
+     *  results in OUT starting at OUTOFF and updating the state of the
+     *  rotors accordingly.  Blanks in the input are skipped, so the
+     *  result is the number of characters written, which is at most LEN.
+     *  IN and OUT may be the same array, provided OUTOFF <= OFF. */
+    @Override
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        _counting = Metrics.enabled();
+        if (_counting && _steps.length != _slots.length) {
+            _steps = new long[_slots.length];
+        }
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char ch = in[i];
+            if (ch != ' ') {
+                out[k] = alphabet().toChar(convert(alphabet().toInt(ch)));
+                k += 1;
             }
         }
-        return result;
+        if (_counting) {
+            _counting = false;
+            Metrics.converted(k - outOff, _steps);
+        }
+        return k - outOff;
     }
 
     /** Common alphabet of my rotors. */
@@ -237,8 +754,67 @@ class Machine {
     private Collection<Rotor> _allRotors;
     /** My plugboard permutation. */
     private Permutation _plugboard;
-    /** The rotors I have in my machine. */
-    private HashMap<Integer, Rotor> _rotorSlots;
+    /** The available rotors, in the order given. */
+    private final Rotor[] _available;
+    /** The available rotors, by name. */
+    private HashMap<String, Rotor> _rotorsByName;
+    /** The rotor in each of my slots, with the reflector in slot 0. */
+    private Rotor[] _slots;
+    /** The slots whose rotors rotate, in increasing order.  Only these
+     *  can start a step of the rotor to their right. */
+    private int[] _movers;
+    /** Cache of setups shared with my copies, or null. */
+    private SetupCache _setupCache;
     /** Whether I've already set my ringstellung. */
     private boolean _ringStellungSet;
+    /** True iff the stationary rotors are fused into _stationary. */
+    private boolean _fused;
+    /** The composition of the reflector and all rotors left of the fast
+     *  rotor at their current settings, when _fused. */
+    private int[] _stationary;
+    /** True iff _stationary no longer reflects the rotor settings. */
+    private boolean _stationaryStale;
+    /** True iff counting rotor steps in _steps for Metrics, during a
+     *  call of convert(char[], ...) while metrics are collected. */
+    private boolean _counting;
+    /** Steps of the rotor in each slot not yet added to Metrics. */
+    private long[] _steps = new long[0];
+    /** For each slot, the first slot holding the same rotor, or null if
+     *  the _step arrays must be rebuilt for a new setup. */
+    private int[] _stepAt;
+    /** Notches of the rotor in each slot, as of my last setup. */
+    private boolean[][] _stepNotches;
+    /** Settings of the rotors in my slots, passed to MachineSpec.step. */
+    private int[] _stepSettings;
+    /** The slots advanced by the last step. */
+    private int[] _moved;
+    /** Largest period table I will build, in bytes, or 0 for none. */
+    private long _periodLimit;
+    /** The most recently built period table, or null. */
+    private PeriodTable _period;
+    /** My state's index in _period while converting with it, else -1. */
+    private int _periodIndex = -1;
+    /** True iff no period table fits my current setup. */
+    private boolean _periodRejected;
+    /** True iff my rotors' settings lag behind _periodIndex. */
+    private boolean _rotorsBehind;
+    /** The setting of each slot's rotor after my last setup, or null. */
+    private int[] _origin;
+    /** The stepping cycle from _origin, once seek() has needed it.
+     *  Never modified, so my copies share it. */
+    private SteppingCycle _seekCycle;
+    /** True iff seek() can neither compute nor record my stepping from
+     *  _origin, and so must skip(). */
+    private boolean _seekFailed;
+    /** Characters converted since my last setup. */
+    private long _position;
+    /** Where I report the path of each character. */
+    private Tracer _tracer = Tracer.NONE;
+    /** True iff _tracer is not Tracer.NONE. */
+    private boolean _tracing;
+    /** The rotor settings passed to _tracer. */
+    private int[] _traceSettings;
+
+    /** Longest stepping cycle seek() will record. */
+    private static final int SEEK_STATES = 1 << 20;
 }
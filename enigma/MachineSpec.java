@@ -0,0 +1,250 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+
+/** The unchanging part of an Enigma machine: its alphabet, numbers of
+ *  slots and pawls, and the compiled tables and notches of its available
+ *  rotors.  A spec is never modified after construction, so any number
+ *  of MachineStates, in any number of threads, may share one.
+ *  @author Chris Zhan
+ */
+final class MachineSpec {
+
+    /** A spec for machines with alphabet ALPHA, 1 < NUMROTORS rotor slots,
+     *  0 <= PAWLS < NUMROTORS pawls, and the available rotors ALLROTORS,
+     *  taken as they are now. */
+    MachineSpec(Alphabet alpha, int numRotors, int pawls,
+                Collection<Rotor> allRotors) {
+        if (pawls < 0 || pawls >= numRotors) {
+            throw new EnigmaException("Number of PAWLS must be "
+                    + ">= 0 and < NUMROTORS");
+        }
+        _alphabet = alpha;
+        _numRotors = numRotors;
+        _pawls = pawls;
+        _identity = new Permutation("", alpha);
+        int n = alpha.size();
+        int count = allRotors.size();
+        _names = new String[count];
+        _rotates = new boolean[count];
+        _reflecting = new boolean[count];
+        _forward = new int[count][];
+        _backward = new int[count][];
+        _notchAt = new boolean[count][];
+        _ringNotches = new int[count][];
+        _byName = new HashMap<>();
+        int r = 0;
+        for (Rotor rotor : allRotors) {
+            _names[r] = rotor.name();
+            _byName.put(rotor.name(), r);
+            _rotates[r] = rotor.rotates();
+            _reflecting[r] = rotor.reflecting();
+            _forward[r] = new int[2 * n];
+            _backward[r] = new int[2 * n];
+            for (int i = 0; i < 2 * n; i += 1) {
+                _forward[r][i] = rotor.permutation().permute(i);
+                _backward[r][i] = rotor.permutation().invert(i);
+            }
+            String notches = rotor.notches();
+            _notchAt[r] = new boolean[n];
+            _ringNotches[r] = new int[notches.length()];
+            for (int i = 0; i < notches.length(); i += 1) {
+                char c = notches.charAt(i);
+                if (alpha.contains(c)) {
+                    _notchAt[r][alpha.toInt(c)] = true;
+                }
+                _ringNotches[r][i] = alpha.toInt(c) % n;
+            }
+            r += 1;
+        }
+    }
+
+    /** Return the spec of MACHINE, whose available rotors must not yet
+     *  have been moved by a Ringstellung. */
+    static MachineSpec of(Machine machine) {
+        return new MachineSpec(machine.alphabet(), machine.numRotors(),
+                               machine.numPawls(),
+                               Arrays.asList(machine.availableRotors()));
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotor slots. */
+    int numRotors() {
+        return _numRotors;
+    }
+
+    /** Return the number of pawls. */
+    int numPawls() {
+        return _pawls;
+    }
+
+    /** Return the plugboard that connects nothing. */
+    Permutation identity() {
+        return _identity;
+    }
+
+    /** Return the number of available rotors. */
+    int numAvailable() {
+        return _names.length;
+    }
+
+    /** Return the index of the available rotor named NAME, or -1. */
+    int indexOf(String name) {
+        Integer r = _byName.get(name);
+        return r == null ? -1 : r;
+    }
+
+    /** Return the name of available rotor #R. */
+    String name(int r) {
+        return _names[r];
+    }
+
+    /** Return true iff available rotor #R rotates. */
+    boolean rotates(int r) {
+        return _rotates[r];
+    }
+
+    /** Return true iff available rotor #R is a reflector. */
+    boolean reflecting(int r) {
+        return _reflecting[r];
+    }
+
+    /** Return the forward table of available rotor #R, of twice the
+     *  alphabet's size, so that the rotor at setting S takes P to
+     *  table[P + S] - S, modulo the alphabet size.  Not to be modified. */
+    int[] forward(int r) {
+        return _forward[r];
+    }
+
+    /** Return the backward table of available rotor #R, arranged as for
+     *  forward().  Not to be modified. */
+    int[] backward(int r) {
+        return _backward[r];
+    }
+
+    /** Return the settings at which available rotor #R is at a notch
+     *  before any Ringstellung.  Not to be modified. */
+    boolean[] notchAt(int r) {
+        return _notchAt[r];
+    }
+
+    /** Return the indices of the notches of available rotor #R as the
+     *  first Ringstellung moves them, where a notch not in the alphabet
+     *  counts as index 0.  Not to be modified. */
+    int[] ringNotches(int r) {
+        return _ringNotches[r];
+    }
+
+    /** Advance the rotors of a machine as one key press does, which is the
+     *  stepping rule of every engine.  The rotor in slot K has the setting
+     *  SETTINGS[AT[K]] and is at a notch where NOTCHAT[AT[K]] is true, so
+     *  that slots holding one rotor may share an index; MOVERS are the
+     *  slots whose rotors rotate, in increasing order, and N is the
+     *  alphabet size.  The rotor in each mover slot not yet advanced by
+     *  this press whose right neighbor is at a notch advances, along with
+     *  that neighbor, and the fast rotor advances unless it has been; a
+     *  rotor that does not rotate never advances.  Place the slots
+     *  advanced at the start of MOVED, unless it is null, and return
+     *  their number. */
+    static int step(int[] movers, int[] at, boolean[][] notchAt,
+                    int[] settings, int n, int[] moved) {
+        int fast = at.length - 1;
+        int advanced = -1, count = 0;
+        for (int j = 0; j < movers.length; j += 1) {
+            int i = movers[j];
+            if (i > advanced && i < fast
+                && notchAt[at[i + 1]][settings[at[i + 1]]]) {
+                count = advance(i, at, settings, n, moved, count);
+                if (j + 1 < movers.length && movers[j + 1] == i + 1) {
+                    count = advance(i + 1, at, settings, n, moved, count);
+                }
+                advanced = i + 1;
+            }
+        }
+        if (advanced < fast && movers.length > 0
+            && movers[movers.length - 1] == fast) {
+            count = advance(fast, at, settings, n, moved, count);
+        }
+        return count;
+    }
+
+    /** Advance the rotor in slot K as step() does with AT, SETTINGS and
+     *  N, recording K in MOVED[COUNT] unless MOVED is null, and return
+     *  COUNT + 1. */
+    private static int advance(int k, int[] at, int[] settings, int n,
+                               int[] moved, int count) {
+        int s = settings[at[k]] + 1;
+        settings[at[k]] = s == n ? 0 : s;
+        if (moved != null) {
+            moved[count] = k;
+        }
+        return count + 1;
+    }
+
+    /** Return every rotor order: a reflector in slot 0, distinct
+     *  non-moving rotors before the pawls' slots, and distinct rotating
+     *  rotors in those slots, as indices of available rotors by slot. */
+    List<int[]> orders() {
+        ArrayList<int[]> result = new ArrayList<>();
+        fillOrders(new int[_numRotors], 0, new boolean[_names.length],
+                   result);
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER from slot K on, using
+     *  only rotors not USED. */
+    private void fillOrders(int[] order, int k, boolean[] used,
+                            List<int[]> result) {
+        if (k == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        int firstMover = _numRotors - _pawls;
+        for (int r = 0; r < used.length; r += 1) {
+            boolean fits =
+                k == 0 ? _reflecting[r]
+                : k < firstMover ? !_reflecting[r] && !_rotates[r]
+                : _rotates[r];
+            if (fits && !used[r]) {
+                used[r] = true;
+                order[k] = r;
+                fillOrders(order, k + 1, used, result);
+                used[r] = false;
+            }
+        }
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+    /** The number of rotor slots. */
+    private final int _numRotors;
+    /** The number of pawls. */
+    private final int _pawls;
+    /** The empty plugboard. */
+    private final Permutation _identity;
+    /** Name of each available rotor. */
+    private final String[] _names;
+    /** Index of each available rotor, by name. */
+    private final HashMap<String, Integer> _byName;
+    /** True for available rotors that rotate. */
+    private final boolean[] _rotates;
+    /** True for available rotors that reflect. */
+    private final boolean[] _reflecting;
+    /** Doubled forward table of each available rotor. */
+    private final int[][] _forward;
+    /** Doubled backward table of each available rotor. */
+    private final int[][] _backward;
+    /** Notch positions of each available rotor before any Ringstellung. */
+    private final boolean[][] _notchAt;
+    /** Notch indices of each available rotor for the first
+     *  Ringstellung. */
+    private final int[][] _ringNotches;
+}
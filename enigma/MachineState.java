@@ -0,0 +1,360 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** The changing part of an Enigma machine: which available rotors are in
+ *  its slots, their settings, and its plugboard, kept in a few small
+ *  arrays over a shared MachineSpec.  A state is set up and converts
+ *  exactly as a Machine with the spec's rotors does, including the
+ *  first Ringstellung's moving of notches, but creating or copying one
+ *  costs only those arrays, so each thread or session can have its own.
+ *  @author Chris Zhan
+ */
+final class MachineState extends Enigma {
+
+    /** A state of a machine described by SPEC, with no rotors in its
+     *  slots and an empty plugboard. */
+    MachineState(MachineSpec spec) {
+        _spec = spec;
+        _slots = new int[spec.numRotors()];
+        Arrays.fill(_slots, -1);
+        _movers = new int[0];
+        _settings = new int[spec.numAvailable()];
+        _notchAt = new boolean[spec.numAvailable()][];
+        for (int r = 0; r < _notchAt.length; r += 1) {
+            _notchAt[r] = spec.notchAt(r);
+        }
+        _plugboard = spec.identity();
+    }
+
+    /** Return my spec. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    @Override
+    Alphabet alphabet() {
+        return _spec.alphabet();
+    }
+
+    @Override
+    int numRotors() {
+        return _spec.numRotors();
+    }
+
+    @Override
+    int numPawls() {
+        return _spec.numPawls();
+    }
+
+    /** Return the index of the available rotor in slot K, or -1 if the
+     *  slot is empty. */
+    int rotor(int k) {
+        return _slots[k];
+    }
+
+    /** Return the setting of the rotor in slot K. */
+    int setting(int k) {
+        return _settings[_slots[k]];
+    }
+
+    /** Return the slots whose rotors rotate, in increasing order.  Not
+     *  to be modified. */
+    int[] movers() {
+        return _movers;
+    }
+
+    /** Return the setting of available rotor #R. */
+    int rotorSetting(int r) {
+        return _settings[r];
+    }
+
+    /** Set the setting of available rotor #R to POSN. */
+    void setRotorSetting(int r, int posn) {
+        _settings[r] = posn;
+    }
+
+    /** Return the settings at which available rotor #R is now at a
+     *  notch.  Not to be modified. */
+    boolean[] notchAt(int r) {
+        return _notchAt[r];
+    }
+
+    @Override
+    void insertRotors(String[] rotors) {
+        if (rotors.length > numRotors()) {
+            throw new EnigmaException("Number of rotors in setting "
+                   + "line exceeds number of rotors in machine");
+        }
+        int[] slots = new int[numRotors()];
+        Arrays.fill(slots, -1);
+        int movingRotors = 0;
+        for (int i = 0; i < rotors.length; i += 1) {
+            slots[i] = _spec.indexOf(rotors[i]);
+            if (slots[i] < 0) {
+                throw new EnigmaException("Rotor name not in "
+                        + "allRotors collection");
+            }
+            if (_spec.rotates(slots[i])) {
+                movingRotors += 1;
+            }
+        }
+        if (movingRotors != numPawls()) {
+            throw new EnigmaException("Incorrect number of MovingRotor");
+        }
+        int[] movers = new int[movingRotors];
+        for (int i = 0, j = 0; i < rotors.length; i += 1) {
+            if (_spec.rotates(slots[i])) {
+                movers[j] = i;
+                j += 1;
+            }
+        }
+        _slots = slots;
+        _movers = movers;
+    }
+
+    @Override
+    void setRotors(String setting) {
+        if (setting.length() != numRotors() - 1) {
+            throw new EnigmaException("setting must be numRotors() - 1");
+        }
+        Alphabet alpha = alphabet();
+        for (int i = 0; i < setting.length(); i += 1) {
+            if (!alpha.contains(setting.charAt(i))) {
+                throw new EnigmaException("setting must contain "
+                        + "characters in my alphabet");
+            }
+            _settings[_slots[i + 1]] = alpha.toInt(setting.charAt(i));
+        }
+    }
+
+    @Override
+    void setRingstellung(String ringstellung) {
+        if (ringstellung.length() != numRotors() - 1) {
+            throw new EnigmaException("ringstellung must be numRotors() - 1");
+        }
+        Alphabet alpha = alphabet();
+        boolean[] moved = null;
+        for (int i = 0; i < ringstellung.length(); i += 1) {
+            if (!alpha.contains(ringstellung.charAt(i))) {
+                throw new EnigmaException("ringstellung must contain "
+                        + "characters in my alphabet");
+            }
+            int r = _slots[i + 1];
+            int ring = alpha.toInt(ringstellung.charAt(i));
+            int setting = wrap(_settings[r] - ring);
+            if (!_spec.reflecting(r)) {
+                _settings[r] = setting;
+            } else if (setting != 0) {
+                throw error("reflector has only one position");
+            }
+            if (_spec.rotates(r) && !_ringStellungSet) {
+                if (moved == null) {
+                    moved = new boolean[_notchAt.length];
+                    _notchAt = _notchAt.clone();
+                }
+                boolean[] notchAt = new boolean[alpha.size()];
+                if (moved[r]) {
+                    for (int p = 0; p < notchAt.length; p += 1) {
+                        if (_notchAt[r][p]) {
+                            notchAt[wrap(p - ring)] = true;
+                        }
+                    }
+                } else {
+                    for (int p : _spec.ringNotches(r)) {
+                        notchAt[wrap(p - ring)] = true;
+                    }
+                }
+                _notchAt[r] = notchAt;
+                moved[r] = true;
+            }
+        }
+        _ringStellungSet = true;
+    }
+
+    @Override
+    Permutation plugboard() {
+        return _plugboard;
+    }
+
+    @Override
+    void setPlugboard(Permutation plugboard) {
+        _plugboard = plugboard;
+    }
+
+    @Override
+    void setSetupCache(SetupCache cache) {
+        _setupCache = cache;
+    }
+
+    @Override
+    SetupCache setupCache() {
+        return _setupCache;
+    }
+
+    @Override
+    SetupCache.Setup saveSetup(boolean ringed) {
+        int[] settings = new int[numRotors()];
+        for (int k = 0; k < settings.length; k += 1) {
+            if (_slots[k] >= 0) {
+                settings[k] = _settings[_slots[k]];
+            }
+        }
+        return new SetupCache.Setup(_slots.clone(), settings, _movers,
+                                    _plugboard, ringed);
+    }
+
+    @Override
+    boolean restoreSetup(SetupCache.Setup setup) {
+        if (setup.ringed() && !_ringStellungSet) {
+            return false;
+        }
+        int[] slots = new int[numRotors()];
+        for (int k = 0; k < slots.length; k += 1) {
+            slots[k] = setup.rotor(k);
+            if (slots[k] >= 0) {
+                if (!_spec.reflecting(slots[k])) {
+                    _settings[slots[k]] = setup.setting(k);
+                } else if (setup.setting(k) != 0) {
+                    throw error("reflector has only one position");
+                }
+            }
+        }
+        _slots = slots;
+        _movers = setup.movers();
+        _plugboard = setup.plugboard();
+        return true;
+    }
+
+    /** Return a new state equal to mine that changes independently of
+     *  me, sharing my spec and setup cache. */
+    MachineState copy() {
+        return new MachineState(this);
+    }
+
+    /** A copy of STATE. */
+    private MachineState(MachineState state) {
+        _spec = state._spec;
+        restoreFrom(state);
+    }
+
+    /** Put me in the state of SAVED, a state of the same spec, such as
+     *  a copy() of me taken earlier. */
+    void restoreFrom(MachineState saved) {
+        if (saved._spec != _spec) {
+            throw error("states of different machines");
+        }
+        _slots = saved._slots.clone();
+        _movers = saved._movers;
+        _settings = saved._settings.clone();
+        _notchAt = saved._notchAt;
+        _plugboard = saved._plugboard;
+        _ringStellungSet = saved._ringStellungSet;
+        _setupCache = saved._setupCache;
+    }
+
+    /** Advance my rotors to their next position by MachineSpec.step. */
+    void advanceRotors() {
+        int moves = MachineSpec.step(_movers, _slots, _notchAt, _settings,
+                                     alphabet().size(),
+                                     _counting ? _moved : null);
+        if (_counting) {
+            for (int j = 0; j < moves; j += 1) {
+                _steps[_moved[j]] += 1;
+            }
+        }
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the machine. */
+    int convert(int c) {
+        advanceRotors();
+        return transform(c);
+    }
+
+    /** Returns the result of passing C through the plugboard and rotors
+     *  in their current positions, without advancing the machine. */
+    int transform(int c) {
+        int[] slots = _slots, settings = _settings;
+        int n = alphabet().size();
+        c = _plugboard.permute(c);
+        for (int f = slots.length - 1; f >= 0; f -= 1) {
+            int s = settings[slots[f]];
+            c = _spec.forward(slots[f])[c + s] - s;
+            c += c < 0 ? n : 0;
+        }
+        for (int b = 1; b < slots.length; b += 1) {
+            int s = settings[slots[b]];
+            c = _spec.backward(slots[b])[c + s] - s;
+            c += c < 0 ? n : 0;
+        }
+        return _plugboard.permute(c);
+    }
+
+    @Override
+    int convert(char[] in, int off, int len, char[] out, int outOff) {
+        if (_slots[_slots.length - 1] < 0) {
+            throw error("no rotors have been set");
+        }
+        _counting = Metrics.enabled();
+        if (_counting && _steps.length != _slots.length) {
+            _steps = new long[_slots.length];
+            _moved = new int[_slots.length];
+        }
+        Alphabet alpha = alphabet();
+        int k = outOff;
+        for (int i = off; i < off + len; i += 1) {
+            char ch = in[i];
+            if (ch != ' ') {
+                out[k] = alpha.toChar(convert(alpha.toInt(ch)));
+                k += 1;
+            }
+        }
+        if (_counting) {
+            _counting = false;
+            Metrics.converted(k - outOff, _steps);
+        }
+        return k - outOff;
+    }
+
+    @Override
+    String engine() {
+        return "state";
+    }
+
+    /** Return P modulo the alphabet size. */
+    private int wrap(int p) {
+        int n = alphabet().size();
+        int r = p % n;
+        return r < 0 ? r + n : r;
+    }
+
+    /** The description of my machine. */
+    private final MachineSpec _spec;
+    /** Index of the available rotor in each slot, or -1 if empty. */
+    private int[] _slots;
+    /** The slots whose rotors rotate, in increasing order.  Shared, and
+     *  never modified. */
+    private int[] _movers;
+    /** Setting of each available rotor, whether in a slot or not. */
+    private int[] _settings;
+    /** Notch positions of each available rotor.  The inner arrays are
+     *  never modified, so copies may share them. */
+    private boolean[][] _notchAt;
+    /** My plugboard permutation. */
+    private Permutation _plugboard;
+    /** Whether I've already set my ringstellung. */
+    private boolean _ringStellungSet;
+    /** Cache of setups shared with my copies, or null. */
+    private SetupCache _setupCache;
+    /** True iff counting rotor steps in _steps for Metrics, during a
+     *  call of convert(char[], ...) while metrics are collected. */
+    private boolean _counting;
+    /** Steps of the rotor in each slot not yet added to Metrics. */
+    private long[] _steps = new long[0];
+    /** The slots advanced by a step while counting. */
+    private int[] _moved = new int[0];
+}
@@ -0,0 +1,146 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the MachineSpec and MachineState
+ *  classes.
+ *  @author Chris Zhan
+ */
+public class MachineStateTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return a machine with the naval rotors, including a rotor with
+     *  two notches and one whose notch is not in the alphabet. */
+    private static Machine machine() {
+        return TestUtils.naval(5, 3, "B", "Beta", "I", "II", "III", "VI",
+                               "VII MZ?");
+    }
+
+    /** Return a random settings line drawn by RANDOM, which may repeat
+     *  a rotor. */
+    private static String settings(Random random) {
+        String[] movers = {"I", "II", "III", "VI", "VII"};
+        StringBuilder line = new StringBuilder("* B Beta");
+        for (int k = 0; k < 3; k += 1) {
+            line.append(' ').append(movers[random.nextInt(movers.length)]);
+        }
+        line.append(' ').append(letters(random, 4));
+        if (random.nextBoolean()) {
+            line.append(' ').append(letters(random, 4));
+        }
+        if (random.nextBoolean()) {
+            line.append(" (AQ) (EP)");
+        }
+        return line.toString();
+    }
+
+    /** Return N random letters drawn by RANDOM. */
+    private static String letters(Random random, int n) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < n; i += 1) {
+            result.append((char) ('A' + random.nextInt(26)));
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testMatchesMachine() {
+        Random random = new Random(16);
+        for (int trial = 0; trial < 20; trial += 1) {
+            Machine mach = machine();
+            MachineState state = new MachineState(MachineSpec.of(mach));
+            for (int i = 0; i < 30; i += 1) {
+                String line = settings(random);
+                Main.setUp(mach, line);
+                Main.setUp(state, line);
+                String msg = letters(random, random.nextInt(700)) + " ?";
+                assertEquals(line, mach.convert(msg), state.convert(msg));
+            }
+        }
+    }
+
+    @Test
+    public void testStepRule() {
+        boolean[][] notchAt = new boolean[5][26];
+        notchAt[3][4] = true;
+        notchAt[4][21] = true;
+        int[] at = {0, 1, 2, 3, 4};
+        int[] settings = {0, 0, 0, 4, 21};
+        int[] moved = new int[5];
+        int moves = MachineSpec.step(new int[] {2, 3, 4}, at, notchAt,
+                                     settings, 26, moved);
+        assertEquals(3, moves);
+        assertArrayEquals(new int[] {2, 3, 4}, Arrays.copyOf(moved, 3));
+        assertArrayEquals(new int[] {0, 0, 1, 5, 22}, settings);
+        moves = MachineSpec.step(new int[] {2, 3, 4}, at, notchAt,
+                                 settings, 26, null);
+        assertEquals(1, moves);
+        assertArrayEquals(new int[] {0, 0, 1, 5, 23}, settings);
+        settings = new int[] {0, 0, 0, 4, 0};
+        moves = MachineSpec.step(new int[] {1, 2}, at, notchAt, settings,
+                                 26, moved);
+        assertEquals(1, moves);
+        assertEquals(2, moved[0]);
+        assertArrayEquals(new int[] {0, 0, 1, 4, 0}, settings);
+    }
+
+    @Test
+    public void testCopiesAreIndependent() {
+        MachineState state = new MachineState(MachineSpec.of(machine()));
+        Main.setUp(state, "* B Beta VI VII I AXLE BCDE (YF) (ZH)");
+        MachineState copy = state.copy();
+        String first = state.convert("FROMHISSHOULDERHIAWATHA");
+        assertEquals(first, copy.convert("FROMHISSHOULDERHIAWATHA"));
+        Main.setUp(copy, "* B Beta VII VI I AXLE ZZZZ");
+        Main.setUp(state, "* B Beta VII VI I AXLE ZZZZ");
+        copy.convert("TOOKTHECAMERAOFROSEWOOD");
+        assertEquals(copy.copy().convert("MADEOFSLIDINGFOLDING"),
+                     state.copy().copy().convert("TOOKTHECAMERAOFROSEWOOD"
+                                                 + "MADEOFSLIDINGFOLDING")
+                     .substring(23));
+    }
+
+    @Test
+    public void testSharesCacheWithMachine() {
+        Machine mach = machine();
+        MachineSpec spec = MachineSpec.of(mach);
+        SetupCache cache = new SetupCache(16);
+        mach.setSetupCache(cache);
+        String[] lines = {
+            "* B Beta III VI I AXLE (HQ) (EX) (IP) (TR) (BW)",
+            "* B Beta VII VII III AAAA BBBB (AQ) (EP)",
+            "* B Beta II VI I QEVZ",
+        };
+        StringBuilder expected = new StringBuilder();
+        for (String line : lines) {
+            Main.setUp(mach, line);
+            expected.append(mach.convert("HIAWATHA"));
+        }
+        MachineState state = new MachineState(spec);
+        state.setSetupCache(cache);
+        StringBuilder result = new StringBuilder();
+        for (String line : lines) {
+            Main.setUp(state, line);
+            result.append(state.convert("HIAWATHA"));
+        }
+        assertEquals(expected.toString(), result.toString());
+        assertEquals(lines.length, cache.size());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testUnknownRotor() {
+        MachineState state = new MachineState(MachineSpec.of(machine()));
+        Main.setUp(state, "* B Beta III VIII I AXLE");
+    }
+}
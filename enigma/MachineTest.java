@@ -1,6 +1,12 @@
 package enigma;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Random;
 import org.junit.Test;
 import org.junit.Rule;
 import org.junit.rules.Timeout;
@@ -79,6 +85,96 @@ public class MachineTest {
                 mach.convert("FROMHISSHOULDERHIAWATHA"));
     }
 
+    @Test
+    public void testConvertBuffer() {
+        Machine mach = mach1();
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)", AZ));
+        char[] in = "..FROM HIS SHOULDER HIAWATHA..".toCharArray();
+        char[] out = new char[in.length + 3];
+        int n = mach.convert(in, 2, in.length - 4, out, 3);
+        assertEquals(23, n);
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", new String(out, 3, n));
+    }
+
+    /** Return a machine with fresh naval rotors set up as mach1(),
+     *  with Ringstellung BCDE and a fixed plugboard. */
+    private Machine ringed() {
+        Machine mach = TestUtils.naval(5, 3, "B", "Beta", "III", "IV", "I");
+        mach.insertRotors(ROTORS1);
+        mach.setRotors(SETTING1);
+        mach.setRingstellung("BCDE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", AZ));
+        return mach;
+    }
+
+    @Test
+    public void testFusedMatchesUnfused() {
+        String msg = "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD"
+                + "MADEOFSLIDINGFOLDINGROSEWOODNEATLYPUTITALLTOGETHER";
+        msg = msg + msg + msg + msg + msg + msg;
+        String expected = ringed().convert(msg);
+        Machine fused = ringed();
+        fused.setFused(true);
+        assertEquals(expected, fused.convert(msg));
+    }
+
+    @Test
+    public void testPeriodTableMatchesPlain() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 18000; i += 1) {
+            msg.append((char) ('A' + (i * 7 + i / 26) % 26));
+        }
+        String expected = ringed().convert(msg.toString());
+        Machine table = ringed();
+        table.setPeriodLimit(1 << 20);
+        assertEquals(expected, table.convert(msg.toString()));
+        Machine plain = ringed();
+        plain.convert(msg.toString());
+        for (int k = 1; k < 5; k += 1) {
+            assertEquals(plain.getRotor(k).setting(),
+                         table.getRotor(k).setting());
+        }
+        assertEquals(plain.convert("HIAWATHA"), table.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testPeriodTableReusedAcrossSetups() {
+        Machine mach = ringed();
+        mach.setPeriodLimit(1 << 20);
+        String first = mach.convert("FROMHISSHOULDERHIAWATHA");
+        mach.setRotors(SETTING1);
+        mach.setRingstellung("BCDE");
+        mach.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR)", AZ));
+        assertEquals(first, mach.convert("FROMHISSHOULDERHIAWATHA"));
+        mach.advanceRotors();
+        Machine plain = ringed();
+        plain.convert("FROMHISSHOULDERHIAWATHA");
+        plain.advanceRotors();
+        assertEquals(plain.convert("TOOKTHECAMERA"),
+                     mach.convert("TOOKTHECAMERA"));
+    }
+
+    @Test
+    public void testPeriodTableTooLarge() {
+        Machine mach = ringed();
+        mach.setPeriodLimit(100);
+        assertEquals(ringed().convert("FROMHISSHOULDERHIAWATHA"),
+                     mach.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testOutsideAlphabet() {
+        String msg = "HELLO1WORLD?FROM HIAWATHA";
+        String expected = ringed().convert(msg);
+        Machine fused = ringed();
+        fused.setFused(true);
+        assertEquals(expected, fused.convert(msg));
+        Machine table = ringed();
+        table.setPeriodLimit(1 << 20);
+        assertEquals(expected, table.convert(msg));
+        assertEquals(msg.replace(" ", "").length(), expected.length());
+    }
+
     @Test
     public void testSetRotors() {
         Machine mach = mach1();
@@ -114,8 +210,14 @@ public class MachineTest {
                 new Permutation("", BASICABC), "C"));
     }
 
+    /** Return a machine with its own copies of BASICROTORS, so that
+     *  tests do not see one another's rotor settings. */
     public static Machine simple() {
-        Machine simple = new Machine(BASICABC, 4, 3, BASICROTORS.values());
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (Rotor r : BASICROTORS.values()) {
+            rotors.add(r.copy());
+        }
+        Machine simple = new Machine(BASICABC, 4, 3, rotors);
         String[] basicRotorsString = {"1", "2", "3", "4"};
         simple.insertRotors(basicRotorsString);
         return simple;
@@ -160,5 +262,138 @@ public class MachineTest {
         assertEquals(mach.alphabet().toInt('A'), mach.getRotor(2).setting());
         assertEquals(mach.alphabet().toInt('B'), mach.getRotor(3).setting());
     }
-}
 
+    /** Assert that the rotors of M and EXPECTED have the same settings.
+     *  MSG identifies the comparison. */
+    private void checkSettings(String msg, Machine expected, Machine m) {
+        for (int k = 1; k < m.numRotors(); k += 1) {
+            assertEquals(msg + " slot " + k, expected.getRotor(k).setting(),
+                         m.getRotor(k).setting());
+        }
+    }
+
+    @Test
+    public void testSeek() {
+        Machine stepped = ringed();
+        Machine seeker = ringed();
+        long[] targets = {0, 1, 25, 26, 650, 651, 16900, 16903, 40000};
+        long done = 0;
+        for (long target : targets) {
+            while (done < target) {
+                stepped.advanceRotors();
+                done += 1;
+            }
+            seeker.seek(target);
+            checkSettings("seek " + target, stepped, seeker);
+            assertEquals(target, seeker.position());
+        }
+        seeker.seek(651);
+        stepped = ringed();
+        stepped.convert(new String(new char[651]).replace('\0', 'A'));
+        assertEquals(stepped.convert("HIAWATHA"), seeker.convert("HIAWATHA"));
+    }
+
+    @Test
+    public void testSeekAnySetup() {
+        Random random = new Random(6);
+        String[] movers = {"I", "II", "III", "VI", "VII"};
+        for (int trial = 0; trial < 24; trial += 1) {
+            int pawls = 1 + trial % 4;
+            Machine stepped = TestUtils.naval(pawls + 2, pawls, "B", "Beta",
+                                              "I", "II", "III", "VI",
+                                              "VII MZ?");
+            StringBuilder line = new StringBuilder("* B Beta");
+            for (int k = 0; k < pawls; k += 1) {
+                line.append(' ').append(movers[random.nextInt(5)]);
+            }
+            for (int words = 1 + random.nextInt(2); words > 0; words -= 1) {
+                line.append(' ');
+                for (int k = 0; k <= pawls; k += 1) {
+                    line.append((char) ('A' + random.nextInt(26)));
+                }
+            }
+            Main.setUp(stepped, line.toString());
+            Machine seeker = stepped.copy();
+            Machine origin = stepped.copy();
+            long done = 0;
+            for (int i = 0; i < 6; i += 1) {
+                long target = done + random.nextInt(3000);
+                while (done < target) {
+                    stepped.advanceRotors();
+                    done += 1;
+                }
+                seeker.seek(target);
+                checkSettings(line + " seek " + target, stepped, seeker);
+            }
+            long far = 1_000_000_000_007L;
+            Machine farSeeker = seeker.copy();
+            farSeeker.seek(far);
+            SteppingCycle cycle = SteppingCycle.walk(origin, 1 << 20);
+            assertNotNull(cycle);
+            cycle.restore(origin, cycle.index(far));
+            checkSettings(line + " seek " + far, origin, farSeeker);
+        }
+    }
+
+    @Test
+    public void testSkip() {
+        Machine stepped = ringed();
+        Machine skipper = ringed();
+        for (int n = 0; n < 40; n += 1) {
+            int steps = n * n * 7;
+            for (int i = 0; i < steps; i += 1) {
+                stepped.advanceRotors();
+            }
+            skipper.skip(steps);
+            checkSettings("skip " + steps, stepped, skipper);
+        }
+    }
+
+    @Test
+    public void testSeekSmallMachine() {
+        Machine mach = simple();
+        mach.setRotors("ABC");
+        int[][] expected = new int[60][];
+        for (int n = 0; n < expected.length; n += 1) {
+            expected[n] = new int[] {mach.getRotor(1).setting(),
+                mach.getRotor(2).setting(), mach.getRotor(3).setting()};
+            mach.advanceRotors();
+        }
+        for (int n = expected.length - 1; n >= 0; n -= 3) {
+            mach.setRotors("ABC");
+            mach.seek(n);
+            for (int k = 1; k < 4; k += 1) {
+                assertEquals(expected[n][k - 1], mach.getRotor(k).setting());
+            }
+            mach.setRotors("ABC");
+            mach.skip(n);
+            for (int k = 1; k < 4; k += 1) {
+                assertEquals(expected[n][k - 1], mach.getRotor(k).setting());
+            }
+        }
+    }
+
+    @Test
+    public void testRingTracer() throws IOException {
+        Machine mach = ringed();
+        mach.setFused(true);
+        RingTracer tracer = new RingTracer(AZ, 5, 2);
+        mach.setTracer(tracer);
+        assertEquals(ringed().convert("FROM"), mach.convert("FROM"));
+        assertEquals(2, tracer.size());
+
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        tracer.print(new PrintStream(printed));
+        String[] lines = printed.toString().split(System.lineSeparator());
+        assertEquals(2, lines.length);
+        assertTrue(lines[0].startsWith("[ZVID] O -> O -> R"));
+        assertTrue(lines[1].startsWith("[ZVIE] M -> M -> T"));
+
+        ByteArrayOutputStream binary = new ByteArrayOutputStream();
+        tracer.write(binary);
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+        RingTracer.decode(new ByteArrayInputStream(binary.toByteArray()),
+                          new PrintStream(decoded));
+        assertEquals(printed.toString(), decoded.toString());
+    }
+}
@@ -1,8 +1,14 @@
 package enigma;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
 import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.Paths;
 
 import java.util.Scanner;
 import java.util.List;
@@ -27,17 +33,28 @@ public final class Main {
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1.  The option --threads=N converts with N
+     *  threads: by regions of the input when both an input and an output
+     *  file are named, and otherwise by messages. */
     public static void main(String... args) {
         try {
             CommandArgs options =
-                new CommandArgs("--verbose --=(.*){1,3}", args);
+                new CommandArgs("--verbose --threads=(\\d+) --=(.*){1,3}",
+                                args);
             if (!options.ok()) {
                 throw error("Usage: java enigma.Main [--verbose] "
-                            + "[INPUT [OUTPUT]]");
+                            + "[--threads=N] [INPUT [OUTPUT]]");
             }
 
             _verbose = options.contains("--verbose");
+            if (options.contains("--threads")) {
+                try {
+                    _threads = Math.max(1, Integer.parseInt(
+                            options.getFirst("--threads")));
+                } catch (NumberFormatException excp) {
+                    throw error("bad thread count");
+                }
+            }
             new Main(options.get("--")).process();
             return;
         } catch (EnigmaException excp) {
@@ -49,23 +66,28 @@ public final class Main {
     /** Open the necessary files for non-option arguments ARGS (see comment
       *  on main). */
     Main(List<String> args) {
-        _config = getInput(args.get(0));
+        _configName = args.get(0);
+        if (!new File(_configName).canRead()) {
+            throw error("could not open %s", _configName);
+        }
 
         if (args.size() > 1) {
-            _input = getInput(args.get(1));
+            _inputName = args.get(1);
+            _input = getInput(_inputName);
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in);
         }
 
         if (args.size() > 2) {
-            _output = getOutput(args.get(2));
+            _outputName = args.get(2);
+            _output = getOutput(_outputName);
         } else {
             _output = System.out;
         }
     }
 
     /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    private Scanner getConfig(String name) {
         try {
             return new Scanner(new File(name));
         } catch (IOException excp) {
@@ -73,6 +95,15 @@ public final class Main {
         }
     }
 
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getInput(String name) {
+        try {
+            return new InputStreamReader(new FileInputStream(name));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
     /** Return a PrintStream writing to the file named NAME. */
     private PrintStream getOutput(String name) {
         try {
@@ -87,34 +118,90 @@ public final class Main {
      *  results to _output. */
     private void process() {
         Machine machine = readConfig();
-        setUp(machine, _input.nextLine());
-        while (_input.hasNextLine()) {
-            String strInput = _input.nextLine();
-            if (Objects.equals(strInput, "")) {
-                if (_input.hasNextLine()) {
-                    strInput = _input.nextLine();
-                    _output.println();
-                } else {
-                    break;
-                }
-                if (Objects.equals(strInput, "")) {
-                    continue;
-                }
-            }
-            if (strInput.charAt(0) == '*') {
-                setUp(machine, strInput);
+        machine.setFused(true);
+        machine.setSetupCache(new SetupCache(SETUP_CACHE));
+        if (Metrics.enabled()) {
+            Metrics.register();
+        }
+        if (verbose()) {
+            machine.setTracer(new PrintTracer(machine.alphabet(),
+                                              machine.numRotors(),
+                                              System.err));
+        }
+        if (threads() > 1 && _inputName != null && _outputName != null
+            && !verbose() && processParallel(machine)) {
+            return;
+        }
+        Writer output = new OutputStreamWriter(_output);
+        try {
+            if (threads() > 1 && !verbose()) {
+                new ParallelMessageProcessor(machine, _input, output,
+                                             threads()).process();
             } else {
-                printMessageLine(machine.convert(strInput));
+                new StreamProcessor(machine, _input, output).process();
+            }
+        } catch (IOException excp) {
+            throw error("could not process input: %s", excp.getMessage());
+        } finally {
+            try {
+                output.flush();
+            } catch (IOException excp) {
+                /* Ignore: the PrintStream records its own errors. */
             }
         }
-        _output.println();
+    }
 
+    /** Apply MACHINE to the messages in the file _inputName, sending the
+     *  results to the file _outputName, using threads() threads.  Return
+     *  false, having done nothing, if the input must be processed by a
+     *  single thread. */
+    private boolean processParallel(Machine machine) {
+        try {
+            return new ParallelFileProcessor(machine, Paths.get(_inputName),
+                                             Paths.get(_outputName),
+                                             threads()).process();
+        } catch (IOException excp) {
+            throw error("could not process input: %s", excp.getMessage());
+        }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
-    private Machine readConfig() {
+     *  file _config, or from the configuration image written to it by
+     *  ConfigCompiler. */
+    Machine readConfig() {
+        Events.ReadConfig event = null;
+        if (Events.recording()) {
+            event = new Events.ReadConfig();
+            event.begin();
+        }
+        long start = System.nanoTime();
+        boolean image;
+        Machine machine;
         try {
+            image = ConfigImage.isImage(_configName);
+            machine = image ? ConfigImage.read(_configName) : parseConfig();
+        } catch (IOException excp) {
+            throw error("could not read %s", _configName);
+        }
+        _alphabet = machine.alphabet();
+        Metrics.configLoaded(System.nanoTime() - start);
+        if (event != null && event.shouldCommit()) {
+            event.config = _configName;
+            event.image = image;
+            event.alphabetSize = machine.alphabet().size();
+            event.rotors = machine.numRotors();
+            event.pawls = machine.numPawls();
+            event.commit();
+        }
+        return machine;
+    }
+
+    /** Return an Enigma machine configured from the contents of the
+     *  configuration file named _configName, which is open as _config
+     *  only while it is read. */
+    private Machine parseConfig() {
+        try (Scanner config = getConfig(_configName)) {
+            _config = config;
             _alphabet = new Alphabet(_config.next());
             if (!_config.hasNextInt()) {
                 throw new EnigmaException("Number of rotors must be an int");
@@ -132,6 +219,8 @@ public final class Main {
             return new Machine(_alphabet, numRotors, numPawls, rotors.values());
         } catch (NoSuchElementException excp) {
             throw error("configuration file truncated");
+        } finally {
+            _config = null;
         }
     }
 
@@ -165,8 +254,44 @@ public final class Main {
 
     /** Set M according to the specification given on SETTINGS,
      *  which must have the format specified in the assignment.
-     *  Example SETTINGS: * B Beta III IV I AXLE (YF) (ZH) */
-    private void setUp(Machine M, String settings) {
+     *  Example SETTINGS: * B Beta III IV I AXLE (YF) (ZH)
+     *  Setups are taken from M's setup cache, if it has one, when
+     *  SETTINGS has been seen before. */
+    static void setUp(Enigma M, String settings) {
+        Metrics.setUp();
+        Events.SetUp event = null;
+        if (Events.recording()) {
+            event = new Events.SetUp();
+            event.begin();
+        }
+        boolean cached = restore(M, settings);
+        if (!cached) {
+            apply(M, settings);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.alphabetSize = M.alphabet().size();
+            event.rotors = M.numRotors();
+            event.cached = cached;
+            event.engine = M.engine();
+            event.commit();
+        }
+    }
+
+    /** Set M as setUp(M, SETTINGS) would from M's setup cache, and return
+     *  true, or return false if that is not possible. */
+    private static boolean restore(Enigma M, String settings) {
+        SetupCache cache = M.setupCache();
+        if (cache == null) {
+            return false;
+        }
+        SetupCache.Setup setup = cache.get(settings);
+        return setup != null && M.restoreSetup(setup);
+    }
+
+    /** Set M according to SETTINGS as setUp does, without consulting M's
+     *  setup cache, but recording the setup in it. */
+    private static void apply(Enigma M, String settings) {
+        SetupCache cache = M.setupCache();
         Scanner inSettings = new Scanner(settings);
         String checkAsterisk = inSettings.next();
         if (!Objects.equals(checkAsterisk, "*")) {
@@ -180,7 +305,8 @@ public final class Main {
         M.insertRotors(rotors1);
         String rotorSettings = inSettings.next();
         M.setRotors(rotorSettings);
-        if (inSettings.hasNext("\\w+")) {
+        boolean ringed = inSettings.hasNext("\\w+");
+        if (ringed) {
             String ringstellungSet = inSettings.next();
             M.setRingstellung(ringstellungSet);
         }
@@ -189,6 +315,9 @@ public final class Main {
             plugboardSettings = inSettings.nextLine();
         }
         M.setPlugboard(new Permutation(plugboardSettings, M.alphabet()));
+        if (cache != null) {
+            cache.put(settings, M.saveSetup(ringed));
+        }
     }
 
     /** Return true iff verbose option specified. */
@@ -196,27 +325,28 @@ public final class Main {
         return _verbose;
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters).
-     *  Assumes that MSG is a single line, with no spaces */
-    private void printMessageLine(String msg) {
-        String result = "";
-        for (int i = 0; i < msg.length(); i += 1) {
-            result = result + msg.charAt(i);
-            if ((i + 1) % 5 == 0) {
-                result = result + " ";
-            }
-        }
-        _output.println(result);
+    /** Return the number of threads requested with --threads. */
+    static int threads() {
+        return _threads;
     }
 
+    /** Number of distinct settings lines whose setups are cached. */
+    private static final int SETUP_CACHE = 256;
+
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
+    /** Names of the input and output files, or null for the standard
+     *  input and output. */
+    private String _inputName, _outputName;
+
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
 
-    /** Source of machine configuration. */
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Source of machine configuration, while it is being parsed. */
     private Scanner _config;
 
     /** File for encoded/decoded messages. */
@@ -224,4 +354,7 @@ public final class Main {
 
     /** True if --verbose specified. */
     private static boolean _verbose;
+
+    /** Number of threads with which to convert files. */
+    private static int _threads = 1;
 }
@@ -0,0 +1,311 @@
+package enigma;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import static enigma.EnigmaException.*;
+
+/** Counts of what the machines in this JVM are doing, published through
+ *  JMX as an MBean named NAME.
+ *
+ *  <p>Collection is off until someone asks for it, by reading an
+ *  attribute, setting Enabled, or starting the JVM with
+ *  -Denigma.metrics=true.  While it is off, the code that reports to
+ *  these counters tests one volatile boolean per message line or
+ *  conversion call, and a field of the machine's own per step, and does
+ *  nothing else.  While it is on, every counter is a LongAdder,
+ *  whose updates from different threads go to different cells, and
+ *  rotor steps are counted in a plain array owned by each machine and
+ *  added in once per conversion call, so concurrent sessions do not
+ *  contend on one cache line.  Message latencies are kept in a
+ *  histogram of LongAdders with four buckets per power of two, so that
+ *  percentiles are accurate to within a quarter.
+ *
+ *  <p>Characters and rotor steps are counted by the conversions of
+ *  Machine and MachineState, message latencies by StreamProcessor.
+ *  Characters a Machine converts from its period table are counted, but
+ *  step no rotors, and BatchConverter and LaneConverter count nothing.
+ *  Server always registers the MBean; Main registers it only when
+ *  collecting from the start.
+ *  @author Chris Zhan
+ */
+public final class Metrics implements MetricsMBean {
+
+    /** The object name under which the metrics are registered. */
+    public static final String NAME = "enigma:type=Metrics";
+
+    /** The metrics of this JVM. */
+    private static final Metrics INSTANCE = new Metrics();
+
+    /** True iff collecting.  Read by the code reporting to me. */
+    private static volatile boolean _enabled =
+        Boolean.getBoolean("enigma.metrics");
+
+    /** Not instantiable except as INSTANCE. */
+    private Metrics() {
+        _since = System.nanoTime();
+    }
+
+    /** Return the metrics of this JVM. */
+    static Metrics instance() {
+        return INSTANCE;
+    }
+
+    /** Register the metrics with the platform MBean server, if they are
+     *  not registered already. */
+    static void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            server.registerMBean(INSTANCE, new ObjectName(NAME));
+        } catch (InstanceAlreadyExistsException excp) {
+            return;
+        } catch (JMException excp) {
+            throw error("could not register metrics: %s", excp.getMessage());
+        }
+    }
+
+    /** Return true iff metrics are being collected, so that callers can
+     *  skip measuring what would not be recorded. */
+    static boolean enabled() {
+        return _enabled;
+    }
+
+    /** Record that a configuration was loaded in NANOS nanoseconds.
+     *  Recorded even when collection is off, being rare. */
+    static void configLoaded(long nanos) {
+        INSTANCE._configLoad = nanos;
+    }
+
+    /** Record a settings line set up. */
+    static void setUp() {
+        if (_enabled) {
+            INSTANCE._setUps.increment();
+        }
+    }
+
+    /** Record that CHARS characters were converted, during which the
+     *  rotor in slot K stepped STEPS[K] times, and clear STEPS. */
+    static void converted(long chars, long[] steps) {
+        INSTANCE._chars.add(chars);
+        LongAdder[] slots = INSTANCE.slots(steps.length);
+        for (int k = 0; k < steps.length; k += 1) {
+            if (steps[k] != 0) {
+                slots[k].add(steps[k]);
+                steps[k] = 0;
+            }
+        }
+    }
+
+    /** Record that a message line was converted in NANOS
+     *  nanoseconds. */
+    static void message(long nanos) {
+        Metrics m = INSTANCE;
+        m._messages.increment();
+        m._latency[bucket(nanos)].increment();
+        m._maxLatency.accumulate(nanos);
+    }
+
+    /** Return at least N step counters, one per slot. */
+    private LongAdder[] slots(int n) {
+        LongAdder[] slots = _slots;
+        if (slots.length >= n) {
+            return slots;
+        }
+        synchronized (this) {
+            if (_slots.length < n) {
+                LongAdder[] grown = Arrays.copyOf(_slots, n);
+                for (int k = _slots.length; k < n; k += 1) {
+                    grown[k] = new LongAdder();
+                }
+                _slots = grown;
+            }
+            return _slots;
+        }
+    }
+
+    /** Return the histogram bucket of a latency of NANOS nanoseconds:
+     *  below 4, the latency itself, and otherwise four buckets for each
+     *  power of two. */
+    static int bucket(long nanos) {
+        if (nanos < SUB_BUCKETS) {
+            return (int) Math.max(0, nanos);
+        }
+        int e = Long.SIZE - 1 - Long.numberOfLeadingZeros(nanos);
+        int sub = (int) (nanos >>> (e - 2)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS * (e - 1) + sub;
+    }
+
+    /** Return the largest latency in nanoseconds that falls in
+     *  BUCKET. */
+    static long bucketLimit(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int e = bucket / SUB_BUCKETS + 1, sub = bucket % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (e - 2)) - 1;
+    }
+
+    /** Return the latency at or below which a fraction P of messages
+     *  converted, in microseconds, or 0 if there were none. */
+    private double percentile(double p) {
+        long[] counts = new long[_latency.length];
+        long total = 0;
+        for (int i = 0; i < counts.length; i += 1) {
+            counts[i] = _latency[i].sum();
+            total += counts[i];
+        }
+        long target = Math.max(1, (long) Math.ceil(p * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length && total > 0; i += 1) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(bucketLimit(i), _maxLatency.get()) / 1e3;
+            }
+        }
+        return 0;
+    }
+
+    /** Return the seconds since collection started, at least 1ns. */
+    private double seconds() {
+        return Math.max(1, System.nanoTime() - _since) / 1e9;
+    }
+
+    /** Start collecting, having been read. */
+    private void read() {
+        if (!_enabled) {
+            setEnabled(true);
+        }
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return _enabled;
+    }
+
+    @Override
+    public synchronized void setEnabled(boolean on) {
+        if (on && !_enabled) {
+            _since = System.nanoTime();
+        }
+        _enabled = on;
+    }
+
+    @Override
+    public long getCharactersConverted() {
+        read();
+        return _chars.sum();
+    }
+
+    @Override
+    public long getMessagesProcessed() {
+        read();
+        return _messages.sum();
+    }
+
+    @Override
+    public long getSetUpCalls() {
+        read();
+        return _setUps.sum();
+    }
+
+    @Override
+    public long[] getSlotSteps() {
+        read();
+        LongAdder[] slots = _slots;
+        long[] result = new long[slots.length];
+        for (int k = 0; k < slots.length; k += 1) {
+            result[k] = slots[k].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public double getConfigLoadMillis() {
+        read();
+        return _configLoad / 1e6;
+    }
+
+    @Override
+    public double getCharactersPerSecond() {
+        read();
+        return _chars.sum() / seconds();
+    }
+
+    @Override
+    public double getMessagesPerSecond() {
+        read();
+        return _messages.sum() / seconds();
+    }
+
+    @Override
+    public double getMessageLatencyP50Micros() {
+        read();
+        return percentile(0.5);
+    }
+
+    @Override
+    public double getMessageLatencyP90Micros() {
+        read();
+        return percentile(0.9);
+    }
+
+    @Override
+    public double getMessageLatencyP99Micros() {
+        read();
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getMessageLatencyMaxMicros() {
+        read();
+        return _maxLatency.get() / 1e3;
+    }
+
+    @Override
+    public synchronized void reset() {
+        _chars.reset();
+        _messages.reset();
+        _setUps.reset();
+        for (LongAdder slot : _slots) {
+            slot.reset();
+        }
+        for (LongAdder bucket : _latency) {
+            bucket.reset();
+        }
+        _maxLatency.reset();
+        _since = System.nanoTime();
+    }
+
+    /** Histogram buckets for each power of two. */
+    private static final int SUB_BUCKETS = 4;
+
+    /** Characters converted. */
+    private final LongAdder _chars = new LongAdder();
+    /** Message lines converted. */
+    private final LongAdder _messages = new LongAdder();
+    /** Settings lines set up. */
+    private final LongAdder _setUps = new LongAdder();
+    /** Steps of the rotor in each slot. */
+    private volatile LongAdder[] _slots = new LongAdder[0];
+    /** Message latencies, by bucket. */
+    private final LongAdder[] _latency = new LongAdder[bucket(Long.MAX_VALUE)
+                                                       + 1];
+    {
+        for (int i = 0; i < _latency.length; i += 1) {
+            _latency[i] = new LongAdder();
+        }
+    }
+    /** Longest message latency, in nanoseconds. */
+    private final LongAccumulator _maxLatency =
+        new LongAccumulator(Math::max, 0);
+    /** Nanosecond time at which collection started. */
+    private volatile long _since;
+    /** Nanoseconds taken by the last configuration load. */
+    private volatile long _configLoad;
+}
@@ -0,0 +1,61 @@
+package enigma;
+
+/** The management interface of Metrics, as seen through JMX under the
+ *  name Metrics.NAME.  Reading any attribute turns collection on, so
+ *  the first reading after a quiet period shows only what has happened
+ *  since.
+ *  @author Chris Zhan
+ */
+public interface MetricsMBean {
+
+    /** Return true iff metrics are being collected. */
+    boolean isEnabled();
+
+    /** Start collecting metrics iff ON; stopping keeps what has been
+     *  collected. */
+    void setEnabled(boolean on);
+
+    /** Return the number of characters converted. */
+    long getCharactersConverted();
+
+    /** Return the number of message lines converted. */
+    long getMessagesProcessed();
+
+    /** Return the number of settings lines set up. */
+    long getSetUpCalls();
+
+    /** Return the number of times the rotor in each slot, reflector
+     *  first, stepped. */
+    long[] getSlotSteps();
+
+    /** Return the time taken by the last configuration load, in
+     *  milliseconds. */
+    double getConfigLoadMillis();
+
+    /** Return characters converted per second since collection
+     *  started. */
+    double getCharactersPerSecond();
+
+    /** Return message lines converted per second since collection
+     *  started. */
+    double getMessagesPerSecond();
+
+    /** Return the median time to convert a message line, in
+     *  microseconds. */
+    double getMessageLatencyP50Micros();
+
+    /** Return the 90th percentile time to convert a message line, in
+     *  microseconds. */
+    double getMessageLatencyP90Micros();
+
+    /** Return the 99th percentile time to convert a message line, in
+     *  microseconds. */
+    double getMessageLatencyP99Micros();
+
+    /** Return the longest time to convert a message line, in
+     *  microseconds. */
+    double getMessageLatencyMaxMicros();
+
+    /** Discard everything collected so far. */
+    void reset();
+}
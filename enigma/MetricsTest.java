@@ -0,0 +1,174 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Metrics class.
+ *  @author Chris Zhan
+ */
+public class MetricsTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final String INPUT =
+        "* B Beta III IV I AXLE (HQ) (EX)\nHELLO WORLD\nFROM HIAWATHA\n";
+
+    /** Characters in the messages of INPUT. */
+    private static final int CHARS = 22;
+
+    private final Metrics _metrics = Metrics.instance();
+
+    /** Process INPUT on MACHINE, returning the output. */
+    private static String process(Enigma machine) throws IOException {
+        StringWriter output = new StringWriter();
+        new StreamProcessor(machine, new StringReader(INPUT), output, 7)
+            .process();
+        return output.toString();
+    }
+
+    @Before
+    public void setUp() {
+        _metrics.setEnabled(true);
+        _metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        _metrics.setEnabled(false);
+        _metrics.reset();
+    }
+
+    /** Check the counts after processing INPUT TIMES times. */
+    private void checkCounts(int times) {
+        assertEquals(times * CHARS, _metrics.getCharactersConverted());
+        assertEquals(times * 2, _metrics.getMessagesProcessed());
+        assertEquals(times, _metrics.getSetUpCalls());
+        long[] steps = _metrics.getSlotSteps();
+        assertEquals(5, steps.length);
+        assertEquals(0, steps[0]);
+        assertEquals(0, steps[1]);
+        assertEquals(times * CHARS, steps[4]);
+        assertTrue(steps[3] > 0 && steps[3] < steps[4]);
+        assertTrue(_metrics.getCharactersPerSecond() > 0);
+        assertTrue(_metrics.getMessagesPerSecond() > 0);
+    }
+
+    @Test
+    public void testCounts() throws IOException {
+        process(TestUtils.naval());
+        checkCounts(1);
+        process(new MachineState(MachineSpec.of(TestUtils.naval())));
+        checkCounts(2);
+    }
+
+    @Test
+    public void testSameOutput() throws IOException {
+        String counted = process(TestUtils.naval());
+        _metrics.setEnabled(false);
+        assertEquals(counted, process(TestUtils.naval()));
+    }
+
+    @Test
+    public void testDisabled() throws IOException {
+        _metrics.setEnabled(false);
+        process(TestUtils.naval());
+        assertFalse(_metrics.isEnabled());
+        assertEquals(0, _metrics.getCharactersConverted());
+        assertTrue(_metrics.isEnabled());
+        assertEquals(0, _metrics.getMessagesProcessed());
+        assertEquals(0, _metrics.getSetUpCalls());
+        assertEquals(0, _metrics.getMessageLatencyP50Micros(), 0);
+    }
+
+    @Test
+    public void testSplitLineCountsOnce() throws IOException {
+        int cut = INPUT.indexOf("WORLD") + 2;
+        Machine mach = TestUtils.naval();
+        StringWriter output = new StringWriter();
+        new StreamProcessor(mach, new StringReader(INPUT.substring(0, cut)),
+                            output, 7).processStart(false);
+        new StreamProcessor(mach, new StringReader(INPUT.substring(cut)),
+                            output, 7).processRegion(7, true);
+        _metrics.setEnabled(false);
+        assertEquals(process(TestUtils.naval()), output.toString());
+        assertEquals(CHARS, _metrics.getCharactersConverted());
+        assertEquals(2, _metrics.getMessagesProcessed());
+    }
+
+    @Test
+    public void testBuckets() {
+        for (long v = 0; v < 1L << 20; v = v * 3 / 2 + 1) {
+            int b = Metrics.bucket(v);
+            assertTrue(v <= Metrics.bucketLimit(b));
+            assertTrue(b == 0 || v > Metrics.bucketLimit(b - 1));
+            assertTrue(Metrics.bucketLimit(b) <= v + v / 4);
+        }
+        assertEquals(Long.MAX_VALUE,
+                     Metrics.bucketLimit(Metrics.bucket(Long.MAX_VALUE)));
+    }
+
+    @Test
+    public void testPercentiles() {
+        for (int i = 1; i <= 100; i += 1) {
+            Metrics.message(i * 1000L);
+        }
+        assertEquals(100, _metrics.getMessagesProcessed());
+        double p50 = _metrics.getMessageLatencyP50Micros();
+        double p90 = _metrics.getMessageLatencyP90Micros();
+        double p99 = _metrics.getMessageLatencyP99Micros();
+        assertEquals(50, p50, 50 / 4.0);
+        assertEquals(90, p90, 90 / 4.0);
+        assertTrue(p50 <= p90 && p90 <= p99);
+        assertTrue(p99 <= _metrics.getMessageLatencyMaxMicros());
+        assertEquals(100, _metrics.getMessageLatencyMaxMicros(), 0);
+    }
+
+    @Test
+    public void testConfigLoad() throws IOException {
+        Path config = Files.createTempFile("enigma", ".conf");
+        try {
+            Files.write(config, ("ABCDEFGHIJKLMNOPQRSTUVWXYZ 3 1\n"
+                                 + " I MQ " + TestUtils.NAVALA.get("I")
+                                 + "\n B R " + TestUtils.NAVALA.get("B")
+                                 + "\n").getBytes(StandardCharsets.US_ASCII));
+            new Main(Collections.singletonList(config.toString()))
+                .readConfig();
+        } finally {
+            Files.delete(config);
+        }
+        assertTrue(_metrics.getConfigLoadMillis() > 0);
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        Metrics.register();
+        Metrics.register();
+        process(TestUtils.naval());
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(Metrics.NAME);
+        assertEquals((long) CHARS,
+                     server.getAttribute(name, "CharactersConverted"));
+        assertEquals(2L, server.getAttribute(name, "MessagesProcessed"));
+        server.invoke(name, "reset", null, null);
+        assertEquals(0L, server.getAttribute(name, "SetUpCalls"));
+    }
+}
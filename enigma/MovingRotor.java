@@ -14,7 +14,7 @@ class MovingRotor extends Rotor {
      */
     MovingRotor(String name, Permutation perm, String notches) {
         super(name, perm);
-        _notches = notches;
+        setNotches(notches);
         _setting = 0;
     }
 
@@ -34,9 +34,6 @@ class MovingRotor extends Rotor {
         int inputAddSetting = p + setting();
         int permute = permutation().permute(inputAddSetting);
         int result = permute - setting();
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
         return permutation().wrap(result);
     }
     @Override
@@ -44,15 +41,18 @@ class MovingRotor extends Rotor {
         int inputAddSetting = e + setting();
         int permute = permutation().invert(inputAddSetting);
         int result = permute - setting();
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
         return permutation().wrap(result);
     }
 
     @Override
     void setNotches(String notches) {
         _notches = notches;
+        _notchAt = new boolean[size()];
+        for (int i = 0; i < notches.length(); i += 1) {
+            if (alphabet().contains(notches.charAt(i))) {
+                _notchAt[alphabet().toInt(notches.charAt(i))] = true;
+            }
+        }
     }
 
     @Override
@@ -62,16 +62,35 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        for (int i = 0; i < _notches.length(); i += 1) {
-            if (alphabet().toChar(setting()) == _notches.charAt(i)) {
-                return true;
+        return _notchAt[setting()];
+    }
+
+    @Override
+    boolean[] notchAt() {
+        return _notchAt;
+    }
+
+    @Override
+    int stepsToNotch() {
+        for (int d = 0; d < size(); d += 1) {
+            if (_notchAt[permutation().wrap(setting() + d)]) {
+                return d;
             }
         }
-        return false;
+        return -1;
+    }
+
+    @Override
+    Rotor copy() {
+        Rotor result = new MovingRotor(name(), permutation(), notches());
+        result.set(setting());
+        return result;
     }
 
     /** Notches in this rotor. */
     private String _notches;
+    /** True at the settings at which I am at a notch. */
+    private boolean[] _notchAt;
     /** My current setting, as an alphabet index. */
     private int _setting;
 }
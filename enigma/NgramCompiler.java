@@ -0,0 +1,51 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collections;
+
+import static enigma.EnigmaException.*;
+
+/** Compiles an n-gram frequency file into an n-gram image, which
+ *  NgramTable loads without parsing.
+ *  @author Chris Zhan
+ */
+public final class NgramCompiler {
+
+    /** Compile the frequency file named ARGS[1], whose n-grams are in
+     *  the alphabet of the configuration file named ARGS[0], into an
+     *  image in the file named ARGS[2].  Exits normally if there are no
+     *  errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 3) {
+                throw error("Usage: java enigma.NgramCompiler CONFIG "
+                            + "COUNTS IMAGE");
+            }
+            Machine machine =
+                new Main(Collections.singletonList(args[0])).readConfig();
+            NgramTable table;
+            try {
+                table = NgramTable.readCounts(args[1], machine.alphabet());
+            } catch (IOException excp) {
+                throw error("could not read %s", args[1]);
+            }
+            try (OutputStream out = new BufferedOutputStream(
+                     new FileOutputStream(args[2]))) {
+                table.write(out);
+            } catch (IOException excp) {
+                throw error("could not write %s", args[2]);
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Not instantiable. */
+    private NgramCompiler() {
+    }
+}
@@ -0,0 +1,297 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** Log-probability scores of the n-grams of an alphabet, for measuring
+ *  how much a text looks like plaintext.  An n-gram is indexed by its
+ *  characters' alphabet indices as the digits of a number in base
+ *  alphabet size, first character most significant, so the scores of
+ *  all size^n n-grams fit one flat array of floats, 26^4 of them taking
+ *  under 2MB for quadgrams, and a text is scored by rolling that index
+ *  along it, without forming any strings.
+ *
+ *  <p>Tables come from frequency files, which have one n-gram and its
+ *  count per line, separated by blanks, as many published n-gram counts
+ *  do, or from images: after a magic number and version, the alphabet
+ *  (as in ConfigImage), the order n, and the size^n scores as floats,
+ *  read with a single mapping of the file and no parsing.
+ *  @author Chris Zhan
+ */
+final class NgramTable implements Fitness {
+
+    /** A table of the ORDER-grams of ALPHABET whose scores are
+     *  SCORES. */
+    NgramTable(Alphabet alphabet, int order, float[] scores) {
+        _alphabet = alphabet;
+        _order = order;
+        _size = alphabet.size();
+        if (order < 1 || scores.length != entries(_size, order)) {
+            throw error("bad %d-gram table", order);
+        }
+        _scores = scores;
+        _top = (int) entries(_size, order - 1);
+    }
+
+    /** Return the number of ORDER-grams in an alphabet of size N,
+     *  checking that a table can hold them. */
+    private static long entries(int n, int order) {
+        long result = 1;
+        for (int i = 0; i < order; i += 1) {
+            result *= n;
+            if (result > MAX_ENTRIES) {
+                throw error("%d-gram table too large", order);
+            }
+        }
+        return result;
+    }
+
+    /** Return a table of the ALPHABET n-grams counted in the frequency
+     *  file named NAME.  Every n-gram must have the same length and be in
+     *  ALPHABET.  Each n-gram scores the base-10 logarithm of its share
+     *  of the total count; those not listed score as if their count were
+     *  FLOOR_COUNT. */
+    static NgramTable readCounts(String name, Alphabet alphabet)
+        throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(Paths.get(name),
+                 StandardCharsets.UTF_8)) {
+            return readCounts(in, alphabet);
+        }
+    }
+
+    /** Return a table of the ALPHABET n-grams counted in the frequency
+     *  file read from IN, as for readCounts(String, Alphabet). */
+    static NgramTable readCounts(BufferedReader in, Alphabet alphabet)
+        throws IOException {
+        int order = 0;
+        int n = alphabet.size();
+        long[] counts = null;
+        long total = 0;
+        for (String line = in.readLine(); line != null;
+             line = in.readLine()) {
+            line = line.trim();
+            if (line.isEmpty()) {
+                continue;
+            }
+            String[] fields = line.split("\\s+");
+            if (fields.length != 2) {
+                throw error("bad n-gram count line: %s", line);
+            }
+            String gram = fields[0];
+            if (order == 0) {
+                order = gram.length();
+                counts = new long[(int) entries(n, order)];
+            } else if (gram.length() != order) {
+                throw error("n-gram %s is not of length %d", gram, order);
+            }
+            int index = 0;
+            for (int i = 0; i < order; i += 1) {
+                char ch = gram.charAt(i);
+                if (!alphabet.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                index = index * n + alphabet.toInt(ch);
+            }
+            long count;
+            try {
+                count = Long.parseLong(fields[1]);
+            } catch (NumberFormatException excp) {
+                throw error("bad n-gram count: %s", fields[1]);
+            }
+            if (count < 0) {
+                throw error("bad n-gram count: %s", fields[1]);
+            }
+            counts[index] += count;
+            total += count;
+        }
+        if (total == 0) {
+            throw error("no n-grams counted");
+        }
+        float[] scores = new float[counts.length];
+        float floor = (float) Math.log10(FLOOR_COUNT / total);
+        for (int i = 0; i < counts.length; i += 1) {
+            scores[i] = counts[i] == 0 ? floor
+                : (float) Math.log10((double) counts[i] / total);
+        }
+        return new NgramTable(alphabet, order, scores);
+    }
+
+    /** Return true iff the file named NAME begins as an image does. */
+    static boolean isImage(String name) throws IOException {
+        try (InputStream in = new FileInputStream(name)) {
+            byte[] head = new byte[Integer.BYTES];
+            int n = in.readNBytes(head, 0, head.length);
+            return n == head.length
+                && ByteBuffer.wrap(head).getInt() == MAGIC;
+        }
+    }
+
+    /** Return the table in the file named NAME, an image or a frequency
+     *  file, of n-grams of ALPHABET. */
+    static NgramTable read(String name, Alphabet alphabet)
+        throws IOException {
+        if (!isImage(name)) {
+            return readCounts(name, alphabet);
+        }
+        NgramTable table = readImage(name);
+        if (!table._alphabet.chars().equals(alphabet.chars())) {
+            throw error("%s is for a different alphabet", name);
+        }
+        return table;
+    }
+
+    /** Return the table in the image file named NAME. */
+    static NgramTable readImage(String name) throws IOException {
+        MappedByteBuffer image;
+        try (FileChannel in = FileChannel.open(Paths.get(name),
+                                                StandardOpenOption.READ)) {
+            image = in.map(FileChannel.MapMode.READ_ONLY, 0, in.size());
+        }
+        try {
+            if (image.getInt() != MAGIC || image.getInt() != VERSION) {
+                throw error("%s is not an n-gram image of version %d",
+                            name, VERSION);
+            }
+            int length = image.getInt();
+            if (length < 0 || length > image.remaining() / Character.BYTES) {
+                throw new BufferUnderflowException();
+            }
+            char[] chars = new char[length];
+            image.asCharBuffer().get(chars);
+            image.position(image.position() + length * Character.BYTES);
+            Alphabet alphabet = new Alphabet(new String(chars));
+            int order = image.getInt();
+            if (order < 1) {
+                throw error("bad n-gram order in %s", name);
+            }
+            long entries = entries(alphabet.size(), order);
+            if (image.remaining() != entries * Float.BYTES) {
+                throw error("n-gram image %s has the wrong size", name);
+            }
+            float[] scores = new float[(int) entries];
+            image.asFloatBuffer().get(scores);
+            return new NgramTable(alphabet, order, scores);
+        } catch (BufferUnderflowException excp) {
+            throw error("n-gram image %s truncated", name);
+        }
+    }
+
+    /** Write me to OUT as an image. */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        String chars = _alphabet.chars();
+        data.writeInt(chars.length());
+        data.writeChars(chars);
+        data.writeInt(_order);
+        ByteBuffer block = ByteBuffer.allocate(BLOCK * Float.BYTES);
+        for (int i = 0; i < _scores.length; i += BLOCK) {
+            int m = Math.min(BLOCK, _scores.length - i);
+            block.clear();
+            block.asFloatBuffer().put(_scores, i, m);
+            data.write(block.array(), 0, m * Float.BYTES);
+        }
+        data.flush();
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int order() {
+        return _order;
+    }
+
+    @Override
+    public int span() {
+        return _order;
+    }
+
+    @Override
+    public double window(int[] text, int start) {
+        int index = 0;
+        for (int i = start; i < start + _order; i += 1) {
+            index = index * _size + text[i];
+        }
+        return _scores[index];
+    }
+
+    /** Return the total score of the n-grams lying wholly within
+     *  TEXT[FROM .. TO-1], a text of alphabet indices. */
+    double score(int[] text, int from, int to) {
+        if (to - from < _order) {
+            return 0;
+        }
+        int n = _size, top = _top;
+        int index = 0;
+        for (int i = from; i < from + _order - 1; i += 1) {
+            index = index * n + text[i];
+        }
+        double total = 0;
+        for (int i = from + _order - 1; i < to; i += 1) {
+            index = index * n + text[i];
+            total += _scores[index];
+            index -= text[i - _order + 1] * top;
+        }
+        return total;
+    }
+
+    /** Return the total score of the n-grams of TEXT, skipping blanks.
+     *  Every other character must be in my alphabet. */
+    double score(String text) {
+        int[] indices = new int[text.length()];
+        int m = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (ch != ' ') {
+                if (!_alphabet.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                indices[m] = _alphabet.toInt(ch);
+                m += 1;
+            }
+        }
+        return score(indices, 0, m);
+    }
+
+    /** First integer of an image.  Its leading zero byte cannot begin a
+     *  frequency file. */
+    static final int MAGIC = 0x00456e47;
+    /** Version of the image format written. */
+    static final int VERSION = 1;
+    /** Count at which n-grams missing from a frequency file score. */
+    static final double FLOOR_COUNT = 0.01;
+    /** Most entries a table may have. */
+    private static final long MAX_ENTRIES = Integer.MAX_VALUE - 8;
+    /** Number of scores written at once to an image. */
+    private static final int BLOCK = 1 << 12;
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Size of my alphabet. */
+    private final int _size;
+    /** Length of my n-grams. */
+    private final int _order;
+    /** Size to the power order - 1: the weight of an n-gram's first
+     *  character in its index. */
+    private final int _top;
+    /** Score of each n-gram, by index. */
+    private final float[] _scores;
+}
@@ -0,0 +1,144 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the NgramTable class.
+ *  @author Chris Zhan
+ */
+public class NgramTableTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return the table counted in COUNTS, of n-grams of ALPHA. */
+    private static NgramTable counts(String counts, Alphabet alpha)
+        throws IOException {
+        return NgramTable.readCounts(
+            new BufferedReader(new StringReader(counts)), alpha);
+    }
+
+    /** Return a table of the ORDER-grams of ALPHA with scores drawn by
+     *  RANDOM. */
+    private static NgramTable random(Alphabet alpha, int order,
+                                     Random random) {
+        int entries = 1;
+        for (int i = 0; i < order; i += 1) {
+            entries *= alpha.size();
+        }
+        float[] scores = new float[entries];
+        for (int i = 0; i < entries; i += 1) {
+            scores[i] = -10 * random.nextFloat();
+        }
+        return new NgramTable(alpha, order, scores);
+    }
+
+    @Test
+    public void testReadCounts() throws IOException {
+        NgramTable table = counts("TH 3\n\n  HE\t2\nIN 1\nTH 2\n", AZ);
+        assertEquals(2, table.order());
+        assertEquals(2, table.span());
+        int[] th = {AZ.toInt('T'), AZ.toInt('H')};
+        int[] zz = {AZ.toInt('Z'), AZ.toInt('Z')};
+        assertEquals(Math.log10(5.0 / 8), table.window(th, 0), 1e-6);
+        assertEquals(Math.log10(NgramTable.FLOOR_COUNT / 8),
+                     table.window(zz, 0), 1e-6);
+        assertEquals(Math.log10(5.0 / 8) + Math.log10(2.0 / 8)
+                     + Math.log10(NgramTable.FLOOR_COUNT / 8),
+                     table.score("TH EZ"), 1e-5);
+    }
+
+    @Test
+    public void testRollingMatchesWindows() {
+        Random random = new Random(21);
+        Alphabet alpha = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ.,-?");
+        for (int order = 1; order <= 4; order += 1) {
+            NgramTable table = random(alpha, order, random);
+            for (int trial = 0; trial < 20; trial += 1) {
+                int[] text = new int[random.nextInt(50)];
+                for (int i = 0; i < text.length; i += 1) {
+                    text[i] = random.nextInt(alpha.size());
+                }
+                int from = text.length == 0 ? 0
+                    : random.nextInt(text.length);
+                double total = 0;
+                for (int w = from; w + order <= text.length; w += 1) {
+                    total += table.window(text, w);
+                }
+                assertEquals(total, table.score(text, from, text.length),
+                             1e-4);
+            }
+        }
+    }
+
+    @Test
+    public void testImage() throws IOException {
+        NgramTable table = random(AZ, 3, new Random(4));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        table.write(out);
+        Path image = Files.createTempFile("enigma", ".ngi");
+        Path text = Files.createTempFile("enigma", ".txt");
+        try {
+            Files.write(image, out.toByteArray());
+            Files.write(text, "AB 1\nBA 3\n".getBytes());
+            assertTrue(NgramTable.isImage(image.toString()));
+            assertFalse(NgramTable.isImage(text.toString()));
+            NgramTable copy = NgramTable.read(image.toString(), AZ);
+            assertEquals(3, copy.order());
+            int[] gram = new int[3];
+            for (int i = 0; i < 26 * 26 * 26; i += 1) {
+                gram[0] = i / 676;
+                gram[1] = i / 26 % 26;
+                gram[2] = i % 26;
+                assertEquals(table.window(gram, 0), copy.window(gram, 0), 0);
+            }
+            assertEquals(2, NgramTable.read(text.toString(), AZ).order());
+        } finally {
+            Files.deleteIfExists(image);
+            Files.deleteIfExists(text);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testImageAlphabet() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        random(AZ, 2, new Random(5)).write(out);
+        Path image = Files.createTempFile("enigma", ".ngi");
+        try {
+            Files.write(image, out.toByteArray());
+            NgramTable.read(image.toString(), new Alphabet("ABC"));
+        } finally {
+            Files.deleteIfExists(image);
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMixedLengths() throws IOException {
+        counts("TH 3\nTHE 2\n", AZ);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testNotInAlphabet() throws IOException {
+        counts("TH 3\nT- 2\n", AZ);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadCount() throws IOException {
+        counts("TH three\n", AZ);
+    }
+}
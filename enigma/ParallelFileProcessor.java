@@ -0,0 +1,446 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+import static java.nio.file.StandardOpenOption.*;
+
+/** Processes an input file into an output file as Main.process would,
+ *  using several threads.  The input is mapped into memory and scanned
+ *  once to run its settings lines and to measure the output; it is then
+ *  cut into regions, each converted by its own copy of the machine,
+ *  positioned with seek(), straight into its part of a mapped output
+ *  file.  The output is identical to that of a single thread.
+ *  @author Chris Zhan
+ */
+class ParallelFileProcessor {
+
+    /** A processor applying MACHINE to the file INPUT, writing the
+     *  results to the file OUTPUT with THREADS threads. */
+    ParallelFileProcessor(Machine machine, Path input, Path output,
+                          int threads) {
+        this(machine, input, output, threads, 0);
+    }
+
+    /** A processor applying MACHINE to the file INPUT, writing the
+     *  results to the file OUTPUT with THREADS threads, in regions of
+     *  about REGION bytes of input, or a size chosen from the input's
+     *  size if REGION is 0. */
+    ParallelFileProcessor(Machine machine, Path input, Path output,
+                          int threads, long region) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _threads = threads;
+        _region = region;
+    }
+
+    /** Process my input into my output, returning true, unless the input
+     *  cannot be split: it holds characters other than ASCII or a
+     *  settings line that is invalid, my machine's alphabet holds
+     *  characters other than ASCII, or the output is the input.  In that
+     *  case, return false, having written nothing, so that a sequential
+     *  run may write the messages before a bad settings line and then
+     *  report it.  My machine itself is left as it was, so that it may
+     *  then process the input sequentially. */
+    boolean process() throws IOException {
+        if (!ascii(_machine.alphabet().chars() + NEWLINE + " *")
+            || Files.exists(_output) && Files.isSameFile(_input, _output)) {
+            return false;
+        }
+        try (FileChannel in = FileChannel.open(_input, READ)) {
+            List<Region> regions = plan(in);
+            if (regions == null) {
+                return false;
+            }
+            try (FileChannel out = FileChannel.open(_output, CREATE, READ,
+                                                    WRITE,
+                                                    TRUNCATE_EXISTING)) {
+                run(in, out, regions);
+            }
+        }
+        return true;
+    }
+
+    /** Return the regions into which to cut the input IN, or null if it
+     *  cannot be split. */
+    private List<Region> plan(FileChannel in) throws IOException {
+        long size = in.size();
+        long target = _region;
+        if (target <= 0) {
+            target = Math.max(MIN_REGION,
+                              Math.min(MAX_REGION, size / (4L * _threads)));
+        }
+        Scan scan = new Scan(in);
+        if (scan.peek() < 0) {
+            throw error("missing settings line");
+        }
+        String first = scan.readLine();
+        if (first == null) {
+            return null;
+        }
+        Machine machine = _machine.copy();
+        if (!setUp(machine, first)) {
+            return null;
+        }
+        ArrayList<Region> regions = new ArrayList<>();
+        long since = 0;
+        long out = 0;
+        long blanks = 0;
+        regions.add(new Region(scan.position(), machine.copy(), 0, -1, 0));
+        while (scan.peek() >= 0) {
+            int b = scan.peek();
+            if (b == '\n' || b == '\r') {
+                scan.skipLine();
+                blanks += 1;
+                continue;
+            }
+            out += (blanks + 1) / 2 * NEWLINE.length();
+            blanks = 0;
+            if (scan.position() - last(regions).start >= target) {
+                regions.add(new Region(scan.position(), machine.copy(),
+                                       since, -1, out));
+            }
+            if (b == '*') {
+                String line = scan.readLine();
+                if (line == null || !setUp(machine, line)) {
+                    return null;
+                }
+                since = 0;
+                continue;
+            }
+            long written = 0;
+            for (b = scan.peek(); b >= 0 && b != '\n' && b != '\r';
+                 b = scan.peek()) {
+                if (b >= ASCII) {
+                    return null;
+                }
+                if (written > 0
+                    && scan.position() - last(regions).start >= target) {
+                    regions.add(new Region(scan.position(), machine.copy(),
+                                           since, written,
+                                           out + written + written / GROUP));
+                }
+                scan.next();
+                if (b != ' ') {
+                    written += 1;
+                    since += 1;
+                }
+            }
+            if (b >= 0) {
+                scan.skipLine();
+            }
+            out += written + written / GROUP + NEWLINE.length();
+        }
+        out += (blanks / 2 + 1) * NEWLINE.length();
+        for (int i = 0; i < regions.size(); i += 1) {
+            Region r = regions.get(i);
+            if (i + 1 < regions.size()) {
+                r.end = regions.get(i + 1).start;
+                r.outEnd = regions.get(i + 1).outStart;
+            } else {
+                r.end = size;
+                r.outEnd = out;
+                r.last = true;
+            }
+            if (r.end - r.start > Integer.MAX_VALUE
+                || r.outEnd - r.outStart > Integer.MAX_VALUE) {
+                return null;
+            }
+        }
+        return regions;
+    }
+
+    /** Apply the settings line LINE to MACHINE, returning false if it is
+     *  invalid. */
+    private static boolean setUp(Machine machine, String line) {
+        try {
+            Main.setUp(machine, line);
+            return true;
+        } catch (EnigmaException excp) {
+            return false;
+        }
+    }
+
+    /** Convert REGIONS of IN into OUT, using my threads. */
+    private void run(FileChannel in, FileChannel out, List<Region> regions)
+        throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            ArrayList<Future<?>> results = new ArrayList<>();
+            for (Region r : regions) {
+                results.add(pool.submit(() -> {
+                    r.convert(in, out);
+                    return null;
+                }));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw error("%s", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the last element of REGIONS. */
+    private static Region last(List<Region> regions) {
+        return regions.get(regions.size() - 1);
+    }
+
+    /** Return true iff CHARS are all ASCII and are encoded as single bytes
+     *  with their own values by the default character set, as input is
+     *  decoded and output encoded by Main. */
+    private static boolean ascii(String chars) {
+        byte[] plain = chars.getBytes(StandardCharsets.ISO_8859_1);
+        for (byte b : plain) {
+            if (b < 0) {
+                return false;
+            }
+        }
+        return Arrays.equals(plain, chars.getBytes(Charset.defaultCharset()));
+    }
+
+    /** A part of the input, with the machine and output position with
+     *  which to start it. */
+    private static class Region {
+
+        /** A region starting at byte START of the input, to be converted
+         *  by MACHINE after seeking to POSITION, continuing a message line
+         *  of which WRITTEN characters have been converted (or at the
+         *  start of a line if WRITTEN is negative), and writing from byte
+         *  OUTSTART of the output. */
+        Region(long start, Machine machine, long position, long written,
+               long outStart) {
+            this.start = start;
+            this.machine = machine;
+            this.position = position;
+            this.written = written;
+            this.outStart = outStart;
+        }
+
+        /** Convert this region of IN into OUT. */
+        void convert(FileChannel in, FileChannel out) throws IOException {
+            if (position > 0) {
+                machine.seek(position);
+            }
+            ByteBuffer source = in.map(FileChannel.MapMode.READ_ONLY,
+                                       start, end - start);
+            MappedByteBuffer sink = out.map(FileChannel.MapMode.READ_WRITE,
+                                            outStart, outEnd - outStart);
+            Writer writer = new BufferWriter(sink);
+            new StreamProcessor(machine, new BufferReader(source), writer,
+                                CHUNK).processRegion(written, last);
+            if (sink.hasRemaining()) {
+                throw error("output of region at %d is short", start);
+            }
+        }
+
+        /** Input offset of the start of this region. */
+        private final long start;
+        /** Input offset of the end of this region. */
+        private long end;
+        /** Machine with which to convert this region. */
+        private final Machine machine;
+        /** Characters converted since the last setup at the start. */
+        private final long position;
+        /** Characters converted in the current line at the start, or -1
+         *  at the start of a line. */
+        private final long written;
+        /** Output offset of the start of this region. */
+        private final long outStart;
+        /** Output offset of the end of this region. */
+        private long outEnd;
+        /** True iff this region ends the input. */
+        private boolean last;
+    }
+
+    /** A sequential reader of the bytes of a file, mapping a window of it
+     *  at a time. */
+    private static class Scan {
+
+        /** A reader of the bytes of IN, from the start. */
+        Scan(FileChannel in) throws IOException {
+            _in = in;
+            _size = in.size();
+            map(0);
+        }
+
+        /** Return the offset of the next byte. */
+        long position() {
+            return _base + _window.position();
+        }
+
+        /** Return the next byte, or -1 at the end, without reading it. */
+        int peek() throws IOException {
+            if (!_window.hasRemaining()) {
+                if (position() >= _size) {
+                    return -1;
+                }
+                map(position());
+            }
+            return _window.get(_window.position()) & BYTE_MASK;
+        }
+
+        /** Read the next byte.  Assumes peek() >= 0. */
+        void next() {
+            _window.get();
+        }
+
+        /** Read the line terminator at the current position. */
+        void skipLine() throws IOException {
+            int b = peek();
+            next();
+            if (b == '\r' && peek() == '\n') {
+                next();
+            }
+        }
+
+        /** Read and return the rest of the current line, or null if it
+         *  holds characters other than ASCII or is too long for a
+         *  settings line. */
+        String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            for (int b = peek(); b >= 0 && b != '\n' && b != '\r';
+                 b = peek()) {
+                if (b >= ASCII) {
+                    return null;
+                }
+                if (line.length() >= MAX_SETTINGS) {
+                    return null;
+                }
+                line.append((char) b);
+                next();
+            }
+            if (peek() >= 0) {
+                skipLine();
+            }
+            return line.toString();
+        }
+
+        /** Map the window of my file starting at offset BASE. */
+        private void map(long base) throws IOException {
+            _base = base;
+            _window = _in.map(FileChannel.MapMode.READ_ONLY, base,
+                              Math.min(WINDOW, _size - base));
+        }
+
+        /** The file read. */
+        private final FileChannel _in;
+        /** The size of the file. */
+        private final long _size;
+        /** Offset of the start of the current window. */
+        private long _base;
+        /** The current window. */
+        private ByteBuffer _window;
+    }
+
+    /** A Reader of the bytes of a buffer as characters in ISO-8859-1. */
+    private static class BufferReader extends Reader {
+
+        /** A reader of the remaining bytes of BUFFER. */
+        BufferReader(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) {
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, _buffer.remaining());
+            for (int i = off; i < off + n; i += 1) {
+                cbuf[i] = (char) (_buffer.get() & BYTE_MASK);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** The bytes read. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** A Writer of characters in ISO-8859-1 into a buffer. */
+    private static class BufferWriter extends Writer {
+
+        /** A writer into the remaining space of BUFFER. */
+        BufferWriter(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            for (int i = off; i < off + len; i += 1) {
+                _buffer.put((byte) cbuf[i]);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** The bytes written. */
+        private final ByteBuffer _buffer;
+    }
+
+    /** The line terminator Main writes. */
+    private static final String NEWLINE = System.lineSeparator();
+    /** Number of characters in an output group. */
+    private static final int GROUP = 5;
+    /** Characters at or above this value are not ASCII. */
+    private static final int ASCII = 0x80;
+    /** Mask recovering an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+    /** Longest settings line accepted. */
+    private static final int MAX_SETTINGS = 1 << 16;
+    /** Smallest and largest region sizes chosen automatically. */
+    private static final long MIN_REGION = 1 << 20, MAX_REGION = 1 << 28;
+    /** Size of the window mapped while scanning the input. */
+    private static final long WINDOW = 1 << 28;
+    /** Characters buffered by each region's StreamProcessor. */
+    private static final int CHUNK = 1 << 14;
+
+    /** The machine to which the input is applied. */
+    private final Machine _machine;
+    /** The input file. */
+    private final Path _input;
+    /** The output file. */
+    private final Path _output;
+    /** Number of threads to use. */
+    private final int _threads;
+    /** Target size of each region, or 0 to choose one. */
+    private final long _region;
+}
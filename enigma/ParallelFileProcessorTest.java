@@ -0,0 +1,132 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ParallelFileProcessor class.
+ *  @author Chris Zhan
+ */
+public class ParallelFileProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return the output of processing INPUT with a single thread. */
+    static String sequential(String input) throws IOException {
+        StringWriter output = new StringWriter();
+        Machine mach = TestUtils.naval();
+        mach.setFused(true);
+        new StreamProcessor(mach, new StringReader(input), output).process();
+        return output.toString();
+    }
+
+    /** Return the output of processing INPUT with THREADS threads in
+     *  regions of REGION bytes, or null if it was not split. */
+    private static String parallel(String input, int threads, long region)
+        throws IOException {
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(in, input.getBytes(StandardCharsets.ISO_8859_1));
+            Machine mach = TestUtils.naval();
+            mach.setFused(true);
+            if (!new ParallelFileProcessor(mach, in, out, threads, region)
+                .process()) {
+                return null;
+            }
+            return new String(Files.readAllBytes(out),
+                              StandardCharsets.ISO_8859_1);
+        } finally {
+            Files.deleteIfExists(in);
+            Files.deleteIfExists(out);
+        }
+    }
+
+    /** Return a random input of about LINES lines, drawn by RANDOM. */
+    static String randomInput(Random random, int lines) {
+        String[] setups = {
+            "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BW)",
+            "* B Beta I II III AAAA (AQ) (EP)",
+            "* B Beta III IV I AXLE BCDE (YF) (ZH)",
+            "* B Beta II IV I QEVZ DDDD",
+        };
+        StringBuilder input = new StringBuilder(setups[0]).append('\n');
+        for (int i = 0; i < lines; i += 1) {
+            int kind = random.nextInt(10);
+            if (kind == 0) {
+                input.append(setups[random.nextInt(setups.length)]);
+            } else if (kind > 2) {
+                int len = random.nextInt(kind == 9 ? 400 : 40);
+                for (int k = 0; k < len; k += 1) {
+                    if (random.nextInt(7) == 0) {
+                        input.append(' ');
+                    } else {
+                        input.append((char) ('A' + random.nextInt(26)));
+                    }
+                }
+            }
+            input.append(random.nextInt(5) == 0 ? "\r\n" : "\n");
+        }
+        return input.toString();
+    }
+
+    @Test
+    public void testMatchesSequential() throws IOException {
+        Random random = new Random(0x0e);
+        for (int trial = 0; trial < 6; trial += 1) {
+            String input = randomInput(random, 60);
+            if (trial % 2 == 1) {
+                input = input.trim();
+            }
+            String expected = sequential(input);
+            for (long region : new long[] {29, 200, 0}) {
+                assertEquals("trial " + trial + " region " + region,
+                             expected, parallel(input, 4, region));
+            }
+        }
+    }
+
+    @Test
+    public void testBlankRuns() throws IOException {
+        String setup = "* B Beta I II III AAAA (AQ) (EP)\n";
+        for (int before = 0; before < 4; before += 1) {
+            for (int after = 0; after < 4; after += 1) {
+                String input = setup + "\n".repeat(before) + "HELLO WORLD"
+                    + "\n".repeat(after + 1) + "HELLO\n".repeat(3)
+                    + "\n".repeat(after);
+                assertEquals(sequential(input), parallel(input, 3, 2));
+            }
+        }
+    }
+
+    @Test
+    public void testNotSplit() throws IOException {
+        assertNull(parallel("* B Beta I II III AAAA\nH\u00c9LLO\n", 2, 1));
+    }
+
+    @Test
+    public void testBadSettingsNotSplit() throws IOException {
+        String input = "* B Beta I II III AAAA (AQ) (EP)\nHELLO WORLD\n"
+            + "* B Beta I II IX AAAA\nHELLO\n";
+        assertNull(parallel(input, 2, 1));
+        assertNull(parallel("* B Beta I II III AAAA\nHELLO\n* "
+                            + "A".repeat(1 << 16) + "\n", 2, 1));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingSettings() throws IOException {
+        parallel("", 2, 1);
+    }
+}
@@ -0,0 +1,356 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** Processes a stream of settings lines and messages as Main.process
+ *  would, converting its messages on several threads.  The input is cut
+ *  into batches, preferably at settings lines.  Each batch is converted
+ *  by its own copy of the machine, taken just before the batch's first
+ *  line, and the results are written in their original order.  Only the
+ *  settings lines are applied in sequence by the reading thread, since
+ *  the first Ringstellung changes the rotors' notches for every later
+ *  message.  A batch that grows past its limit without reaching a
+ *  settings line is cut before its next line instead, and a single
+ *  message line too long for a batch is converted by the reading thread
+ *  as it is read, so that memory use does not depend on the input.
+ *  @author Chris Zhan
+ */
+class ParallelMessageProcessor {
+
+    /** A processor applying MACHINE to the lines of INPUT with THREADS
+     *  threads, and writing the results to OUTPUT. */
+    ParallelMessageProcessor(Machine machine, Reader input, Writer output,
+                             int threads) {
+        this(machine, input, output, threads, BATCH);
+    }
+
+    /** A processor applying MACHINE to the lines of INPUT with THREADS
+     *  threads, and writing the results to OUTPUT, in batches of at least
+     *  BATCH characters where possible, and of about LIMIT * BATCH at
+     *  most. */
+    ParallelMessageProcessor(Machine machine, Reader input, Writer output,
+                             int threads, int batch) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _threads = threads;
+        _batch = batch;
+        _cap = (int) Math.min((long) batch * LIMIT, Integer.MAX_VALUE / 2);
+        _in = new char[StreamProcessor.CHUNK];
+    }
+
+    /** Process all of my input.  The first line must be a settings line.
+     *  Settings lines are applied to my machine as they are read.  Does
+     *  not flush my output. */
+    void process() throws IOException {
+        ExecutorService pool = Executors.newFixedThreadPool(_threads);
+        try {
+            if (!hasNextLine()) {
+                throw error("missing settings line");
+            }
+            String line = readSettings();
+            Machine start = _machine.copy();
+            boolean first = true;
+            StringBuilder batch = new StringBuilder();
+            setUp(line, pool, start, batch, first);
+            batch.append(line).append('\n');
+            Machine base = _machine;
+            long converted = 0;
+            long blanks = 0;
+            while (hasNextLine()) {
+                char c = _in[_pos];
+                boolean blank = StreamProcessor.isTerminator(c);
+                if (c == '*') {
+                    line = readSettings();
+                    if (batch.length() >= _batch) {
+                        submit(pool, start, batch.toString(), first, false);
+                        first = false;
+                        batch.setLength(0);
+                        start = _machine.copy();
+                    }
+                    setUp(line, pool, start, batch, first);
+                    batch.append(line).append('\n');
+                    base = _machine;
+                    converted = 0;
+                    blanks = 0;
+                    continue;
+                }
+                /* A run of blank lines may be split only after an even
+                 * number of them, which converts the same either way. */
+                if (batch.length() >= _cap && (!blank || blanks % 2 == 0)) {
+                    Machine next = base.copy();
+                    next.skip(converted);
+                    submit(pool, start, batch.toString(), first, false);
+                    first = false;
+                    batch.setLength(0);
+                    start = base = next;
+                    converted = 0;
+                }
+                if (blank) {
+                    skipTerminator();
+                    batch.append('\n');
+                    blanks += 1;
+                    continue;
+                }
+                blanks = 0;
+                int mark = batch.length();
+                if (readLine(batch, mark + _cap)) {
+                    converted += letters(batch, mark);
+                    batch.append('\n');
+                    continue;
+                }
+                String prefix = batch.substring(mark);
+                batch.setLength(mark);
+                if (mark > 0) {
+                    submit(pool, start, batch.toString(), first, false);
+                    batch.setLength(0);
+                }
+                first = false;
+                drain(0);
+                new StreamProcessor(start, new LineReader(prefix), _output,
+                                    StreamProcessor.CHUNK)
+                    .processRegion(0, false);
+                base = start;
+                converted = 0;
+            }
+            submit(pool, start, batch.toString(), first, true);
+            drain(0);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the number of characters of BATCH from index FROM on that
+     *  a machine converts, which are all but the blanks. */
+    private static long letters(StringBuilder batch, int from) {
+        long result = 0;
+        for (int i = from; i < batch.length(); i += 1) {
+            if (batch.charAt(i) != ' ') {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Apply the settings line LINE to my machine.  If it is invalid,
+     *  first finish the input before it: the BATCH read so far, to be
+     *  converted by START (which is FIRST iff BATCH begins my input),
+     *  with POOL, and the batches waiting to be written. */
+    private void setUp(String line, ExecutorService pool, Machine start,
+                       StringBuilder batch, boolean first)
+        throws IOException {
+        try {
+            Main.setUp(_machine, line);
+        } catch (RuntimeException excp) {
+            if (batch.length() > 0) {
+                submit(pool, start, batch.toString(), first, false);
+            }
+            drain(0);
+            throw excp;
+        }
+    }
+
+    /** Convert BATCH with MACHINE on POOL, in order after the batches
+     *  already submitted.  BATCH begins my input iff FIRST, and ends it
+     *  iff LAST. */
+    private void submit(ExecutorService pool, Machine machine, String batch,
+                        boolean first, boolean last) throws IOException {
+        drain(WINDOW * _threads - 1);
+        _pending.add(pool.submit(() -> {
+            StringWriter result = new StringWriter();
+            StreamProcessor processor =
+                new StreamProcessor(machine, new StringReader(batch), result,
+                                    Math.min(batch.length() + 1,
+                                             StreamProcessor.CHUNK));
+            if (first) {
+                processor.processStart(last);
+            } else {
+                processor.processRegion(-1, last);
+            }
+            return result.toString();
+        }));
+    }
+
+    /** Write the results of the oldest batches, waiting for them as
+     *  needed, until no more than LIMIT remain. */
+    private void drain(int limit) throws IOException {
+        while (_pending.size() > limit) {
+            try {
+                _output.write(_pending.removeFirst().get());
+            } catch (InterruptedException excp) {
+                Thread.currentThread().interrupt();
+                throw error("interrupted");
+            } catch (ExecutionException excp) {
+                Throwable cause = excp.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw error("%s", cause);
+            }
+        }
+    }
+
+    /** Return true iff any input remains, refilling my buffer if
+     *  needed. */
+    private boolean hasNextLine() throws IOException {
+        return _pos < _limit || fill();
+    }
+
+    /** Read and discard the line terminator at the current position.
+     *  Lines end as for Scanner.nextLine(). */
+    private void skipTerminator() throws IOException {
+        char c = _in[_pos];
+        _pos += 1;
+        if (c == '\r' && hasNextLine() && _in[_pos] == '\n') {
+            _pos += 1;
+        }
+    }
+
+    /** Append the rest of the current line of my input to LINE, without
+     *  its terminator, and consume the terminator.  Return true iff that
+     *  is done before LINE grows past LIMIT characters; otherwise stop
+     *  there, in the middle of the line. */
+    private boolean readLine(StringBuilder line, int limit)
+        throws IOException {
+        while (hasNextLine()) {
+            int start = _pos;
+            int end = start + Math.min(_limit - start,
+                                       limit - line.length() + 1);
+            while (_pos < end && !StreamProcessor.isTerminator(_in[_pos])) {
+                _pos += 1;
+            }
+            line.append(_in, start, _pos - start);
+            if (line.length() > limit) {
+                return false;
+            }
+            if (_pos < _limit) {
+                skipTerminator();
+                return true;
+            }
+        }
+        return true;
+    }
+
+    /** Return the settings line beginning at the current position of my
+     *  input, consuming its terminator. */
+    private String readSettings() throws IOException {
+        StringBuilder line = new StringBuilder();
+        if (!readLine(line, StreamProcessor.MAX_SETTINGS)) {
+            throw error("settings line too long");
+        }
+        return line.toString();
+    }
+
+    /** Read more input into my buffer, which must be exhausted.  Return
+     *  false iff there is no more input. */
+    private boolean fill() throws IOException {
+        _pos = 0;
+        _limit = 0;
+        while (_limit == 0) {
+            int n = _input.read(_in);
+            if (n < 0) {
+                return false;
+            }
+            _limit = n;
+        }
+        return true;
+    }
+
+    /** Default number of characters gathered into a batch. */
+    static final int BATCH = 1 << 16;
+    /** Ratio of the largest batch, or message line gathered into one, to
+     *  the smallest batch cut off at a settings line. */
+    static final int LIMIT = 4;
+    /** Number of batches per thread that may await writing. */
+    private static final int WINDOW = 4;
+
+    /** The rest of the current line of my input, after the part of it
+     *  already read, and a terminator, as a stream.  The terminator is
+     *  supplied even where my input ends without one, since converting
+     *  the line as the last of a region would otherwise write none. */
+    private class LineReader extends Reader {
+
+        /** A stream of PREFIX followed by the rest of the current line
+         *  and a terminator. */
+        LineReader(String prefix) {
+            _prefix = prefix;
+        }
+
+        @Override
+        public int read(char[] buf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            } else if (_done) {
+                return -1;
+            } else if (_taken < _prefix.length()) {
+                int n = Math.min(len, _prefix.length() - _taken);
+                _prefix.getChars(_taken, _taken + n, buf, off);
+                _taken += n;
+                return n;
+            } else if (!hasNextLine()) {
+                _done = true;
+                buf[off] = '\n';
+                return 1;
+            }
+            int start = _pos;
+            int end = start + Math.min(_limit - start, len);
+            while (_pos < end && !StreamProcessor.isTerminator(_in[_pos])) {
+                _pos += 1;
+            }
+            if (_pos > start) {
+                System.arraycopy(_in, start, buf, off, _pos - start);
+                return _pos - start;
+            }
+            skipTerminator();
+            _done = true;
+            buf[off] = '\n';
+            return 1;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        /** Characters of the line read before this stream was made. */
+        private final String _prefix;
+        /** Number of characters of _prefix already returned. */
+        private int _taken;
+        /** True once the line's terminator has been returned. */
+        private boolean _done;
+    }
+
+    /** The machine to which settings lines are applied. */
+    private final Machine _machine;
+    /** Source of settings lines and messages. */
+    private final Reader _input;
+    /** Destination for converted messages. */
+    private final Writer _output;
+    /** Number of threads to use. */
+    private final int _threads;
+    /** Smallest batch cut off at a settings line. */
+    private final int _batch;
+    /** Size past which a batch is cut before its next line, and longest
+     *  message line gathered into a batch. */
+    private final int _cap;
+    /** Batches submitted but not yet written, oldest first. */
+    private final ArrayDeque<Future<String>> _pending = new ArrayDeque<>();
+    /** Buffered input. */
+    private final char[] _in;
+    /** Index of the next unread character in _in. */
+    private int _pos;
+    /** Number of valid characters in _in. */
+    private int _limit;
+}
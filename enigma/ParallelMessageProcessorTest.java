@@ -0,0 +1,123 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the ParallelMessageProcessor class.
+ *  @author Chris Zhan
+ */
+public class ParallelMessageProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return the output of processing INPUT with THREADS threads in
+     *  batches of BATCH characters, written to OUTPUT. */
+    private static String parallel(String input, int threads, int batch,
+                                   StringWriter output) throws IOException {
+        Machine mach = TestUtils.naval();
+        mach.setFused(true);
+        new ParallelMessageProcessor(mach, new StringReader(input), output,
+                                     threads, batch).process();
+        return output.toString();
+    }
+
+    @Test
+    public void testMatchesSequential() throws IOException {
+        Random random = new Random(0x12);
+        for (int trial = 0; trial < 8; trial += 1) {
+            String input = ParallelFileProcessorTest.randomInput(random, 80);
+            if (trial % 2 == 1) {
+                input = input.trim();
+            }
+            String expected = ParallelFileProcessorTest.sequential(input);
+            for (int batch : new int[] {1, 50, 400,
+                                        ParallelMessageProcessor.BATCH}) {
+                assertEquals("trial " + trial + " batch " + batch, expected,
+                             parallel(input, 3, batch, new StringWriter()));
+            }
+        }
+    }
+
+    @Test
+    public void testWithoutSettingsLines() throws IOException {
+        Random random = new Random(0x34);
+        for (int trial = 0; trial < 6; trial += 1) {
+            StringBuilder input =
+                new StringBuilder("* B Beta III IV I AXLE (HQ) (EX)\n");
+            for (int i = 0; i < 200; i += 1) {
+                int len = random.nextInt(4) == 0 ? 0 : random.nextInt(30);
+                for (int k = 0; k < len; k += 1) {
+                    input.append(random.nextInt(6) == 0 ? ' '
+                                 : (char) ('A' + random.nextInt(26)));
+                }
+                input.append(trial % 3 == 1 ? "\r\n" : "\n");
+            }
+            if (trial % 2 == 1) {
+                input.setLength(input.length() - 1);
+            }
+            String expected =
+                ParallelFileProcessorTest.sequential(input.toString());
+            for (int batch : new int[] {1, 7, 20, 100}) {
+                assertEquals("trial " + trial + " batch " + batch, expected,
+                             parallel(input.toString(), 2, batch,
+                                      new StringWriter()));
+            }
+        }
+    }
+
+    @Test
+    public void testLongMessageLines() throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 3 * StreamProcessor.CHUNK + 11; i += 1) {
+            line.append(i % 13 == 0 ? ' ' : (char) ('A' + (i * 7) % 26));
+        }
+        String settings = "* B Beta I II III AAAA (AQ) (EP)\n";
+        String[] inputs = {
+            settings + line,
+            settings + line + "\r\n",
+            settings + "HELLO\n\n\n" + line + "\n\nWORLD\n" + line
+            + "\n" + settings + line + "\n\n",
+        };
+        for (String input : inputs) {
+            String expected = ParallelFileProcessorTest.sequential(input);
+            for (int batch : new int[] {1, 100,
+                                        ParallelMessageProcessor.BATCH}) {
+                assertEquals("batch " + batch, expected,
+                             parallel(input, 3, batch, new StringWriter()));
+            }
+        }
+    }
+
+    @Test
+    public void testBadSettingsWritesEarlierMessages() throws IOException {
+        String input = "* B Beta I II III AAAA (AQ) (EP)\nHELLO WORLD\n\n"
+            + "* B Beta I II III AAAA\nHELLO\n* B Beta I II IX AAAA\nHELLO\n";
+        String expected = ParallelFileProcessorTest.sequential(
+                input.substring(0, input.indexOf("* B Beta I II IX")));
+        for (int batch : new int[] {1, ParallelMessageProcessor.BATCH}) {
+            StringWriter output = new StringWriter();
+            try {
+                parallel(input, 2, batch, output);
+                fail("bad settings line accepted");
+            } catch (EnigmaException excp) {
+                assertEquals(expected,
+                             output.toString() + System.lineSeparator());
+            }
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingSettings() throws IOException {
+        parallel("", 2, 1, new StringWriter());
+    }
+}
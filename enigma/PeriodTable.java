@@ -0,0 +1,138 @@
+package enigma;
+
+/** The complete substitution performed by a machine in every state of
+ *  its stepping cycle.  In any one state, the plugboard, the rotors and
+ *  the reflector together amount to a single permutation of the
+ *  alphabet; this table records one such permutation per state, so that
+ *  converting a character costs two array loads.
+ *  @author Chris Zhan
+ */
+final class PeriodTable {
+
+    /** Return the table for the current setup of M, or null if it would
+     *  occupy more than MAXBYTES bytes.  M is left in the state it
+     *  started in. */
+    static PeriodTable build(Machine m, long maxBytes) {
+        int size = m.alphabet().size();
+        long rowBytes = size * (size <= BYTE_LIMIT ? 1L : 2L) + CODE_BYTES;
+        int maxStates = (int) Math.min(maxBytes / rowBytes,
+                                       Integer.MAX_VALUE / size);
+        SteppingCycle cycle = SteppingCycle.walk(m, maxStates);
+        if (cycle == null) {
+            return null;
+        }
+        return new PeriodTable(m, cycle);
+    }
+
+    /** The table for M, whose states are enumerated by CYCLE. */
+    private PeriodTable(Machine m, SteppingCycle cycle) {
+        _cycle = cycle;
+        _size = m.alphabet().size();
+        _rotors = new Rotor[m.numRotors()];
+        _settings = new int[m.numRotors()];
+        _notches = new String[m.numRotors()];
+        for (int k = 0; k < m.numRotors(); k += 1) {
+            _rotors[k] = m.getRotor(k);
+            _settings[k] = _rotors[k].setting();
+            _notches[k] = _rotors[k].notches();
+        }
+        _plugboard = m.plugboard();
+        int cells = cycle.length() * _size;
+        if (_size <= BYTE_LIMIT) {
+            _bytes = new byte[cells];
+        } else {
+            _shorts = new short[cells];
+        }
+        for (int i = 0; i < cycle.length(); i += 1) {
+            cycle.restore(m, i);
+            for (int c = 0; c < _size; c += 1) {
+                int e = m.transform(c);
+                if (_bytes != null) {
+                    _bytes[i * _size + c] = (byte) e;
+                } else {
+                    _shorts[i * _size + c] = (short) e;
+                }
+            }
+        }
+        cycle.restore(m, 0);
+    }
+
+    /** Return true iff this table describes M's current rotors, rotor
+     *  notches, settings of non-rotating rotors, and plugboard. */
+    boolean matches(Machine m) {
+        if (m.numRotors() != _rotors.length
+            || !m.plugboard().sameMapping(_plugboard)) {
+            return false;
+        }
+        for (int k = 0; k < _rotors.length; k += 1) {
+            Rotor r = m.getRotor(k);
+            if (r != _rotors[k] || !r.notches().equals(_notches[k])
+                || (!r.rotates() && r.setting() != _settings[k])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Return the index of M's current state, or -1 if it is not part of
+     *  this table.  Assumes matches(M). */
+    int indexOf(Machine m) {
+        return _cycle.indexOf(m);
+    }
+
+    /** Return the index of the state following state #I. */
+    int next(int i) {
+        return _cycle.next(i);
+    }
+
+    /** Return the number of states in this table. */
+    int length() {
+        return _cycle.length();
+    }
+
+    /** Return the conversion of C (an index in the range 0..alphabet
+     *  size - 1) in state #I.  C may also be the alphabet size, the index
+     *  given to characters not in the alphabet, which is taken as 0, as
+     *  the plugboard takes it. */
+    int convert(int i, int c) {
+        if (c == _size) {
+            c = 0;
+        }
+        if (_bytes != null) {
+            return _bytes[i * _size + c] & BYTE_MASK;
+        }
+        return _shorts[i * _size + c] & SHORT_MASK;
+    }
+
+    /** Set the rotors of M to their settings in state #I. */
+    void restore(Machine m, int i) {
+        _cycle.restore(m, i);
+    }
+
+    /** Largest alphabet whose indices are stored in bytes. */
+    private static final int BYTE_LIMIT = 256;
+    /** Space taken by the state code recorded with each row. */
+    private static final int CODE_BYTES = 4;
+    /** Mask recovering an unsigned byte. */
+    private static final int BYTE_MASK = 0xff;
+    /** Mask recovering an unsigned short. */
+    private static final int SHORT_MASK = 0xffff;
+
+    /** The states enumerated by this table. */
+    private final SteppingCycle _cycle;
+    /** The size of the alphabet. */
+    private final int _size;
+    /** The rotors in each slot when this table was built. */
+    private final Rotor[] _rotors;
+    /** The setting of each slot's rotor when this table was built. */
+    private final int[] _settings;
+    /** The notches of each slot's rotor when this table was built. */
+    private final String[] _notches;
+    /** The plugboard when this table was built. */
+    private final Permutation _plugboard;
+    /** The substitutions, one row of _size entries per state, for
+     *  alphabets of at most BYTE_LIMIT characters. */
+    private byte[] _bytes;
+    /** The substitutions for larger alphabets. */
+    private short[] _shorts;
+}
@@ -1,6 +1,7 @@
 package enigma;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -31,6 +32,43 @@ class Permutation {
                 }
             }
         }
+        _forward = new int[size()];
+        _inverse = new int[size()];
+        for (int i = 0; i < size(); i += 1) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
+        for (int c = 0; c < _cycles.size(); c += 1) {
+            String cycle = _cycles.get(c);
+            for (int r = 0; r < cycle.length(); r += 1) {
+                int from = alphabet().toInt(cycle.charAt(r));
+                int to = alphabet().toInt(cycle.charAt((r + 1)
+                        % cycle.length()));
+                _forward[from] = to;
+                _inverse[to] = from;
+            }
+        }
+    }
+
+    /** A permutation of ALPHABET taking each index I to FORWARD[I], whose
+     *  inverse takes I to INVERSE[I], as for a permutation read from a
+     *  configuration image.  The tables become part of this
+     *  permutation. */
+    Permutation(Alphabet alphabet, int[] forward, int[] inverse) {
+        _alphabet = alphabet;
+        _cycles = new ArrayList<>();
+        if (forward.length != size() || inverse.length != size()) {
+            throw new EnigmaException("permutation table has wrong size");
+        }
+        for (int i = 0; i < size(); i += 1) {
+            if (forward[i] < 0 || forward[i] >= size()
+                || inverse[forward[i]] != i) {
+                throw new EnigmaException("permutation tables are not "
+                        + "inverses");
+            }
+        }
+        _forward = forward;
+        _inverse = inverse;
     }
 
     /** Return the value of P modulo the size of this permutation. */
@@ -50,48 +88,19 @@ class Permutation {
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char oneChar = alphabet().toChar(wrap(p));
-        for (int c = 0; c < _cycles.size(); c += 1) {
-            for (int r = 0; r < _cycles.get(c).length(); r += 1) {
-                if (oneChar == _cycles.get(c).charAt(r)) {
-                    if (r == _cycles.get(c).length() - 1) {
-                        char permuteChar = _cycles.get(c).charAt(0);
-                        int permuteInt = alphabet().toInt(permuteChar);
-                        return permuteInt;
-                    } else {
-                        char permuteChar = _cycles.get(c).charAt(r + 1);
-                        int permuteInt = alphabet().toInt(permuteChar);
-                        return permuteInt;
-                    }
-                }
-            }
+        return _forward[wrap(p)];
+    }
 
-        }
-        return wrap(p);
+    /** Return the table of my mapping: entry I is permute(I), for
+     *  0 <= I < size().  Not to be modified. */
+    int[] table() {
+        return _forward;
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char oneChar = _alphabet.toChar(wrap(c));
-        for (int d = 0; d < _cycles.size(); d += 1) {
-            for (int r = 0; r < _cycles.get(d).length(); r += 1) {
-                if (oneChar == _cycles.get(d).charAt(r)) {
-                    if (oneChar == _cycles.get(d).charAt(0)) {
-                        char permuteChar = _cycles.get(d)
-                                .charAt(_cycles.get(d).length() - 1);
-                        int permuteInt = _alphabet.toInt(permuteChar);
-                        return permuteInt;
-                    } else {
-                        char permuteChar = _cycles.get(d).charAt(r - 1);
-                        int permuteInt = _alphabet.toInt(permuteChar);
-                        return permuteInt;
-                    }
-                }
-            }
-
-        }
-        return wrap(c);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
@@ -116,6 +125,12 @@ class Permutation {
         return _alphabet;
     }
 
+    /** Return true iff OTHER maps every index the same way as this
+     *  permutation does. */
+    boolean sameMapping(Permutation other) {
+        return other == this || Arrays.equals(_forward, other._forward);
+    }
+
     /** Return true iff this permutation is a derangement (i.e., a
      *  permutation for which no value maps to itself). */
     boolean derangement() {
@@ -128,4 +143,11 @@ class Permutation {
     /** The cycles that represent this permutation. */
     private ArrayList<String> _cycles;
 
+    /** The image of each alphabet index under this permutation. */
+    private int[] _forward;
+
+    /** The image of each alphabet index under the inverse of this
+     *  permutation. */
+    private int[] _inverse;
+
 }
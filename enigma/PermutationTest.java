@@ -141,6 +141,24 @@ public class PermutationTest {
         assertEquals(4, p.size());
     }
 
+    @Test
+    public void testNavalRotorsMatchMaps() {
+        Alphabet alpha = getNewAlphabet();
+        for (String name : NAVALA_MAP.keySet()) {
+            Permutation perm = getNewPermutation(NAVALA.get(name), alpha);
+            checkPerm(name, UPPER_STRING, NAVALA_MAP.get(name), perm, alpha);
+        }
+    }
+
+    @Test
+    public void testWrapsOutOfRangeIndices() {
+        Permutation p = getNewPermutation("(BACD)", getNewAlphabet("ABCDE"));
+        assertEquals(2, p.permute(5));
+        assertEquals(4, p.permute(-1));
+        assertEquals(1, p.invert(-5));
+        assertEquals(3, p.invert(11));
+    }
+
     @Test(expected = EnigmaException.class)
     public void testIllegalCharInCycle() {
         Alphabet a = getNewAlphabet("ABCD");
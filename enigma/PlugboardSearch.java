@@ -0,0 +1,583 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only search for the plugboard of a machine whose rotors
+ *  and start position are known, by hill climbing and, optionally,
+ *  simulated annealing over plugboard pairs.
+ *
+ *  <p>With the rotors fixed, the machine at position t is P S_t P, where
+ *  P is the plugboard and S_t the rotors' substitution there, so the
+ *  substitutions S_t are computed once, for every position of the
+ *  ciphertext, and a candidate plugboard decrypts character t as
+ *  P(S_t(P(c_t))).  A move connects or disconnects one pair of letters,
+ *  which changes P only at those letters and their old partners, and so
+ *  changes only the characters whose ciphertext letter, or whose value
+ *  between the two passes through the plugboard, is one of them.  Those
+ *  characters are found from lists kept by letter, and only the Fitness
+ *  windows holding them are scored again.
+ *
+ *  <p>A search runs many independent restarts on a pool of threads.
+ *  Each restart draws its random choices from its own generator, seeded
+ *  from the search's seed and the restart's number, and the best result
+ *  is chosen by score and then by restart number, so a search gives the
+ *  same result for the same seed however many threads it uses.
+ *  @author Chris Zhan
+ */
+final class PlugboardSearch {
+
+    /** A search for the plugboard under which CIPHERTEXT, enciphered by
+     *  a machine whose rotors and settings are those of STATE now, scores
+     *  best by FITNESS.  STATE's plugboard is ignored and STATE itself is
+     *  not changed.  Blanks in CIPHERTEXT are skipped. */
+    PlugboardSearch(MachineState state, String ciphertext, Fitness fitness) {
+        Alphabet alpha = state.alphabet();
+        _n = alpha.size();
+        _fitness = fitness;
+        _alphabet = alpha;
+        int[] cipher = new int[ciphertext.length()];
+        int m = 0;
+        for (int i = 0; i < ciphertext.length(); i += 1) {
+            char ch = ciphertext.charAt(i);
+            if (ch != ' ') {
+                if (!alpha.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                cipher[m] = alpha.toInt(ch);
+                m += 1;
+            }
+        }
+        if (m < fitness.span()) {
+            throw error("ciphertext too short to score");
+        }
+        _cipher = Arrays.copyOf(cipher, m);
+        _substitution = new int[m * _n];
+        MachineState rotors = state.copy();
+        rotors.setPlugboard(state.spec().identity());
+        for (int t = 0; t < m; t += 1) {
+            rotors.advanceRotors();
+            for (int u = 0; u < _n; u += 1) {
+                _substitution[t * _n + u] = rotors.transform(u);
+            }
+        }
+        int[] count = new int[_n];
+        for (int c : _cipher) {
+            count[c] += 1;
+        }
+        _byCipher = new int[_n][];
+        for (int x = 0; x < _n; x += 1) {
+            _byCipher[x] = new int[count[x]];
+            count[x] = 0;
+        }
+        for (int t = 0; t < m; t += 1) {
+            int c = _cipher[t];
+            _byCipher[c][count[c]] = t;
+            count[c] += 1;
+        }
+        _maxPairs = _n / 2;
+    }
+
+    /** Limit plugboards to at most PAIRS pairs.  By default, any number
+     *  the alphabet allows. */
+    void setMaxPairs(int pairs) {
+        if (pairs < 0 || pairs > _n / 2) {
+            throw error("bad number of plugboard pairs: %d", pairs);
+        }
+        _maxPairs = pairs;
+    }
+
+    /** Anneal, starting at TEMPERATURE and multiplying the temperature
+     *  by COOLING after each pass over the moves, until it falls below
+     *  MIN_TEMPERATURE, before climbing.  A TEMPERATURE of 0, the
+     *  default, only climbs. */
+    void setAnnealing(double temperature, double cooling) {
+        if (temperature < 0 || cooling <= 0 || cooling >= 1) {
+            throw error("bad annealing schedule");
+        }
+        _temperature = temperature;
+        _cooling = cooling;
+    }
+
+    /** Return the number of characters of my ciphertext. */
+    int length() {
+        return _cipher.length;
+    }
+
+    /** Return the seed of the generator for restart number RESTART of a
+     *  search seeded with SEED. */
+    static long seed(long seed, int restart) {
+        return seed + GOLDEN * (restart + 1);
+    }
+
+    /** Run RESTARTS restarts of the search seeded with SEED on THREADS
+     *  threads and return the best result. */
+    Result search(int restarts, long seed, int threads) {
+        if (restarts <= 0) {
+            throw error("no restarts");
+        }
+        ExecutorService pool =
+            Executors.newFixedThreadPool(Math.max(1, threads));
+        try {
+            ArrayList<Future<Result>> results = new ArrayList<>();
+            for (int i = 0; i < restarts; i += 1) {
+                int restart = i;
+                results.add(pool.submit(() -> climb(seed, restart)));
+            }
+            return best(results);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+            throw error("interrupted");
+        } catch (ExecutionException excp) {
+            Throwable cause = excp.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw error("%s", cause);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /** Return the best of RESULTS, in restart order: the one with the
+     *  highest score, and of those the first. */
+    private static Result best(List<Future<Result>> results)
+        throws InterruptedException, ExecutionException {
+        Result best = null;
+        for (Future<Result> future : results) {
+            Result result = future.get();
+            if (best == null || result.score() > best.score()) {
+                best = result;
+            }
+        }
+        return best;
+    }
+
+    /** Run restart number RESTART of the search seeded with SEED, and
+     *  return its result.  Depends on nothing else, so restarts may run
+     *  in any order or at once. */
+    Result climb(long seed, int restart) {
+        return new Climber(new Random(seed(seed, restart)))
+            .run(restart);
+    }
+
+    /** Return the score of PLAIN, computed afresh. */
+    private double score(int[] plain) {
+        double total = 0;
+        for (int w = 0; w + _fitness.span() <= plain.length; w += 1) {
+            total += _fitness.window(plain, w);
+        }
+        return total;
+    }
+
+    /** Decrypt my ciphertext under PLUG into PLAIN, recording the value
+     *  of each character between its passes through the plugboard in
+     *  INNER. */
+    private void decrypt(int[] plug, int[] plain, int[] inner) {
+        for (int t = 0; t < _cipher.length; t += 1) {
+            int y = _substitution[t * _n + plug[_cipher[t]]];
+            inner[t] = y;
+            plain[t] = plug[y];
+        }
+    }
+
+    /** The result of a restart. */
+    final class Result {
+
+        /** The result of restart number RESTART: the plugboard PLUG, as
+         *  a table, whose decryption scores SCORE. */
+        Result(int restart, int[] plug, double score) {
+            _restart = restart;
+            _plug = plug;
+            _score = score;
+        }
+
+        /** Return the number of the restart that found me. */
+        int restart() {
+            return _restart;
+        }
+
+        /** Return the score of my plugboard's decryption. */
+        double score() {
+            return _score;
+        }
+
+        /** Return my plugboard's pairs as cycles, in alphabet order. */
+        String plugboard() {
+            StringBuilder cycles = new StringBuilder();
+            for (int x = 0; x < _plug.length; x += 1) {
+                if (_plug[x] > x) {
+                    if (cycles.length() > 0) {
+                        cycles.append(' ');
+                    }
+                    cycles.append('(').append(_alphabet.toChar(x))
+                        .append(_alphabet.toChar(_plug[x])).append(')');
+                }
+            }
+            return cycles.toString();
+        }
+
+        /** Return my plugboard. */
+        Permutation permutation() {
+            return new Permutation(plugboard(), _alphabet);
+        }
+
+        /** Return the decryption of the ciphertext under my plugboard,
+         *  less blanks. */
+        String plaintext() {
+            int[] plain = new int[_cipher.length];
+            decrypt(_plug, plain, new int[_cipher.length]);
+            char[] result = new char[plain.length];
+            for (int t = 0; t < plain.length; t += 1) {
+                result[t] = _alphabet.toChar(plain[t]);
+            }
+            return new String(result);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s (%.3f, restart %d)", plugboard(),
+                                 _score, _restart);
+        }
+
+        /** Number of the restart that found me. */
+        private final int _restart;
+        /** Table of my plugboard. */
+        private final int[] _plug;
+        /** Score of my plugboard's decryption. */
+        private final double _score;
+    }
+
+    /** The changing state of one restart: a plugboard, the decryption
+     *  under it, and lists of the characters by their value between
+     *  passes through the plugboard. */
+    private final class Climber {
+
+        /** A restart drawing its random choices from RANDOM. */
+        Climber(Random random) {
+            int m = _cipher.length;
+            _random = random;
+            _plug = new int[_n];
+            _plain = new int[m];
+            _inner = new int[m];
+            _head = new int[_n];
+            _next = new int[m];
+            _prev = new int[m];
+            _mark = new int[m];
+            _windowMark = new int[m];
+            _touched = new int[m];
+            _windows = new int[m];
+            _saved = new int[m];
+            _moved = new int[m];
+            _moves = new int[_n * (_n - 1) / 2];
+            for (int a = 0, i = 0; a < _n; a += 1) {
+                for (int b = a + 1; b < _n; b += 1, i += 1) {
+                    _moves[i] = a * _n + b;
+                }
+            }
+        }
+
+        /** Run restart number RESTART from a random plugboard and return
+         *  its result. */
+        Result run(int restart) {
+            start();
+            double score = score(_plain);
+            int[] best = _plug.clone();
+            double bestScore = score;
+            double temperature = _temperature;
+            while (true) {
+                boolean improved = false;
+                shuffle(_moves);
+                for (int move : _moves) {
+                    int a = move / _n, b = move % _n;
+                    if (!toggle(a, b)) {
+                        continue;
+                    }
+                    double delta = delta();
+                    if (delta > EPSILON
+                        || (temperature > 0 && delta < 0
+                            && _random.nextDouble()
+                               < Math.exp(delta / temperature))) {
+                        accept();
+                        score += delta;
+                        improved |= delta > EPSILON;
+                        if (score > bestScore + EPSILON) {
+                            bestScore = score;
+                            System.arraycopy(_plug, 0, best, 0, _n);
+                        }
+                    } else {
+                        reject();
+                    }
+                }
+                if (temperature > 0) {
+                    temperature *= _cooling;
+                    if (temperature < MIN_TEMPERATURE) {
+                        temperature = 0;
+                        System.arraycopy(best, 0, _plug, 0, _n);
+                        decrypt(_plug, _plain, _inner);
+                        fillLists();
+                        score = bestScore;
+                    }
+                } else if (!improved) {
+                    break;
+                }
+            }
+            decrypt(best, _plain, _inner);
+            return new Result(restart, best, score(_plain));
+        }
+
+        /** Set my plugboard to a random one with a random number of
+         *  pairs, within the limit, and decrypt under it. */
+        private void start() {
+            int[] letters = new int[_n];
+            for (int x = 0; x < _n; x += 1) {
+                _plug[x] = x;
+                letters[x] = x;
+            }
+            shuffle(letters);
+            int pairs = _random.nextInt(_maxPairs + 1);
+            for (int i = 0; i < pairs; i += 1) {
+                int a = letters[2 * i], b = letters[2 * i + 1];
+                _plug[a] = b;
+                _plug[b] = a;
+            }
+            _pairs = pairs;
+            decrypt(_plug, _plain, _inner);
+            fillLists();
+        }
+
+        /** Put each character in the list for its value between passes
+         *  through the plugboard. */
+        private void fillLists() {
+            Arrays.fill(_head, -1);
+            for (int t = _cipher.length - 1; t >= 0; t -= 1) {
+                link(t, _inner[t]);
+            }
+        }
+
+        /** Add character T to the front of the list for value Y. */
+        private void link(int t, int y) {
+            _prev[t] = -1;
+            _next[t] = _head[y];
+            if (_head[y] >= 0) {
+                _prev[_head[y]] = t;
+            }
+            _head[y] = t;
+        }
+
+        /** Remove character T from the list for value Y. */
+        private void unlink(int t, int y) {
+            if (_prev[t] >= 0) {
+                _next[_prev[t]] = _next[t];
+            } else {
+                _head[y] = _next[t];
+            }
+            if (_next[t] >= 0) {
+                _prev[_next[t]] = _prev[t];
+            }
+        }
+
+        /** Shuffle VALUES with my generator. */
+        private void shuffle(int[] values) {
+            for (int i = values.length - 1; i > 0; i -= 1) {
+                int j = _random.nextInt(i + 1);
+                int v = values[i];
+                values[i] = values[j];
+                values[j] = v;
+            }
+        }
+
+        /** Prepare the move that disconnects A and B if they are a pair,
+         *  and otherwise disconnects each from its partner and connects
+         *  them, recording the letters it changes.  Returns false, doing
+         *  nothing, if the move would exceed the limit on pairs. */
+        private boolean toggle(int a, int b) {
+            int pa = _plug[a], pb = _plug[b];
+            _changed = 0;
+            if (pa == b) {
+                _newPairs = _pairs - 1;
+                change(a, a);
+                change(b, b);
+                return true;
+            }
+            _newPairs = _pairs + 1 - (pa != a ? 1 : 0) - (pb != b ? 1 : 0);
+            if (_newPairs > _maxPairs) {
+                return false;
+            }
+            if (pa != a) {
+                change(pa, pa);
+            }
+            if (pb != b) {
+                change(pb, pb);
+            }
+            change(a, b);
+            change(b, a);
+            return true;
+        }
+
+        /** Record that the move makes the plugboard take X to Y. */
+        private void change(int x, int y) {
+            _letters[_changed] = x;
+            _values[_changed] = y;
+            _changed += 1;
+        }
+
+        /** Return the change in score from the move prepared by toggle,
+         *  leaving the move applied to my plugboard and decryption. */
+        private double delta() {
+            _stamp += 1;
+            _numTouched = 0;
+            for (int i = 0; i < _changed; i += 1) {
+                int x = _letters[i];
+                for (int t : _byCipher[x]) {
+                    touch(t);
+                }
+                for (int t = _head[x]; t >= 0; t = _next[t]) {
+                    touch(t);
+                }
+            }
+            int span = _fitness.span(), last = _cipher.length - span;
+            _numWindows = 0;
+            double before = 0;
+            for (int i = 0; i < _numTouched; i += 1) {
+                int t = _touched[i];
+                for (int w = Math.max(0, t - span + 1);
+                     w <= Math.min(t, last); w += 1) {
+                    if (_windowMark[w] != _stamp) {
+                        _windowMark[w] = _stamp;
+                        _windows[_numWindows] = w;
+                        _numWindows += 1;
+                        before += _fitness.window(_plain, w);
+                    }
+                }
+            }
+            for (int i = 0; i < _changed; i += 1) {
+                _oldValues[i] = _plug[_letters[i]];
+                _plug[_letters[i]] = _values[i];
+            }
+            for (int i = 0; i < _numTouched; i += 1) {
+                int t = _touched[i];
+                int y = _substitution[t * _n + _plug[_cipher[t]]];
+                _saved[i] = _plain[t];
+                _moved[i] = y;
+                _plain[t] = _plug[y];
+            }
+            double after = 0;
+            for (int i = 0; i < _numWindows; i += 1) {
+                after += _fitness.window(_plain, _windows[i]);
+            }
+            return after - before;
+        }
+
+        /** Add character T to those the move touches, if not already. */
+        private void touch(int t) {
+            if (_mark[t] != _stamp) {
+                _mark[t] = _stamp;
+                _touched[_numTouched] = t;
+                _numTouched += 1;
+            }
+        }
+
+        /** Keep the move last scored by delta. */
+        private void accept() {
+            for (int i = 0; i < _numTouched; i += 1) {
+                int t = _touched[i];
+                if (_moved[i] != _inner[t]) {
+                    unlink(t, _inner[t]);
+                    link(t, _moved[i]);
+                    _inner[t] = _moved[i];
+                }
+            }
+            _pairs = _newPairs;
+        }
+
+        /** Undo the move last scored by delta. */
+        private void reject() {
+            for (int i = 0; i < _numTouched; i += 1) {
+                _plain[_touched[i]] = _saved[i];
+            }
+            for (int i = 0; i < _changed; i += 1) {
+                _plug[_letters[i]] = _oldValues[i];
+            }
+        }
+
+        /** Source of my random choices. */
+        private final Random _random;
+        /** Table of my plugboard. */
+        private final int[] _plug;
+        /** Number of pairs in my plugboard. */
+        private int _pairs;
+        /** Decryption of the ciphertext under my plugboard. */
+        private final int[] _plain;
+        /** Value of each character between its passes through my
+         *  plugboard. */
+        private final int[] _inner;
+        /** First character in the list for each value of _inner, or
+         *  -1. */
+        private final int[] _head;
+        /** Next and previous characters in each character's list, or
+         *  -1. */
+        private final int[] _next, _prev;
+        /** Every move, as A * alphabet size + B for letters A < B. */
+        private final int[] _moves;
+        /** Letters the prepared move changes, and the plugboard's new and
+         *  old values at them. */
+        private final int[] _letters = new int[4], _values = new int[4],
+            _oldValues = new int[4];
+        /** Number of letters the prepared move changes. */
+        private int _changed;
+        /** Number of pairs after the prepared move. */
+        private int _newPairs;
+        /** Stamp of the move being scored. */
+        private int _stamp;
+        /** Stamp of the last move to touch each character, and of the last
+         *  move to score each window. */
+        private final int[] _mark, _windowMark;
+        /** Characters the move touches, and their number. */
+        private final int[] _touched;
+        /** Number of characters the move touches. */
+        private int _numTouched;
+        /** Starts of windows the move scores. */
+        private final int[] _windows;
+        /** Number of windows the move scores. */
+        private int _numWindows;
+        /** Each touched character's decryption before the move, and its
+         *  value between passes through the plugboard after. */
+        private final int[] _saved, _moved;
+    }
+
+    /** Multiplier spreading restart numbers over seeds. */
+    private static final long GOLDEN = 0x9E3779B97F4A7C15L;
+    /** Smallest change in score counted as an improvement. */
+    private static final double EPSILON = 1e-9;
+    /** Temperature below which annealing stops. */
+    static final double MIN_TEMPERATURE = 1e-3;
+
+    /** Size of my alphabet. */
+    private final int _n;
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+    /** Measure of decryptions. */
+    private final Fitness _fitness;
+    /** Ciphertext, as alphabet indices, less blanks. */
+    private final int[] _cipher;
+    /** Rotors' substitution of each alphabet index U at each position T
+     *  of the ciphertext, at T * alphabet size + U. */
+    private final int[] _substitution;
+    /** Positions of the ciphertext holding each letter. */
+    private final int[][] _byCipher;
+    /** Greatest number of plugboard pairs. */
+    private int _maxPairs;
+    /** Starting temperature for annealing, or 0. */
+    private double _temperature;
+    /** Factor cooling the temperature after each pass. */
+    private double _cooling = 0.9;
+}
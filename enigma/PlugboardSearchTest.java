@@ -0,0 +1,140 @@
+package enigma;
+
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the PlugboardSearch class.
+ *  @author Chris Zhan
+ */
+public class PlugboardSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a machine with some naval rotors. */
+    private static Machine machine() {
+        return TestUtils.naval(5, 3, "B", "Beta", "III", "IV", "I");
+    }
+
+    private static final String PLAIN =
+        "FROMHISSHOULDERHIAWATHATOOKTHECAMERAOFROSEWOOD"
+        + "MADEOFSLIDINGFOLDINGROSEWOODNEATLYPUTITALLTOGETHER"
+        + "INITSCASEITLAYCOMPACTLYFOLDEDINTONEARLYNOTHING"
+        + "BUTHEOPENEDOUTTHEHINGESPUSHEDANDPULLEDTHEJOINTS"
+        + "ANDHINGESTILLITLOOKEDALLSQUARESANDOBLONGS"
+        + "LIKEACOMPLICATEDFIGUREINTHESECONDBOOKOFEUCLID";
+
+    private static final String ROTORS = "* B Beta III IV I AXLE";
+    private static final String PLUGS = "(AZ) (BT) (HQ) (MR) (OW) (SV)";
+
+    /** Scores trigrams by their log frequencies in a text. */
+    private static final class Trigrams implements Fitness {
+
+        /** Trigram scores counted from TEXT. */
+        Trigrams(String text) {
+            int[] counts = new int[26 * 26 * 26];
+            for (int i = 0; i + 3 <= text.length(); i += 1) {
+                counts[index(text, i)] += 1;
+            }
+            for (int i = 0; i < counts.length; i += 1) {
+                _scores[i] = Math.log((counts[i] + 0.01) / text.length());
+            }
+        }
+
+        /** Return the index of the trigram of TEXT at I. */
+        private static int index(String text, int i) {
+            return ((text.charAt(i) - 'A') * 26 + text.charAt(i + 1) - 'A')
+                * 26 + text.charAt(i + 2) - 'A';
+        }
+
+        @Override
+        public int span() {
+            return 3;
+        }
+
+        @Override
+        public double window(int[] text, int start) {
+            return _scores[(text[start] * 26 + text[start + 1]) * 26
+                           + text[start + 2]];
+        }
+
+        /** Score of each trigram. */
+        private final double[] _scores = new double[26 * 26 * 26];
+    }
+
+    /** Return the encipherment of PLAIN under my rotors and plugboard. */
+    private static String cipher() {
+        Machine mach = machine();
+        Main.setUp(mach, ROTORS + " " + PLUGS);
+        return mach.convert(PLAIN);
+    }
+
+    /** Return a search of cipher(). */
+    private static PlugboardSearch search() {
+        MachineState state = new MachineState(MachineSpec.of(machine()));
+        Main.setUp(state, ROTORS);
+        return new PlugboardSearch(state, cipher(), new Trigrams(PLAIN));
+    }
+
+    @Test
+    public void testRecoversPlugboard() {
+        PlugboardSearch search = search();
+        search.setMaxPairs(10);
+        PlugboardSearch.Result result = search.search(40, 20, 2);
+        assertEquals(PLUGS, result.plugboard());
+        assertEquals(PLAIN, result.plaintext());
+    }
+
+    @Test
+    public void testAnnealing() {
+        PlugboardSearch search = search();
+        search.setMaxPairs(10);
+        search.setAnnealing(2, 0.8);
+        PlugboardSearch.Result result = search.search(20, 7, 2);
+        assertEquals(PLUGS, result.plugboard());
+    }
+
+    @Test
+    public void testReproducible() {
+        PlugboardSearch search = search();
+        PlugboardSearch.Result one = search.search(6, 99, 1);
+        PlugboardSearch.Result three = search.search(6, 99, 3);
+        assertEquals(one.plugboard(), three.plugboard());
+        assertEquals(one.score(), three.score(), 0);
+        assertEquals(one.restart(), three.restart());
+        PlugboardSearch.Result alone = search.climb(99, one.restart());
+        assertEquals(one.plugboard(), alone.plugboard());
+    }
+
+    @Test
+    public void testScoreMatchesPlaintext() {
+        PlugboardSearch search = search();
+        search.setMaxPairs(4);
+        Trigrams trigrams = new Trigrams(PLAIN);
+        for (int restart = 0; restart < 4; restart += 1) {
+            PlugboardSearch.Result result = search.climb(5, restart);
+            assertTrue(result.plugboard().split("\\(").length <= 5);
+            String plain = result.plaintext();
+            int[] text = new int[plain.length()];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = AZ.toInt(plain.charAt(i));
+            }
+            double total = 0;
+            for (int w = 0; w + 3 <= text.length; w += 1) {
+                total += trigrams.window(text, w);
+            }
+            assertEquals(total, result.score(), 1e-6);
+            Machine check = machine();
+            Main.setUp(check, ROTORS + " " + result.plugboard());
+            assertEquals(plain, check.convert(cipher()));
+        }
+    }
+}
@@ -0,0 +1,493 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import ucb.util.CommandArgs;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext search: finds every start position and
+ *  Ringstellung under which a machine with a given rotor order and
+ *  plugboard enciphers a plaintext fragment, from the start of a
+ *  message, to its ciphertext.
+ *
+ *  <p>A rotor with setting s and ring r converts as if at offset s - r,
+ *  and is at a notch when s, the letter showing, is at one of its
+ *  notches.  Only the rotors whose notches are ever tested, the rotating
+ *  rotors just right of another rotating rotor, need s and r apart; for
+ *  the rest only s - r matters.  So the search tests keys of an offset
+ *  for every slot and a ring for each of those rotors, and each key that
+ *  matches stands for all the candidates with any ring on the others.
+ *
+ *  <p>Keys are numbered with the fastest rotor's offset varying fastest,
+ *  so that going from one key to the next usually changes just that
+ *  offset, and a run of keys is tested by updating the offsets and rings
+ *  in place rather than setting up a machine for each.  Each key is
+ *  stepped through the plaintext and rejected at the first character
+ *  that does not encipher to the ciphertext.  The keys are divided among
+ *  the threads of a fork-join pool.
+ *  @author Chris Zhan
+ */
+public final class PositionSearch {
+
+    /** Search the configuration in the file named by the first argument,
+     *  with the rotor order given, blank-separated, by the second, for
+     *  start positions and Ringstellungen under which the plaintext
+     *  (third argument) enciphers to the ciphertext (fourth argument),
+     *  with the plugboard given as cycles by the optional fifth.  Prints
+     *  each candidate as a settings line, and finally the number of
+     *  candidates covered per second.  The option --threads=N searches
+     *  with N threads, by default one per processor.  Exits normally if
+     *  there are no errors; otherwise with code 1. */
+    public static void main(String... args) {
+        try {
+            CommandArgs options =
+                new CommandArgs("--threads=(\\d+) --=(.*){4,5}", args);
+            if (!options.ok()) {
+                throw error("Usage: java enigma.PositionSearch [--threads=N] "
+                            + "CONFIG ROTORS PLAINTEXT CIPHERTEXT "
+                            + "[PLUGBOARD]");
+            }
+            List<String> operands = options.get("--");
+            int threads = Runtime.getRuntime().availableProcessors();
+            try {
+                if (options.contains("--threads")) {
+                    threads = Math.max(1, Integer.parseInt(
+                            options.getFirst("--threads")));
+                }
+            } catch (NumberFormatException excp) {
+                throw error("bad number");
+            }
+            Machine machine = new Main(
+                Collections.singletonList(operands.get(0))).readConfig();
+            PositionSearch search = new PositionSearch(
+                MachineSpec.of(machine), operands.get(1).trim().split("\\s+"),
+                operands.size() > 4 ? operands.get(4) : "",
+                operands.get(2), operands.get(3));
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long start = System.nanoTime();
+            long covered = search.search(pool, candidate -> {
+                synchronized (System.out) {
+                    System.out.println(candidate.settingsLine());
+                }
+            });
+            double seconds = (System.nanoTime() - start) / 1e9;
+            pool.shutdown();
+            System.err.printf("%d candidates in %.2f s (%.0f candidates/s)%n",
+                              covered, seconds, covered / seconds);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A search of a machine described by SPEC, with the rotors named
+     *  ROTORS, reflector first, and the plugboard whose cycles are
+     *  PLUGBOARD, for keys enciphering PLAINTEXT to CIPHERTEXT.  Blanks
+     *  in both are ignored. */
+    PositionSearch(MachineSpec spec, String[] rotors, String plugboard,
+                   String plaintext, String ciphertext) {
+        _spec = spec;
+        _n = spec.alphabet().size();
+        int numRotors = spec.numRotors();
+        if (rotors.length != numRotors) {
+            throw error("expected %d rotors", numRotors);
+        }
+        MachineState state = new MachineState(spec);
+        state.insertRotors(rotors);
+        _slots = new int[numRotors];
+        for (int k = 0; k < numRotors; k += 1) {
+            _slots[k] = state.rotor(k);
+            if (_spec.reflecting(_slots[k]) != (k == 0)) {
+                throw error("reflector must be in slot 0 only");
+            }
+            for (int j = 0; j < k; j += 1) {
+                if (_slots[j] == _slots[k]) {
+                    throw error("rotor %s repeated", rotors[k]);
+                }
+            }
+        }
+        _movers = state.movers();
+        _fast = numRotors - 1;
+        _rotates = new boolean[numRotors];
+        _forward = new int[numRotors][];
+        _backward = new int[numRotors][];
+        _notchAt = new boolean[numRotors][];
+        _each = new int[numRotors];
+        boolean[] ringed = new boolean[numRotors];
+        int rings = 0;
+        for (int k = 0; k < numRotors; k += 1) {
+            int r = _slots[k];
+            _each[k] = k;
+            _rotates[k] = spec.rotates(r);
+            _forward[k] = spec.forward(r);
+            _backward[k] = spec.backward(r);
+            if (_rotates[k]) {
+                _notchAt[k] = new boolean[_n];
+                for (int p : spec.ringNotches(r)) {
+                    _notchAt[k][p] = true;
+                }
+            } else {
+                _notchAt[k] = spec.notchAt(r);
+            }
+        }
+        for (int i : _movers) {
+            if (i < _fast && _rotates[i + 1]) {
+                ringed[i + 1] = true;
+                rings += 1;
+            }
+        }
+        _ringed = new int[rings];
+        for (int k = 1, j = 0; k < numRotors; k += 1) {
+            if (ringed[k]) {
+                _ringed[j] = k;
+                j += 1;
+            }
+        }
+        _free = new int[_fast - rings];
+        for (int k = 1, j = 0; k < numRotors; k += 1) {
+            if (!ringed[k]) {
+                _free[j] = k;
+                j += 1;
+            }
+        }
+        _offsets = power(_fast);
+        _keys = times(_offsets, power(rings));
+        _perKey = power(_free.length);
+        Permutation plugs = new Permutation(plugboard, spec.alphabet());
+        int[] plain = indices(plaintext), cipher = indices(ciphertext);
+        if (plain.length != cipher.length) {
+            throw error("plaintext and ciphertext differ in length");
+        }
+        if (plain.length == 0) {
+            throw error("empty plaintext");
+        }
+        _in = new int[plain.length];
+        _out = new int[plain.length];
+        for (int t = 0; t < plain.length; t += 1) {
+            _in[t] = plugs.permute(plain[t]);
+            _out[t] = plugs.permute(cipher[t]);
+        }
+        _rotors = rotors.clone();
+        _plugboard = plugboard.trim();
+    }
+
+    /** Return my alphabet's size to the power K, checking that it fits
+     *  in a long. */
+    private long power(int k) {
+        long result = 1;
+        for (int i = 0; i < k; i += 1) {
+            result = times(result, _n);
+        }
+        return result;
+    }
+
+    /** Return A * B, which must not overflow. */
+    private static long times(long a, long b) {
+        try {
+            return Math.multiplyExact(a, b);
+        } catch (ArithmeticException excp) {
+            throw error("too many candidates to count");
+        }
+    }
+
+    /** Return the alphabet indices of the characters of TEXT, less
+     *  blanks. */
+    private int[] indices(String text) {
+        Alphabet alpha = _spec.alphabet();
+        int[] result = new int[text.length()];
+        int m = 0;
+        for (int i = 0; i < text.length(); i += 1) {
+            char ch = text.charAt(i);
+            if (ch != ' ') {
+                if (!alpha.contains(ch)) {
+                    throw error("character %c not in alphabet", ch);
+                }
+                result[m] = alpha.toInt(ch);
+                m += 1;
+            }
+        }
+        return Arrays.copyOf(result, m);
+    }
+
+    /** Return the number of keys tested by a full search. */
+    long keys() {
+        return _keys;
+    }
+
+    /** Return the number of candidates, pairs of a start position and a
+     *  Ringstellung, covered by a full search.  There may be too many to
+     *  count even when the keys can be searched. */
+    long candidates() {
+        return times(_keys, _perKey);
+    }
+
+    /** Test every key using POOL, passing each matching candidate to
+     *  OUT, from whichever thread finds it, as soon as it is found.
+     *  Return the number of candidates covered. */
+    long search(ForkJoinPool pool, Consumer<Candidate> out) {
+        return search(pool, 0, _keys, out);
+    }
+
+    /** Test the keys numbered FROM to TO - 1 using POOL, passing each
+     *  matching candidate to OUT as for search(ForkJoinPool, Consumer),
+     *  and return the number of candidates covered. */
+    long search(ForkJoinPool pool, long from, long to,
+                Consumer<Candidate> out) {
+        LongAdder covered = new LongAdder();
+        pool.invoke(new Range(from, to, out, covered));
+        return covered.sum();
+    }
+
+    /** Test the keys numbered FROM to TO - 1 in order, passing the
+     *  candidates of those that match to OUT, and return the number of
+     *  candidates covered. */
+    long search(long from, long to, Consumer<Candidate> out) {
+        if (from >= to) {
+            return 0;
+        }
+        int numRotors = _slots.length;
+        int[] offset = new int[numRotors], ring = new int[numRotors];
+        int[] showing = new int[numRotors];
+        int[] setting = new int[numRotors], shown = new int[numRotors];
+        int[] moved = new int[numRotors];
+        long digits = from % _offsets;
+        for (int k = _fast; k >= 1; k -= 1) {
+            offset[k] = (int) (digits % _n);
+            digits /= _n;
+        }
+        digits = from / _offsets;
+        for (int j = _ringed.length - 1; j >= 0; j -= 1) {
+            ring[_ringed[j]] = (int) (digits % _n);
+            digits /= _n;
+        }
+        for (int k = 1; k < numRotors; k += 1) {
+            showing[k] = wrap(offset[k] + ring[k]);
+        }
+        for (long key = from; key < to; key += 1) {
+            System.arraycopy(offset, 0, setting, 0, numRotors);
+            System.arraycopy(showing, 0, shown, 0, numRotors);
+            if (matches(setting, shown, moved)) {
+                report(offset, ring, out);
+            }
+            next(offset, ring, showing);
+        }
+        return times(to - from, _perKey);
+    }
+
+    /** Move OFFSET and RING, with SHOWING their sums, on to the next
+     *  key. */
+    private void next(int[] offset, int[] ring, int[] showing) {
+        for (int k = _fast; k >= 1; k -= 1) {
+            offset[k] = offset[k] + 1 == _n ? 0 : offset[k] + 1;
+            showing[k] = showing[k] + 1 == _n ? 0 : showing[k] + 1;
+            if (offset[k] != 0) {
+                return;
+            }
+        }
+        for (int j = _ringed.length - 1; j >= 0; j -= 1) {
+            int k = _ringed[j];
+            ring[k] = ring[k] + 1 == _n ? 0 : ring[k] + 1;
+            showing[k] = wrap(offset[k] + ring[k]);
+            if (ring[k] != 0) {
+                return;
+            }
+        }
+    }
+
+    /** Return true iff the key whose rotors are at offsets SETTING, with
+     *  letters SHOWN, enciphers my plaintext to my ciphertext, stepping
+     *  SETTING and SHOWN as it goes with the help of MOVED. */
+    private boolean matches(int[] setting, int[] shown, int[] moved) {
+        int n = _n, fast = _fast;
+        for (int t = 0; t < _in.length; t += 1) {
+            advance(setting, shown, moved);
+            int c = _in[t];
+            for (int k = fast; k >= 0; k -= 1) {
+                int s = setting[k];
+                c = _forward[k][c + s] - s;
+                c += c < 0 ? n : 0;
+            }
+            for (int k = 1; k <= fast; k += 1) {
+                int s = setting[k];
+                c = _backward[k][c + s] - s;
+                c += c < 0 ? n : 0;
+            }
+            if (c != _out[t]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Advance the rotors at offsets SETTING, showing SHOWN, by
+     *  MachineSpec.step, whose notches are on the letters shown, using
+     *  MOVED for the slots advanced. */
+    private void advance(int[] setting, int[] shown, int[] moved) {
+        int moves = MachineSpec.step(_movers, _each, _notchAt, shown, _n,
+                                     moved);
+        for (int j = 0; j < moves; j += 1) {
+            int k = moved[j];
+            setting[k] = setting[k] + 1 == _n ? 0 : setting[k] + 1;
+        }
+    }
+
+    /** Return X modulo my alphabet size, for X in -n .. 2n - 1. */
+    private int wrap(int x) {
+        return x < 0 ? x + _n : x >= _n ? x - _n : x;
+    }
+
+    /** Pass to OUT every candidate of the matching key with rotor
+     *  offsets OFFSET and rings RING. */
+    private void report(int[] offset, int[] ring, Consumer<Candidate> out) {
+        int[] rings = ring.clone();
+        for (long i = 0; i < _perKey; i += 1) {
+            long digits = i;
+            for (int j = _free.length - 1; j >= 0; j -= 1) {
+                rings[_free[j]] = (int) (digits % _n);
+                digits /= _n;
+            }
+            int[] start = new int[offset.length];
+            for (int k = 1; k < offset.length; k += 1) {
+                start[k] = wrap(offset[k] + rings[k]);
+            }
+            out.accept(new Candidate(start, rings));
+        }
+    }
+
+    /** A part of the keyspace, tested by splitting it until small. */
+    private final class Range extends RecursiveAction {
+
+        /** Keys FROM to TO - 1, whose candidates go to OUT and the number
+         *  of whose candidates is added to COVERED. */
+        Range(long from, long to, Consumer<Candidate> out,
+              LongAdder covered) {
+            _from = from;
+            _to = to;
+            _out = out;
+            _covered = covered;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from <= LEAF_KEYS) {
+                _covered.add(search(_from, _to, _out));
+            } else {
+                long middle = _from + (_to - _from) / 2;
+                invokeAll(new Range(_from, middle, _out, _covered),
+                          new Range(middle, _to, _out, _covered));
+            }
+        }
+
+        /** First key. */
+        private final long _from;
+        /** Key after the last. */
+        private final long _to;
+        /** Destination of candidates. */
+        private final Consumer<Candidate> _out;
+        /** Count of candidates covered. */
+        private final LongAdder _covered;
+    }
+
+    /** A start position and Ringstellung that match. */
+    final class Candidate {
+
+        /** The candidate with start position START and Ringstellung RING,
+         *  each by slot, from slot 1. */
+        Candidate(int[] start, int[] ring) {
+            Alphabet alpha = _spec.alphabet();
+            StringBuilder setting = new StringBuilder();
+            StringBuilder rings = new StringBuilder();
+            for (int k = 1; k < start.length; k += 1) {
+                setting.append(alpha.toChar(start[k]));
+                rings.append(alpha.toChar(ring[k]));
+            }
+            _setting = setting.toString();
+            _ring = rings.toString();
+        }
+
+        /** Return the start position of the rotors after the
+         *  reflector. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the Ringstellung of the rotors after the reflector. */
+        String ringstellung() {
+            return _ring;
+        }
+
+        /** Return a settings line for this candidate. */
+        String settingsLine() {
+            StringBuilder line = new StringBuilder("*");
+            for (String name : _rotors) {
+                line.append(' ').append(name);
+            }
+            line.append(' ').append(_setting).append(' ').append(_ring);
+            if (!_plugboard.isEmpty()) {
+                line.append(' ').append(_plugboard);
+            }
+            return line.toString();
+        }
+
+        @Override
+        public String toString() {
+            return settingsLine();
+        }
+
+        /** Start position. */
+        private final String _setting;
+        /** Ringstellung. */
+        private final String _ring;
+    }
+
+    /** Most keys tested by one task. */
+    private static final long LEAF_KEYS = 1 << 12;
+
+    /** The description of the machine searched. */
+    private final MachineSpec _spec;
+    /** The size of its alphabet. */
+    private final int _n;
+    /** Names of the rotors searched, reflector first. */
+    private final String[] _rotors;
+    /** Cycles of the plugboard. */
+    private final String _plugboard;
+    /** Available rotor in each slot. */
+    private final int[] _slots;
+    /** Slots whose rotors rotate, in increasing order. */
+    private final int[] _movers;
+    /** The last slot. */
+    private final int _fast;
+    /** True for slots whose rotors rotate. */
+    private final boolean[] _rotates;
+    /** Doubled forward and backward tables of each slot's rotor. */
+    private final int[][] _forward, _backward;
+    /** Notches of each slot's rotor, by the letter showing. */
+    private final boolean[][] _notchAt;
+    /** Each slot's own index, as MachineSpec.step takes for settings kept
+     *  by slot. */
+    private final int[] _each;
+    /** Slots whose rotors' notches are tested, and so whose rings are
+     *  searched. */
+    private final int[] _ringed;
+    /** The other slots after the reflector, whose rings are not. */
+    private final int[] _free;
+    /** Number of combinations of offsets. */
+    private final long _offsets;
+    /** Number of keys: combinations of offsets and searched rings. */
+    private final long _keys;
+    /** Number of candidates of each key: combinations of the rings not
+     *  searched. */
+    private final long _perKey;
+    /** Each plaintext character after the plugboard. */
+    private final int[] _in;
+    /** Each ciphertext character before the plugboard. */
+    private final int[] _out;
+}
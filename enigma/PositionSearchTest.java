@@ -0,0 +1,133 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the PositionSearch class.
+ *  @author Chris Zhan
+ */
+public class PositionSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(20);
+
+    /* ***** TESTS ***** */
+
+    private static final Alphabet AZ = new Alphabet(TestUtils.UPPER_STRING);
+
+    /** Return a machine with NUMROTORS slots and two pawls, and some
+     *  naval rotors, one with two notches. */
+    private static Machine machine(int numRotors) {
+        return TestUtils.naval(numRotors, 2, "B", "Beta", "I", "II", "VI");
+    }
+
+    private static final String PLAIN = "FROMHISSHOULDERHIAWATHA";
+
+    /** Search a machine with NUMROTORS slots for the candidates
+     *  enciphering PLAIN as KEY does, and check that KEY is among them and
+     *  that each candidate found does so. */
+    private static void check(int numRotors, String key, String rotors,
+                              String plugs) {
+        Machine mach = machine(numRotors);
+        Main.setUp(mach, key);
+        String cipher = mach.convert(PLAIN);
+        PositionSearch search =
+            new PositionSearch(MachineSpec.of(machine(numRotors)),
+                               rotors.split(" "), plugs, PLAIN, cipher);
+        List<String> found = Collections.synchronizedList(new ArrayList<>());
+        long covered = search.search(new ForkJoinPool(2),
+                                     c -> found.add(c.settingsLine()));
+        assertEquals(search.candidates(), covered);
+        long all = 1;
+        for (int k = 1; k < numRotors; k += 1) {
+            all *= 26 * 26;
+        }
+        assertEquals(all, covered);
+        assertTrue(found.toString(), found.contains(key));
+        for (String line : found) {
+            Machine check = machine(numRotors);
+            Main.setUp(check, line);
+            assertEquals(line, cipher, check.convert(PLAIN));
+        }
+    }
+
+    @Test
+    public void testFindsKey() {
+        check(3, "* B II I QD XF (AZ) (BY)", "B II I", "(AZ) (BY)");
+    }
+
+    @Test
+    public void testDoubleStep() {
+        check(4, "* B Beta VI II KLC AMF", "B Beta VI II", "");
+        check(4, "* B Beta II VI QVX BEF (HQ)", "B Beta II VI", "(HQ)");
+    }
+
+    @Test
+    public void testRangesAgree() {
+        Machine mach = machine(3);
+        Main.setUp(mach, "* B I II AB CD");
+        String cipher = mach.convert(PLAIN.substring(0, 8));
+        PositionSearch search =
+            new PositionSearch(MachineSpec.of(machine(3)),
+                               new String[] {"B", "I", "II"}, "",
+                               PLAIN.substring(0, 8), cipher);
+        List<String> whole = new ArrayList<>();
+        search.search(0, search.keys(), c -> whole.add(c.settingsLine()));
+        List<String> parts = new ArrayList<>();
+        long covered = 0;
+        for (long from = 0; from < search.keys(); from += 1000) {
+            covered += search.search(from, Math.min(from + 1000,
+                                                    search.keys()),
+                                     c -> parts.add(c.settingsLine()));
+        }
+        assertEquals(whole, parts);
+        assertEquals(search.candidates(), covered);
+        assertTrue(whole.contains("* B I II AB CD"));
+    }
+
+    @Test
+    public void testTooManyToCount() {
+        Machine mach = TestUtils.naval(8, 2, "B", "Beta", "Gamma", "III N",
+                                       "IV N", "V N", "I", "II");
+        String key = "* B Beta Gamma III IV V I II MMMMMMM";
+        Main.setUp(mach, key);
+        String cipher = mach.convert(PLAIN);
+        PositionSearch search =
+            new PositionSearch(MachineSpec.of(mach),
+                               "B Beta Gamma III IV V I II".split(" "),
+                               "", PLAIN, cipher);
+        long perKey = 26L * 26 * 26 * 26 * 26 * 26;
+        assertEquals(perKey * 26 * 26, search.keys());
+        List<String> found = new ArrayList<>();
+        assertEquals(100 * perKey,
+                     search.search(0, 100, c -> found.add(c.settingsLine())));
+        assertTrue(found.isEmpty());
+        try {
+            search.candidates();
+            fail("26^14 candidates counted");
+        } catch (EnigmaException excp) {
+            assertEquals("too many candidates to count", excp.getMessage());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testRepeatedRotor() {
+        new PositionSearch(MachineSpec.of(machine(4)),
+                           new String[] {"B", "Beta", "I", "I"}, "",
+                           "AB", "CD");
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testLengthsDiffer() {
+        new PositionSearch(MachineSpec.of(machine(3)),
+                           new String[] {"B", "I", "II"}, "", "ABC", "CD");
+    }
+}
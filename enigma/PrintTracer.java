@@ -0,0 +1,27 @@
+package enigma;
+
+import java.io.PrintStream;
+
+/** A tracer that prints each character's trace as soon as it is
+ *  complete, as required by the --verbose option.
+ *  @author Chris Zhan
+ */
+class PrintTracer extends RingTracer {
+
+    /** A tracer printing on OUT the traces of a machine with alphabet
+     *  ALPHABET and NUMROTORS rotor slots. */
+    PrintTracer(Alphabet alphabet, int numRotors, PrintStream out) {
+        super(alphabet, numRotors, 1);
+        _out = out;
+    }
+
+    @Override
+    public void end(int c) {
+        super.end(c);
+        print(_out);
+        clear();
+    }
+
+    /** Where my traces go. */
+    private final PrintStream _out;
+}
@@ -26,6 +26,11 @@ class Reflector extends FixedRotor {
         }
     }
 
+    @Override
+    Rotor copy() {
+        return new Reflector(name(), permutation());
+    }
+
     /** The setting of this rotor, by alphabet index. */
     private int _setting;
 }
@@ -0,0 +1,170 @@
+package enigma;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/** A tracer that keeps the traces of the most recent characters in a
+ *  fixed ring of integers, with no formatting while tracing.  Each
+ *  trace holds the character's position, the rotor settings, and the
+ *  alphabet index at each stage.  The traces can be printed, or written
+ *  out in binary and decoded later, in the same form as --verbose.
+ *  @author Chris Zhan
+ */
+class RingTracer implements Tracer {
+
+    /** A tracer for a machine with alphabet ALPHABET and NUMROTORS rotor
+     *  slots that holds the last CAPACITY traces. */
+    RingTracer(Alphabet alphabet, int numRotors, int capacity) {
+        if (capacity < 1) {
+            throw new EnigmaException("trace capacity must be positive");
+        }
+        _alphabet = alphabet;
+        _numRotors = numRotors;
+        _width = recordWidth(numRotors);
+        _ring = new int[capacity * _width];
+    }
+
+    @Override
+    public void begin(long position, int[] settings, int c) {
+        _start = _next * _width;
+        _ring[_start] = (int) (position >>> Integer.SIZE);
+        _ring[_start + 1] = (int) position;
+        _ring[_start + 2] = c;
+        System.arraycopy(settings, 0, _ring, _start + HEADER,
+                         _numRotors - 1);
+        _cursor = _start + HEADER + _numRotors - 1;
+    }
+
+    @Override
+    public void stage(int c) {
+        if (_cursor < _start + _width - 1) {
+            _ring[_cursor] = c;
+            _cursor += 1;
+        }
+    }
+
+    @Override
+    public void end(int c) {
+        _ring[_start + _width - 1] = c;
+        _next = (_next + 1) % capacity();
+        _count = Math.min(_count + 1, capacity());
+    }
+
+    /** Return the number of traces I can hold. */
+    int capacity() {
+        return _ring.length / _width;
+    }
+
+    /** Return the number of traces I hold. */
+    int size() {
+        return _count;
+    }
+
+    /** Discard all my traces. */
+    void clear() {
+        _count = 0;
+        _next = 0;
+    }
+
+    /** Print my traces on OUT, oldest first, as --verbose would have. */
+    void print(PrintStream out) {
+        StringBuilder line = new StringBuilder();
+        int first = (_next - _count + capacity()) % capacity();
+        for (int i = 0; i < _count; i += 1) {
+            int start = ((first + i) % capacity()) * _width;
+            line.setLength(0);
+            format(line, _alphabet, _numRotors, _ring, start);
+            out.print(line);
+        }
+    }
+
+    /** Write my traces to OUT in binary, oldest first, so that they can
+     *  be printed later by decode(). */
+    void write(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeUTF(_alphabet.chars());
+        data.writeInt(_numRotors);
+        data.writeInt(_count);
+        int first = (_next - _count + capacity()) % capacity();
+        for (int i = 0; i < _count; i += 1) {
+            int start = ((first + i) % capacity()) * _width;
+            for (int k = 0; k < _width; k += 1) {
+                data.writeInt(_ring[start + k]);
+            }
+        }
+        data.flush();
+    }
+
+    /** Print the traces written by write() to IN on OUT, as --verbose
+     *  would have. */
+    static void decode(InputStream in, PrintStream out) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC) {
+            throw new EnigmaException("not a trace file");
+        }
+        Alphabet alphabet = new Alphabet(data.readUTF());
+        int numRotors = data.readInt();
+        int count = data.readInt();
+        int[] record = new int[recordWidth(numRotors)];
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; i += 1) {
+            for (int k = 0; k < record.length; k += 1) {
+                record[k] = data.readInt();
+            }
+            line.setLength(0);
+            format(line, alphabet, numRotors, record, 0);
+            out.print(line);
+        }
+    }
+
+    /** Return the number of integers in a trace for NUMROTORS slots: the
+     *  header, the settings, one stage for the plugboard and one per
+     *  rotor passed in each direction, and the result. */
+    private static int recordWidth(int numRotors) {
+        return HEADER + (numRotors - 1) + 2 * numRotors + 1;
+    }
+
+    /** Append to LINE the trace starting at RECORD[START] for a machine
+     *  with alphabet ALPHABET and NUMROTORS slots. */
+    private static void format(StringBuilder line, Alphabet alphabet,
+                               int numRotors, int[] record, int start) {
+        int k = start + HEADER;
+        line.append('[');
+        for (int r = 1; r < numRotors; r += 1, k += 1) {
+            line.append(alphabet.toChar(record[k]));
+        }
+        line.append("] ").append(alphabet.toChar(record[start + 2]));
+        for (int s = 0; s < 2 * numRotors + 1; s += 1, k += 1) {
+            line.append(" -> ").append(alphabet.toChar(record[k]));
+        }
+        line.append(System.lineSeparator());
+    }
+
+    /** Number of integers preceding the settings in each trace: two for
+     *  the position and one for the input. */
+    private static final int HEADER = 3;
+    /** First integer of a binary trace file. */
+    private static final int MAGIC = 0x456e5472;
+
+    /** The alphabet of the traced machine. */
+    private final Alphabet _alphabet;
+    /** The number of rotor slots of the traced machine. */
+    private final int _numRotors;
+    /** The number of integers in each trace. */
+    private final int _width;
+    /** The traces. */
+    private final int[] _ring;
+    /** The index of the next trace to be written. */
+    private int _next;
+    /** The number of traces held. */
+    private int _count;
+    /** The start of the trace being written. */
+    private int _start;
+    /** The next position to be written in the current trace. */
+    private int _cursor;
+}
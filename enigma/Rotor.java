@@ -66,21 +66,13 @@ class Rotor {
     /** Return the conversion of P (an integer in the range 0..size()-1)
      *  according to my permutation. */
     int convertForward(int p) {
-        int result = permutation().permute(p);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
+        return permutation().permute(p);
     }
 
     /** Return the conversion of E (an integer in the range 0..size()-1)
      *  according to the inverse of my permutation. */
     int convertBackward(int e) {
-        int result = permutation().invert(e);
-        if (Main.verbose()) {
-            System.err.printf("%c -> ", alphabet().toChar(result));
-        }
-        return result;
+        return permutation().invert(e);
     }
 
     /** Returns the positions of the notches, as a string giving the letters
@@ -95,10 +87,30 @@ class Rotor {
         return false;
     }
 
+    /** Returns the settings at which atNotch() holds, by index.  Not to
+     *  be modified. */
+    boolean[] notchAt() {
+        return new boolean[size()];
+    }
+
+    /** Returns the number of advances needed to bring me to a notch,
+     *  which is 0 if atNotch(), or -1 if I have no notches. */
+    int stepsToNotch() {
+        return -1;
+    }
+
     /** Advance me one position, if possible. By default, does nothing. */
     void advance() {
     }
 
+    /** Return a new rotor of my kind with my name, permutation, notches
+     *  and setting, which changes independently of me. */
+    Rotor copy() {
+        Rotor result = new Rotor(name(), permutation());
+        result.set(setting());
+        return result;
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
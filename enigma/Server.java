@@ -0,0 +1,183 @@
+package enigma;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static enigma.EnigmaException.*;
+
+/** A long-running encryption server.  The machine configuration is read
+ *  once into a MachineSpec; each connection is then a session with its
+ *  own MachineState over that spec, to which the client sends settings
+ *  lines and messages in UTF-8, exactly as Main reads them.  Converted
+ *  lines are sent back as soon as they are ready, and the session ends
+ *  when the client closes its side of the connection.  An invalid
+ *  settings line ends the session with a line starting "Error: ".  Each
+ *  session runs on its own virtual thread where the Java runtime
+ *  provides them, and otherwise on a pooled platform thread.
+ *  @author Chris Zhan
+ */
+public final class Server implements AutoCloseable {
+
+    /** Serve the configuration in the file named ARGS[0] on the address
+     *  ARGS[1]: a port number on the loopback interface, or otherwise the
+     *  path of a Unix-domain socket to create.  Runs until killed. */
+    public static void main(String... args) {
+        try {
+            if (args.length != 2) {
+                throw error("Usage: java enigma.Server CONFIG PORT|SOCKET");
+            }
+            Machine machine =
+                new Main(Collections.singletonList(args[0])).readConfig();
+            machine.setSetupCache(new SetupCache(SETUP_CACHE));
+            Metrics.register();
+            try (Server server = new Server(machine, address(args[1]))) {
+                server.serve();
+            } catch (IOException excp) {
+                throw error("server failed: %s", excp.getMessage());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** A server for sessions with machines configured as MACHINE was
+     *  when read, sharing its setup cache, listening on ADDRESS, an
+     *  InetSocketAddress or UnixDomainSocketAddress. */
+    Server(Machine machine, SocketAddress address) throws IOException {
+        _spec = MachineSpec.of(machine);
+        _setupCache = machine.setupCache();
+        if (address instanceof UnixDomainSocketAddress) {
+            _socket = ((UnixDomainSocketAddress) address).getPath();
+            _listener = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        } else {
+            _listener = ServerSocketChannel.open();
+        }
+        _listener.bind(address);
+        _sessions = sessionExecutor();
+    }
+
+    /** Return the address on which I listen. */
+    SocketAddress address() throws IOException {
+        return _listener.getLocalAddress();
+    }
+
+    /** Accept connections and start their sessions until I am closed. */
+    void serve() throws IOException {
+        while (true) {
+            SocketChannel client;
+            try {
+                client = _listener.accept();
+            } catch (ClosedChannelException excp) {
+                return;
+            }
+            _sessions.execute(() -> session(client));
+        }
+    }
+
+    /** Stop accepting connections and wait briefly for the sessions in
+     *  progress to end. */
+    @Override
+    public void close() throws IOException {
+        _listener.close();
+        if (_socket != null) {
+            Files.deleteIfExists(_socket);
+        }
+        _sessions.shutdown();
+        try {
+            _sessions.awaitTermination(CLOSE_WAIT, TimeUnit.SECONDS);
+        } catch (InterruptedException excp) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Run a session with CLIENT. */
+    private void session(SocketChannel client) {
+        try (client) {
+            Reader input = new InputStreamReader(
+                    Channels.newInputStream(client), StandardCharsets.UTF_8);
+            Writer output = new BufferedWriter(new OutputStreamWriter(
+                    Channels.newOutputStream(client), StandardCharsets.UTF_8));
+            MachineState state = new MachineState(_spec);
+            state.setSetupCache(_setupCache);
+            StreamProcessor processor =
+                new StreamProcessor(state, input, output, SESSION_CHUNK);
+            processor.setFlushing(true);
+            try {
+                processor.process();
+            } catch (EnigmaException excp) {
+                output.write(String.format("Error: %s%n", excp.getMessage()));
+            } catch (NoSuchElementException excp) {
+                output.write(String.format("Error: bad settings line%n"));
+            }
+            output.flush();
+        } catch (IOException excp) {
+            /* The client has gone; there is no one to tell. */
+        }
+    }
+
+    /** Return the address named by NAME: a loopback port if it is a
+     *  number, and otherwise a Unix-domain socket path. */
+    static SocketAddress address(String name) {
+        if (name.matches("\\d+")) {
+            return new InetSocketAddress(InetAddress.getLoopbackAddress(),
+                                         Integer.parseInt(name));
+        }
+        return UnixDomainSocketAddress.of(Paths.get(name));
+    }
+
+    /** Return an executor running each task on a new virtual thread, if
+     *  this Java runtime has them, and otherwise on a cached pool of
+     *  platform threads. */
+    static ExecutorService sessionExecutor() {
+        try {
+            Method virtual =
+                Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) virtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException excp) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /** Number of distinct settings lines whose setups are cached. */
+    private static final int SETUP_CACHE = 256;
+    /** Characters buffered by each session. */
+    private static final int SESSION_CHUNK = 1 << 12;
+    /** Seconds to wait for sessions to end when closing. */
+    private static final int CLOSE_WAIT = 5;
+
+    /** The description of every session's machine. */
+    private final MachineSpec _spec;
+    /** The cache of setups shared by all sessions, or null. */
+    private final SetupCache _setupCache;
+    /** The channel on which connections arrive. */
+    private final ServerSocketChannel _listener;
+    /** The runner of sessions. */
+    private final ExecutorService _sessions;
+    /** The path of my Unix-domain socket, or null. */
+    private Path _socket;
+}
@@ -0,0 +1,139 @@
+package enigma;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.SocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the Server class.
+ *  @author Chris Zhan
+ */
+public class ServerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTS ***** */
+
+    /** Return a server on a free loopback port. */
+    private static Server loopback() throws IOException {
+        Machine mach = TestUtils.naval();
+        mach.setSetupCache(new SetupCache(16));
+        return new Server(mach, Server.address("0"));
+    }
+
+    /** Start SERVER serving on another thread. */
+    private static void start(Server server) {
+        Thread thread = new Thread(() -> {
+            try {
+                server.serve();
+            } catch (IOException excp) {
+                throw new IllegalStateException(excp);
+            }
+        });
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /** Return the server's whole reply to INPUT, sent to ADDRESS. */
+    private static String exchange(SocketAddress address, String input)
+        throws IOException {
+        try (SocketChannel client = SocketChannel.open(address)) {
+            OutputStream out = Channels.newOutputStream(client);
+            out.write(input.getBytes(StandardCharsets.UTF_8));
+            client.shutdownOutput();
+            return new String(Channels.newInputStream(client).readAllBytes(),
+                              StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testConcurrentSessions() throws Exception {
+        ExecutorService clients = Executors.newFixedThreadPool(8);
+        try (Server server = loopback()) {
+            start(server);
+            SocketAddress address = server.address();
+            Random random = new Random(15);
+            ArrayList<String> inputs = new ArrayList<>();
+            ArrayList<Future<String>> replies = new ArrayList<>();
+            for (int i = 0; i < 16; i += 1) {
+                String input =
+                    ParallelFileProcessorTest.randomInput(random, 30);
+                inputs.add(input);
+                replies.add(clients.submit(() -> exchange(address, input)));
+            }
+            for (int i = 0; i < inputs.size(); i += 1) {
+                assertEquals(ParallelFileProcessorTest.sequential(
+                                 inputs.get(i)),
+                             replies.get(i).get());
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testRepliesStream() throws IOException {
+        try (Server server = loopback()) {
+            start(server);
+            try (SocketChannel client =
+                     SocketChannel.open(server.address())) {
+                OutputStream out = Channels.newOutputStream(client);
+                BufferedReader in = new BufferedReader(new InputStreamReader(
+                        Channels.newInputStream(client),
+                        StandardCharsets.UTF_8));
+                out.write("* B Beta I II III AAAA (AQ) (EP)\nHELLO WORLD\n"
+                          .getBytes(StandardCharsets.UTF_8));
+                assertEquals("IHBDQ QMTQZ ", in.readLine());
+                out.write("* B Beta I II III AAAA (AQ) (EP)\nIHBDQ QMTQZ\n"
+                          .getBytes(StandardCharsets.UTF_8));
+                assertEquals("HELLO WORLD ", in.readLine());
+                out.write("* B Beta I II IX AAAA\n"
+                          .getBytes(StandardCharsets.UTF_8));
+                assertTrue(in.readLine().startsWith("Error: "));
+                assertNull(in.readLine());
+            }
+        }
+    }
+
+    @Test
+    public void testTruncatedSettings() throws IOException {
+        try (Server server = loopback()) {
+            start(server);
+            assertEquals(String.format("Error: bad settings line%n"),
+                         exchange(server.address(), "* B Beta I\nHELLO\n"));
+        }
+    }
+
+    @Test
+    public void testUnixSocket() throws IOException {
+        Path dir = Files.createTempDirectory("enigma");
+        Path socket = dir.resolve("enigma.sock");
+        try (Server server = new Server(TestUtils.naval(),
+                                        Server.address(socket.toString()))) {
+            start(server);
+            String input = "* B Beta I II III AAAA (AQ) (EP)\nHELLO WORLD\n";
+            assertEquals(ParallelFileProcessorTest.sequential(input),
+                         exchange(server.address(), input));
+        } finally {
+            Files.deleteIfExists(socket);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package enigma;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A bounded cache of the setups made by settings lines, keyed by the
+ *  text of the line and discarding the least recently used setup when
+ *  full.  A setup records the rotors chosen, as indices into a machine's
+ *  available rotors, their settings after any Ringstellung, and the
+ *  plugboard, so it applies equally to a machine and to its copies, and
+ *  one cache may be shared between threads.
+ *  @author Chris Zhan
+ */
+final class SetupCache {
+
+    /** A cache holding at most CAPACITY setups. */
+    SetupCache(int capacity) {
+        _capacity = capacity;
+        _setups = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Setup> e) {
+                return size() > _capacity;
+            }
+        };
+    }
+
+    /** Return the setup recorded for the settings line LINE, or null. */
+    synchronized Setup get(String line) {
+        return _setups.get(line);
+    }
+
+    /** Record SETUP as the result of the settings line LINE. */
+    synchronized void put(String line, Setup setup) {
+        _setups.put(line, setup);
+    }
+
+    /** Return the number of setups I hold. */
+    synchronized int size() {
+        return _setups.size();
+    }
+
+    /** The state of a machine just after a setup. */
+    static final class Setup {
+
+        /** A setup placing available rotor #ROTORS[k] in slot k at setting
+         *  SETTINGS[k], with rotating rotors in the slots MOVERS and
+         *  plugboard PLUGBOARD.  RINGED iff the setup included a
+         *  Ringstellung. */
+        Setup(int[] rotors, int[] settings, int[] movers,
+              Permutation plugboard, boolean ringed) {
+            _rotors = rotors;
+            _settings = settings;
+            _movers = movers;
+            _plugboard = plugboard;
+            _ringed = ringed;
+        }
+
+        /** Return the index of the available rotor in slot K, or -1 if
+         *  the slot is empty. */
+        int rotor(int k) {
+            return _rotors[k];
+        }
+
+        /** Return the setting of the rotor in slot K. */
+        int setting(int k) {
+            return _settings[k];
+        }
+
+        /** Return the number of slots. */
+        int numRotors() {
+            return _rotors.length;
+        }
+
+        /** Return the slots of the rotating rotors, in increasing order. */
+        int[] movers() {
+            return _movers;
+        }
+
+        /** Return the plugboard. */
+        Permutation plugboard() {
+            return _plugboard;
+        }
+
+        /** Return true iff this setup included a Ringstellung. */
+        boolean ringed() {
+            return _ringed;
+        }
+
+        /** Indices of the rotors in each slot. */
+        private final int[] _rotors;
+        /** Setting of the rotor in each slot. */
+        private final int[] _settings;
+        /** Slots holding rotating rotors. */
+        private final int[] _movers;
+        /** The plugboard. */
+        private final Permutation _plugboard;
+        /** True iff a Ringstellung was set. */
+        private final boolean _ringed;
+    }
+
+    /** The largest number of setups held. */
+    private final int _capacity;
+    /** The setups held, least recently used first. */
+    private final LinkedHashMap<String, Setup> _setups;
+}
@@ -0,0 +1,89 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the SetupCache class.
+ *  @author Chris Zhan
+ */
+public class SetupCacheTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final String[] SETUPS = {
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BW)",
+        "* B Beta I II III AAAA (AQ) (EP)",
+        "* B Beta III IV I AXLE BCDE (YF) (ZH)",
+        "* B Beta II IV I QEVZ DDDD",
+        "* B Beta II IV I QEVZ",
+    };
+
+    /** Return the conversions of a message after each of the settings
+     *  lines SETUPS[ORDER[i]] on machine MACH. */
+    private static String run(Machine mach, int[] order) {
+        StringBuilder result = new StringBuilder();
+        for (int i : order) {
+            Main.setUp(mach, SETUPS[i]);
+            result.append(mach.convert("FROMHISSHOULDERHIAWATHA" + i))
+                .append('\n');
+        }
+        return result.toString();
+    }
+
+    @Test
+    public void testCachedMatchesUncached() {
+        int[] order = {0, 1, 0, 4, 3, 2, 3, 4, 2, 2, 0, 1, 3, 3};
+        String expected = run(TestUtils.naval(), order);
+        Machine mach = TestUtils.naval();
+        SetupCache cache = new SetupCache(16);
+        mach.setSetupCache(cache);
+        assertEquals(expected, run(mach, order));
+        assertEquals(SETUPS.length, cache.size());
+    }
+
+    @Test
+    public void testCopiesShareCache() {
+        int[] first = {2, 0, 1};
+        int[] second = {1, 2, 0, 3};
+        Machine plain = TestUtils.naval();
+        run(plain, first);
+        String expected = run(plain, second);
+        Machine mach = TestUtils.naval();
+        mach.setSetupCache(new SetupCache(16));
+        run(mach, first);
+        Machine copy = mach.copy();
+        assertSame(mach.setupCache(), copy.setupCache());
+        assertEquals(expected, run(copy, second));
+        assertEquals(expected, run(mach, second));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedDiscarded() {
+        Machine mach = TestUtils.naval();
+        SetupCache cache = new SetupCache(2);
+        mach.setSetupCache(cache);
+        run(mach, new int[] {0, 1, 0, 3});
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(SETUPS[0]));
+        assertNull(cache.get(SETUPS[1]));
+        assertNotNull(cache.get(SETUPS[3]));
+    }
+
+    @Test
+    public void testFirstRingstellungNotRestored() {
+        Machine mach = TestUtils.naval();
+        SetupCache cache = new SetupCache(4);
+        Machine other = TestUtils.naval();
+        other.setSetupCache(cache);
+        Main.setUp(other, SETUPS[0]);
+        Main.setUp(other, SETUPS[2]);
+        assertFalse(mach.restoreSetup(cache.get(SETUPS[2])));
+        assertTrue(mach.restoreSetup(cache.get(SETUPS[0])));
+    }
+}
@@ -0,0 +1,193 @@
+package enigma;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** The sequence of rotor settings a machine passes through as it steps
+ *  from a given state.  Since only the rotors that rotate ever change
+ *  setting, the sequence eventually repeats: it consists of a tail of
+ *  tail() states followed by a cycle that returns to state #tail()
+ *  after state #(length()-1).  Each state is recorded as a single
+ *  integer code combining the settings of the rotating rotors.
+ *  @author Chris Zhan
+ */
+final class SteppingCycle {
+
+    /** Return the stepping sequence of M from its current settings, or
+     *  null if it has more than MAXSTATES distinct states.  M is left
+     *  at the settings it started with. */
+    static SteppingCycle walk(Machine m, int maxStates) {
+        if (maxStates < 1) {
+            return null;
+        }
+        int size = m.alphabet().size();
+        int count = 0;
+        for (int k = 0; k < m.numRotors(); k += 1) {
+            if (m.getRotor(k).rotates()) {
+                count += 1;
+            }
+        }
+        int[] slots = new int[count];
+        long space = 1;
+        for (int k = 0, j = 0; k < m.numRotors(); k += 1) {
+            if (m.getRotor(k).rotates()) {
+                slots[j] = k;
+                j += 1;
+                space *= size;
+                if (space > Integer.MAX_VALUE) {
+                    return null;
+                }
+            }
+        }
+        SteppingCycle result = new SteppingCycle(slots, size, (int) space);
+        if (!result.record(m, maxStates)) {
+            return null;
+        }
+        return result;
+    }
+
+    /** A stepping sequence over the rotating rotors in SLOTS, with an
+     *  alphabet of SIZE characters and SPACE possible states. */
+    private SteppingCycle(int[] slots, int size, int space) {
+        _slots = slots;
+        _size = size;
+        if (space <= DENSE_STATES) {
+            _dense = new int[space];
+            Arrays.fill(_dense, -1);
+        } else {
+            _sparse = new HashMap<>();
+        }
+    }
+
+    /** Record the states of M, stepping it until a state repeats or
+     *  MAXSTATES states have been seen, then return M to its initial
+     *  state.  Return true iff a repeat was found. */
+    private boolean record(Machine m, int maxStates) {
+        int[] codes = new int[Math.min(maxStates, INITIAL_STATES)];
+        int n = 0;
+        int code = code(m);
+        while (find(code) < 0) {
+            if (n == maxStates) {
+                decode(m, codes[0]);
+                return false;
+            }
+            if (n == codes.length) {
+                codes = Arrays.copyOf(codes,
+                        (int) Math.min(maxStates, 2L * n));
+            }
+            codes[n] = code;
+            remember(code, n);
+            n += 1;
+            m.advanceRotors();
+            code = code(m);
+        }
+        _tail = find(code);
+        _codes = Arrays.copyOf(codes, n);
+        decode(m, _codes[0]);
+        return true;
+    }
+
+    /** Return the number of distinct states in the sequence. */
+    int length() {
+        return _codes.length;
+    }
+
+    /** Return the number of states before the sequence begins to
+     *  repeat. */
+    int tail() {
+        return _tail;
+    }
+
+    /** Return the index of the state that follows state #I. */
+    int next(int i) {
+        i += 1;
+        if (i == _codes.length) {
+            return _tail;
+        }
+        return i;
+    }
+
+    /** Return the index of the state reached after STEPS steps from
+     *  state #0. */
+    int index(long steps) {
+        if (steps < _codes.length) {
+            return (int) steps;
+        }
+        return (int) (_tail + (steps - _tail) % (_codes.length - _tail));
+    }
+
+    /** Return the index of M's current state in this sequence, or -1 if
+     *  it does not occur.  Only the settings of the rotating rotors are
+     *  examined. */
+    int indexOf(Machine m) {
+        return find(code(m));
+    }
+
+    /** Set the rotating rotors of M to their settings in state #I. */
+    void restore(Machine m, int i) {
+        decode(m, _codes[i]);
+    }
+
+    /** Return the slots of the rotors that rotate, leftmost first. */
+    int[] slots() {
+        return _slots;
+    }
+
+    /** Return the code for the current settings of M's rotating rotors. */
+    private int code(Machine m) {
+        int code = 0;
+        for (int j = _slots.length - 1; j >= 0; j -= 1) {
+            code = code * _size + m.getRotor(_slots[j]).setting();
+        }
+        return code;
+    }
+
+    /** Set the rotating rotors of M to the settings encoded by CODE. */
+    private void decode(Machine m, int code) {
+        for (int j = 0; j < _slots.length; j += 1) {
+            m.setSetting(_slots[j], code % _size);
+            code /= _size;
+        }
+    }
+
+    /** Return the index at which CODE was recorded, or -1. */
+    private int find(int code) {
+        if (_dense != null) {
+            return _dense[code];
+        }
+        Integer i = _sparse.get(code);
+        if (i == null) {
+            return -1;
+        }
+        return i;
+    }
+
+    /** Record that CODE is state #I. */
+    private void remember(int code, int i) {
+        if (_dense != null) {
+            _dense[code] = i;
+        } else {
+            _sparse.put(code, i);
+        }
+    }
+
+    /** State spaces up to this size are indexed by a dense table. */
+    private static final int DENSE_STATES = 1 << 20;
+
+    /** Initial capacity for recorded states. */
+    private static final int INITIAL_STATES = 1 << 12;
+
+    /** The slots holding rotating rotors. */
+    private final int[] _slots;
+    /** The size of the alphabet. */
+    private final int _size;
+    /** The code of each state, in stepping order. */
+    private int[] _codes;
+    /** The index of the first repeated state. */
+    private int _tail;
+    /** Index of each recorded code, or -1, when the state space is
+     *  small. */
+    private int[] _dense;
+    /** Index of each recorded code when the state space is large. */
+    private HashMap<Integer, Integer> _sparse;
+}
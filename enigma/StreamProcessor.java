@@ -0,0 +1,263 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+
+import static enigma.EnigmaException.*;
+
+/** Applies a machine to a stream of settings lines and messages, as
+ *  described for Main, writing the converted messages in groups of five.
+ *  Input is read and output written in fixed-size chunks, and message
+ *  lines are converted as they arrive, so that the space used does not
+ *  depend on the length of any line.
+ *  @author Chris Zhan
+ */
+class StreamProcessor {
+
+    /** A processor applying MACHINE to the lines of INPUT and writing the
+     *  results to OUTPUT. */
+    StreamProcessor(Enigma machine, Reader input, Writer output) {
+        this(machine, input, output, CHUNK);
+    }
+
+    /** A processor applying MACHINE to the lines of INPUT and writing the
+     *  results to OUTPUT, buffering CHUNK characters at a time. */
+    StreamProcessor(Enigma machine, Reader input, Writer output,
+                    int chunk) {
+        _machine = machine;
+        _input = input;
+        _output = output;
+        _in = new char[chunk];
+        _converted = new char[chunk];
+        _out = new char[chunk * (GROUP + 1) / GROUP + 2];
+        _newline = System.lineSeparator();
+    }
+
+    /** Process all of my input.  The first line must be a settings line.
+     *  Does not flush my output. */
+    void process() throws IOException {
+        processStart(true);
+    }
+
+    /** Process my input as the first piece of a larger input, which it
+     *  ends iff LAST; otherwise it stops just before a line that is not
+     *  empty. */
+    void processStart(boolean last) throws IOException {
+        if (!hasNextLine()) {
+            throw error("missing settings line");
+        }
+        setUp(readLine());
+        processLines(last);
+    }
+
+    /** Process my input as one piece of a larger input, continuing a
+     *  message line of which WRITTEN characters have already been
+     *  converted, or starting at the beginning of a line (not the first)
+     *  if WRITTEN is negative.  My machine must be in the state it would
+     *  have reached at that point.  If LAST, my input runs to the end of
+     *  the larger input; otherwise it stops in the middle of a message
+     *  line or just before a line that is not empty. */
+    void processRegion(long written, boolean last) throws IOException {
+        if (written >= 0) {
+            convertLine(written, last);
+        }
+        processLines(last);
+    }
+
+    /** Process the lines remaining in my input, each starting at the top
+     *  of the loop in Main.process, ending the output as if my input were
+     *  the end of everything iff LAST.  A run of K blank lines produces
+     *  K/2 line terminators, rounded up if another line follows and
+     *  down otherwise. */
+    private void processLines(boolean last) throws IOException {
+        long blanks = 0;
+        while (hasNextLine()) {
+            if (atLineEnd()) {
+                skipLine();
+                blanks += 1;
+                continue;
+            }
+            writeNewlines((blanks + 1) / 2);
+            blanks = 0;
+            if (_in[_pos] == '*') {
+                setUp(readLine());
+            } else {
+                convertLine(0, last);
+            }
+        }
+        if (last) {
+            writeNewlines(blanks / 2 + 1);
+        } else {
+            writeNewlines((blanks + 1) / 2);
+        }
+    }
+
+    /** Write N line terminators. */
+    private void writeNewlines(long n) throws IOException {
+        for (long i = 0; i < n; i += 1) {
+            _output.write(_newline);
+        }
+    }
+
+    /** Flush my output whenever I am about to wait for more input iff
+     *  ON, so that a client on the other end of a connection sees each
+     *  line's result as soon as it has been converted. */
+    void setFlushing(boolean on) {
+        _flushing = on;
+    }
+
+    /** Set up my machine according to the settings line SETTINGS. */
+    void setUp(String settings) {
+        Main.setUp(_machine, settings);
+    }
+
+    /** Return true iff any input remains, refilling my buffer if
+     *  needed. */
+    private boolean hasNextLine() throws IOException {
+        return _pos < _limit || fill();
+    }
+
+    /** Return true iff the next input character ends a line.  Assumes
+     *  hasNextLine(). */
+    private boolean atLineEnd() {
+        return isTerminator(_in[_pos]);
+    }
+
+    /** Read and discard the line terminator at the current position. */
+    private void skipLine() throws IOException {
+        char c = _in[_pos];
+        _pos += 1;
+        if (c == '\r' && hasNextLine() && _in[_pos] == '\n') {
+            _pos += 1;
+        }
+    }
+
+    /** Return the rest of the current line, consuming its terminator. */
+    private String readLine() throws IOException {
+        StringBuilder line = new StringBuilder();
+        while (hasNextLine()) {
+            int start = _pos;
+            while (_pos < _limit && !isTerminator(_in[_pos])) {
+                _pos += 1;
+            }
+            line.append(_in, start, _pos - start);
+            if (line.length() > MAX_SETTINGS) {
+                throw error("settings line too long");
+            }
+            if (_pos < _limit) {
+                skipLine();
+                break;
+            }
+        }
+        return line.toString();
+    }
+
+    /** Convert the rest of the current line, of which WRITTEN characters
+     *  have already been converted, writing it in groups of five followed
+     *  by a line terminator, and consume its terminator.  If my input ends
+     *  before the terminator, write one only if LAST.  The line is
+     *  recorded as a message, in Metrics and as an enigma.Message event,
+     *  only by the piece of the input that ends it, so that a line cut
+     *  between regions counts once; its latency is then that of the last
+     *  piece. */
+    private void convertLine(long written, boolean last) throws IOException {
+        Events.Message event = null;
+        if (Events.recording()) {
+            event = new Events.Message();
+            event.begin();
+        }
+        long began = Metrics.enabled() ? System.nanoTime() : 0;
+        boolean ended = last;
+        while (hasNextLine()) {
+            int start = _pos;
+            while (_pos < _limit && !isTerminator(_in[_pos])) {
+                _pos += 1;
+            }
+            int n = _machine.convert(_in, start, _pos - start,
+                                     _converted, 0);
+            int k = 0;
+            for (int i = 0; i < n; i += 1) {
+                _out[k] = _converted[i];
+                k += 1;
+                written += 1;
+                if (written % GROUP == 0) {
+                    _out[k] = ' ';
+                    k += 1;
+                }
+            }
+            _output.write(_out, 0, k);
+            if (_pos < _limit) {
+                skipLine();
+                ended = true;
+                break;
+            }
+        }
+        if (!ended) {
+            return;
+        }
+        _output.write(_newline);
+        if (began != 0) {
+            Metrics.message(System.nanoTime() - began);
+        }
+        if (event != null && event.shouldCommit()) {
+            event.alphabetSize = _machine.alphabet().size();
+            event.rotors = _machine.numRotors();
+            event.length = written;
+            event.engine = _machine.engine();
+            event.commit();
+        }
+    }
+
+    /** Read more input into my buffer, which must be exhausted.  Return
+     *  false iff there is no more input. */
+    private boolean fill() throws IOException {
+        if (_flushing) {
+            _output.flush();
+        }
+        _pos = 0;
+        _limit = 0;
+        while (_limit == 0) {
+            int n = _input.read(_in);
+            if (n < 0) {
+                return false;
+            }
+            _limit = n;
+        }
+        return true;
+    }
+
+    /** Return true iff C ends a line, as for Scanner.nextLine(). */
+    static boolean isTerminator(char c) {
+        return c == '\n' || c == '\r' || c == '\u2028' || c == '\u2029'
+            || c == '\u0085';
+    }
+
+    /** Default number of characters read at a time. */
+    static final int CHUNK = 1 << 16;
+    /** Number of characters in an output group. */
+    private static final int GROUP = 5;
+    /** Longest settings line accepted. */
+    static final int MAX_SETTINGS = 1 << 16;
+
+    /** The machine applied to messages. */
+    private final Enigma _machine;
+    /** Source of settings lines and messages. */
+    private final Reader _input;
+    /** Destination for converted messages. */
+    private final Writer _output;
+    /** Buffered input. */
+    private final char[] _in;
+    /** Converted characters awaiting grouping. */
+    private final char[] _converted;
+    /** Grouped characters awaiting output. */
+    private final char[] _out;
+    /** The line terminator written after each line. */
+    private final String _newline;
+    /** Index of the next unread character in _in. */
+    private int _pos;
+    /** Number of valid characters in _in. */
+    private int _limit;
+    /** True iff my output is flushed before each read. */
+    private boolean _flushing;
+}
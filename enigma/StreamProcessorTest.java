@@ -0,0 +1,95 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+/** The suite of all JUnit tests for the StreamProcessor class.
+ *  @author Chris Zhan
+ */
+public class StreamProcessorTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    private static final String NL = System.lineSeparator();
+
+    private static final String SETTINGS =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BW)";
+
+    /** Return the output of processing INPUT with a buffer of CHUNK
+     *  characters. */
+    private static String process(String input, int chunk)
+        throws IOException {
+        StringWriter output = new StringWriter();
+        new StreamProcessor(TestUtils.naval(), new StringReader(input), output, chunk)
+            .process();
+        return output.toString();
+    }
+
+    @Test
+    public void testGroupsOfFive() throws IOException {
+        String input = "* B Beta I II III AAAA (AQ) (EP)\nHELLO WORLD\n";
+        String expected = "IHBDQ QMTQZ " + NL + NL;
+        assertEquals(expected, process(input, StreamProcessor.CHUNK));
+        assertEquals(expected, process(input, 1));
+        assertEquals(expected, process(input, 7));
+    }
+
+    @Test
+    public void testLongLineAcrossChunks() throws IOException {
+        StringBuilder message = new StringBuilder();
+        for (int i = 0; i < 1000; i += 1) {
+            message.append((char) ('A' + (i * 7) % 26));
+            if (i % 11 == 0) {
+                message.append(' ');
+            }
+        }
+        Machine mach = TestUtils.naval();
+        Main.setUp(mach, SETTINGS);
+        String converted = mach.convert(message.toString());
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < converted.length(); i += 1) {
+            expected.append(converted.charAt(i));
+            if ((i + 1) % 5 == 0) {
+                expected.append(' ');
+            }
+        }
+        expected.append(NL).append(NL);
+        String input = SETTINGS + "\n" + message;
+        for (int chunk : new int[] {1, 3, 5, 64, StreamProcessor.CHUNK}) {
+            assertEquals("chunk " + chunk, expected.toString(),
+                         process(input, chunk));
+        }
+    }
+
+    @Test
+    public void testBlankLinesAndTerminators() throws IOException {
+        String lf = SETTINGS + "\nHELLO\n\nWORLD\n\n\n" + SETTINGS
+            + "\nHELLO\n\n";
+        String crlf = lf.replace("\n", "\r\n");
+        String expected = process(lf, StreamProcessor.CHUNK);
+        for (int chunk : new int[] {1, 2, 3, StreamProcessor.CHUNK}) {
+            assertEquals(expected, process(lf, chunk));
+            assertEquals(expected, process(crlf, chunk));
+        }
+        Machine mach = TestUtils.naval();
+        Main.setUp(mach, SETTINGS);
+        String hello = mach.convert("HELLO");
+        String world = mach.convert("WORLD");
+        assertEquals(hello + " " + NL + NL + world + " " + NL + NL
+                     + hello + " " + NL + NL, expected);
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testMissingSettings() throws IOException {
+        process("", StreamProcessor.CHUNK);
+    }
+}
@@ -1,5 +1,6 @@
 package enigma;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -126,4 +127,51 @@ class TestUtils {
         NAVALZ_MAP.put("Gamma", "EGTPLBOVFSINCUJZDXMRQAYWHK");
     }
 
+    /** The notches of the rotating naval rotors. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+        NAVAL_NOTCHES.put("VI", "ZM");
+        NAVAL_NOTCHES.put("VII", "ZM");
+        NAVAL_NOTCHES.put("VIII", "ZM");
+    }
+
+    /** Return a machine with NUMROTORS slots and PAWLS pawls whose
+     *  available rotors are the naval rotors described by ROTORS, in
+     *  order.  Each is a name, optionally followed by a blank and a type
+     *  as in a configuration file: "R", "N", or "M" and the notches.
+     *  Without a type, B and C are reflectors, Beta and Gamma are fixed,
+     *  and the others rotate with their usual notches. */
+    static Machine naval(int numRotors, int pawls, String... rotors) {
+        Alphabet az = new Alphabet(UPPER_STRING);
+        ArrayList<Rotor> result = new ArrayList<>();
+        for (String rotor : rotors) {
+            String[] parts = rotor.split(" ");
+            String name = parts[0];
+            String type = parts.length > 1 ? parts[1]
+                : name.matches("B|C") ? "R"
+                : name.matches("Beta|Gamma") ? "N"
+                : "M" + NAVAL_NOTCHES.get(name);
+            Permutation perm = new Permutation(NAVALA.get(name), az);
+            if (type.equals("R")) {
+                result.add(new Reflector(name, perm));
+            } else if (type.equals("N")) {
+                result.add(new FixedRotor(name, perm));
+            } else {
+                result.add(new MovingRotor(name, perm, type.substring(1)));
+            }
+        }
+        return new Machine(az, numRotors, pawls, result);
+    }
+
+    /** Return a machine with five slots, three pawls, and the naval
+     *  rotors B, Beta, and I to IV. */
+    static Machine naval() {
+        return naval(5, 3, "B", "Beta", "I", "II", "III", "IV");
+    }
+
 }
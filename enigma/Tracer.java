@@ -0,0 +1,40 @@
+package enigma;
+
+/** A receiver for the step-by-step path of each character through a
+ *  machine, as shown by the --verbose option.  A machine reports every
+ *  character it converts as one call to begin(), one call to stage()
+ *  for the plugboard and for each rotor the character passes through,
+ *  and one call to end().
+ *  @author Chris Zhan
+ */
+interface Tracer {
+
+    /** Note the start of the conversion of C (an alphabet index), the
+     *  POSITION'th character since the machine's last setup, after the
+     *  machine has advanced to the rotor settings SETTINGS (slots 1 and
+     *  up, leftmost first).  SETTINGS belongs to the machine and is only
+     *  valid during this call. */
+    void begin(long position, int[] settings, int c);
+
+    /** Note that the character has become C at its next stage. */
+    void stage(int c);
+
+    /** Note that the conversion has produced C. */
+    void end(int c);
+
+    /** A tracer that ignores everything.  Machines do not report to
+     *  this tracer at all. */
+    Tracer NONE = new Tracer() {
+        @Override
+        public void begin(long position, int[] settings, int c) {
+        }
+
+        @Override
+        public void stage(int c) {
+        }
+
+        @Override
+        public void end(int c) {
+        }
+    };
+}
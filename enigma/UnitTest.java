@@ -19,7 +19,24 @@ public class UnitTest {
         }
         System.exit(textui.runClasses(PermutationTest.class,
                 MovingRotorTest.class,
-                MachineTest.class));
+                MachineTest.class,
+                AlphabetTest.class,
+                StreamProcessorTest.class,
+                ParallelFileProcessorTest.class,
+                ParallelMessageProcessorTest.class,
+                SetupCacheTest.class,
+                ConfigImageTest.class,
+                ServerTest.class,
+                MachineStateTest.class,
+                BatchConverterTest.class,
+                LaneConverterTest.class,
+                BombeTest.class,
+                PlugboardSearchTest.class,
+                NgramTableTest.class,
+                PositionSearchTest.class,
+                KeyspaceJobTest.class,
+                MetricsTest.class,
+                EventsTest.class));
     }
 
     @Test(expected = EnigmaException.class)
@@ -0,0 +1,132 @@
+package enigma;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/** A LaneConverter that makes its passes over the lanes with the Vector
+ *  API, for as many lanes at a time as the processor's vectors hold.
+ *  Lookups in the plugboards, rotor tables and notches are gathers, at
+ *  indices that differ by lane.  Stepping tests the notches of every
+ *  lane at once, and advances rotors under a mask of the lanes whose
+ *  notch is engaged, that no slot to their right has already advanced,
+ *  and that are live.  Only translating between characters and indices
+ *  stays a loop over the lanes, as each lane's text is its own array.
+ *  Lanes past the last whole vector are done by LaneConverter's loops.
+ *  The API is in the incubating module jdk.incubator.vector, so this
+ *  class is compiled apart from the rest of the package, by 'make
+ *  vector', and is used by LaneConverter.of only in a JVM started with
+ *  --add-modules jdk.incubator.vector.
+ *  @author Chris Zhan
+ */
+final class VectorLaneConverter extends LaneConverter {
+
+    /** A converter with one lane for each of STATES, as for
+     *  LaneConverter. */
+    VectorLaneConverter(MachineState... states) {
+        super(states);
+        int n = _chars.length;
+        _index = new int[_lanes];
+        _plugs = new int[_lanes * n];
+        for (int lane = 0; lane < _lanes; lane += 1) {
+            System.arraycopy(_plugboard[lane], 0, _plugs, lane * n, n);
+        }
+        _notches = new int[_notchAt.length][];
+        for (int row = 0; row < _notches.length; row += 1) {
+            _notches[row] = new int[n];
+            for (int x = 0; x < n; x += 1) {
+                _notches[row][x] = _notchAt[row][x] ? 1 : 0;
+            }
+        }
+        _bound = SPECIES.loopBound(_lanes);
+    }
+
+    @Override
+    void plug(int[] c, int from) {
+        int n = _chars.length;
+        int lane;
+        for (lane = from; lane < _bound; lane += SPECIES.length()) {
+            IntVector.fromArray(SPECIES, c, lane)
+                .add(IntVector.zero(SPECIES).addIndex(1).add(lane).mul(n))
+                .intoArray(_index, lane);
+            IntVector.fromArray(SPECIES, _plugs, 0, _index, lane)
+                .intoArray(c, lane);
+        }
+        super.plug(c, lane);
+    }
+
+    @Override
+    void offset(int[] table, int[] settings, int[] c, int from) {
+        int n = _chars.length;
+        int lane;
+        for (lane = from; lane < _bound; lane += SPECIES.length()) {
+            IntVector s = IntVector.fromArray(SPECIES, settings, lane);
+            IntVector.fromArray(SPECIES, c, lane).add(s)
+                .intoArray(_index, lane);
+            IntVector x =
+                IntVector.fromArray(SPECIES, table, 0, _index, lane).sub(s);
+            x.add(n, x.compare(VectorOperators.LT, 0)).intoArray(c, lane);
+        }
+        super.offset(table, settings, c, lane);
+    }
+
+    @Override
+    void step(boolean ragged, int from) {
+        int fast = _row.length - 1;
+        int lane;
+        for (lane = from; lane < _bound; lane += SPECIES.length()) {
+            VectorMask<Integer> live = ragged
+                ? VectorMask.fromArray(SPECIES, _live, lane)
+                : SPECIES.maskAll(true);
+            IntVector done = IntVector.broadcast(SPECIES, -1);
+            for (int i : _movers) {
+                if (i >= fast) {
+                    continue;
+                }
+                int left = _row[i], right = _row[i + 1];
+                VectorMask<Integer> turns =
+                    IntVector.fromArray(SPECIES, _notches[right], 0,
+                                        _settings[right], lane)
+                    .compare(VectorOperators.NE, 0)
+                    .and(done.compare(VectorOperators.LT, i)).and(live);
+                if (turns.anyTrue()) {
+                    advance(left, lane, turns);
+                    advance(right, lane, turns);
+                    done = done.blend(i + 1, turns);
+                }
+            }
+            int last = _row[fast];
+            if (_rotates[last]) {
+                advance(last, lane,
+                        done.compare(VectorOperators.LT, fast).and(live));
+            }
+        }
+        super.step(ragged, lane);
+    }
+
+    /** Advance the rotor in ROW, if it rotates, in the lanes starting at
+     *  LANE that are set in MASK. */
+    private void advance(int row, int lane, VectorMask<Integer> mask) {
+        if (_rotates[row]) {
+            int[] settings = _settings[row];
+            IntVector s =
+                IntVector.fromArray(SPECIES, settings, lane).add(1, mask);
+            s.blend(0, s.compare(VectorOperators.EQ, _chars.length))
+                .intoArray(settings, lane);
+        }
+    }
+
+    /** The widest vectors of ints the processor handles well. */
+    private static final VectorSpecies<Integer> SPECIES =
+        IntVector.SPECIES_PREFERRED;
+
+    /** Each lane's index into the table being gathered from. */
+    private final int[] _index;
+    /** The lanes' plugboard tables, one after another. */
+    private final int[] _plugs;
+    /** 1 where each row's rotor has a notch, and otherwise 0. */
+    private final int[][] _notches;
+    /** Number of lanes in whole vectors. */
+    private final int _bound;
+}